@@ -0,0 +1,39 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * 基准测试使用的合成图像，由 {@link CreateTestImage#encode(int, int, String, long)} 以固定种子生成。
+ * <p>
+ * 格式参数：
+ * <ul>
+ *     <li>{@code jpeg}：RGB JPEG，解码为 TYPE_3BYTE_BGR；</li>
+ *     <li>{@code png}：RGB PNG，解码为 TYPE_3BYTE_BGR；</li>
+ *     <li>{@code gray}：灰度 PNG，解码为 TYPE_BYTE_GRAY；</li>
+ *     <li>{@code alpha}：带透明通道的 PNG，解码为 TYPE_4BYTE_ABGR。</li>
+ * </ul>
+ */
+final class BenchmarkImages {
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * @param size   {@code 宽x高}，如 {@code 1920x1080}
+     * @param format jpeg / png / gray / alpha
+     * @return 编码后的图像文件内容
+     */
+    static byte[] encoded(String size, String format) throws IOException {
+        int[] wh = CreateTestImage.parseSize(size);
+        return CreateTestImage.encode(wh[0], wh[1], format, 42);
+    }
+
+    static BufferedImage decode(byte[] encoded) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(encoded));
+        if (image == null) {
+            throw new IOException("无法解码图像");
+        }
+        return image;
+    }
+}
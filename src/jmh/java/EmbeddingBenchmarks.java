@@ -0,0 +1,31 @@
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行 embedding 相关的 JMH 基准，并总是启用 GC profiler，报告每次操作的分配量（gc.alloc.rate.norm）与分配速率。
+ * <p>
+ * 用法（先 {@code mvn -Pjmh package}）：
+ * <pre>
+ * java -cp target/djl-playground-1.0.0-SNAPSHOT.jar EmbeddingBenchmarks                      # 全部基准
+ * java -cp target/djl-playground-1.0.0-SNAPSHOT.jar EmbeddingBenchmarks Preprocessing -p size=4000x3000
+ * java -cp target/djl-playground-1.0.0-SNAPSHOT.jar EmbeddingBenchmarks -jvmArgsAppend -Dembedding.kernels.scalar=true
+ * </pre>
+ * 参数与 JMH 自带的命令行相同，可以把结果以 {@code -rf json -rff baseline.json} 保存，作为后续优化的对比基线。
+ */
+public final class EmbeddingBenchmarks {
+
+    private EmbeddingBenchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
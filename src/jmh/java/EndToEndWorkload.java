@@ -0,0 +1,41 @@
+import ai.onnxruntime.OrtException;
+import com.keevol.ai.djl.playground.benchmark.EndToEndBenchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link EndToEndBenchmark} 的工作负载。
+ */
+public final class EndToEndWorkload implements EndToEndBenchmark.Workload {
+
+    private InferenceEngine engine;
+    private ImageEmbeddingDemo embedder;
+    private byte[] encoded;
+    private int batch;
+
+    @Override
+    public void setUp(String modelPath, String size, String format, int batch) throws IOException, OrtException {
+        this.batch = batch;
+        encoded = BenchmarkImages.encoded(size, format);
+        engine = new InferenceEngine(modelPath, InferenceEngineConfig.fromSystemProperties());
+        embedder = new ImageEmbeddingDemo(engine, batch);
+    }
+
+    @Override
+    public List<float[]> embed() throws IOException, OrtException {
+        List<BufferedImage> images = new ArrayList<>(batch);
+        for (int i = 0; i < batch; i++) {
+            images.add(BenchmarkImages.decode(encoded));
+        }
+        return embedder.embedImages(images);
+    }
+
+    @Override
+    public void close() throws Exception {
+        embedder.close();
+        engine.close();
+    }
+}
@@ -0,0 +1,45 @@
+import com.keevol.ai.djl.playground.benchmark.ImageBackendBenchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * {@link ImageBackendBenchmark} 的工作负载。
+ */
+public final class ImageBackendWorkload implements ImageBackendBenchmark.Workload {
+
+    private final ImageProcessorConfig config = new ImageProcessorConfig();
+    private byte[] encoded;
+    private BufferedImage decoded;
+    private FloatBuffer buffer;
+
+    @Override
+    public void setUp(String backend, String size, String format) throws IOException {
+        config.setBackend(backend);
+        encoded = BenchmarkImages.encoded(size, format);
+        decoded = decode();
+        buffer = ByteBuffer.allocateDirect(3 * config.getCrop_height() * config.getCrop_width() * Float.BYTES)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    @Override
+    public BufferedImage decode() throws IOException {
+        return ImagePreprocessors.decodeImage(new ByteArrayInputStream(encoded), config);
+    }
+
+    @Override
+    public FloatBuffer decodeAndPreprocess() throws IOException {
+        ImagePreprocessors.preprocessImage(decode(), config, buffer, 0);
+        return buffer;
+    }
+
+    @Override
+    public FloatBuffer preprocess() {
+        ImagePreprocessors.preprocessImage(decoded, config, buffer, 0);
+        return buffer;
+    }
+}
@@ -0,0 +1,28 @@
+import com.keevol.ai.djl.playground.benchmark.PoolingBenchmark;
+
+import java.util.Random;
+
+/**
+ * {@link PoolingBenchmark} 的工作负载。
+ */
+public final class PoolingWorkload implements PoolingBenchmark.Workload {
+
+    private float[] data;
+    private long[] shape;
+
+    @Override
+    public void setUp(int batch, int channels) {
+        shape = new long[]{batch, channels, 7, 7};
+        data = new float[batch * channels * 49];
+        Random random = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            // ReLU 之后的激活值，约一半为 0
+            data[i] = Math.max(0, (float) random.nextGaussian());
+        }
+    }
+
+    @Override
+    public float[][] globalAvgPooling() {
+        return ImageEmbeddingExtractor.extractBatchWithGlobalAvgPooling(data, shape);
+    }
+}
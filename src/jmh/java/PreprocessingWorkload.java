@@ -0,0 +1,85 @@
+import com.keevol.ai.djl.playground.benchmark.PreprocessingBenchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * {@link PreprocessingBenchmark} 的工作负载。
+ */
+public final class PreprocessingWorkload implements PreprocessingBenchmark.Workload {
+
+    private final ImageProcessorConfig config = new ImageProcessorConfig();
+    private byte[] encoded;
+    private BufferedImage image;
+    private BufferedImage cropped;
+    private float[] chw;
+    private FloatBuffer buffer;
+
+    @Override
+    public void setUp(String size, String format) throws IOException {
+        encoded = BenchmarkImages.encoded(size, format);
+        image = BenchmarkImages.decode(encoded);
+        cropped = ImagePreprocessingUtils.centerCrop(ImagePreprocessingUtils.resizeByShortestEdge(image, config.getShortest_edge()),
+                config.getCrop_width(), config.getCrop_height());
+        chw = new float[3 * 224 * 224];
+        buffer = ByteBuffer.allocateDirect(chw.length * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    @Override
+    public BufferedImage decode() throws IOException {
+        return BenchmarkImages.decode(encoded);
+    }
+
+    @Override
+    public BufferedImage resizeCropFused() {
+        int[] resized = ImageResampler.shortestEdgeSize(image.getWidth(), image.getHeight(), config.getShortest_edge());
+        return ImageResampler.resizeAndCenterCrop(image, resized[0], resized[1],
+                config.getCrop_width(), config.getCrop_height(), config.getResample());
+    }
+
+    @Override
+    public BufferedImage resizeCropStepwise() {
+        return ImagePreprocessingUtils.centerCrop(ImagePreprocessingUtils.resizeByShortestEdge(image, config.getShortest_edge()),
+                config.getCrop_width(), config.getCrop_height());
+    }
+
+    @Override
+    public float[] toCHWFused() {
+        ImagePreprocessors.writeCHW(cropped, config.getPixelTransform(), chw, 0);
+        return chw;
+    }
+
+    @Override
+    public float[] toCHWStepwise() {
+        return stepwiseCHW(cropped);
+    }
+
+    @Override
+    public float[] preprocessFused() {
+        return ImagePreprocessors.preprocessImage(image, config);
+    }
+
+    @Override
+    public FloatBuffer preprocessIntoBuffer() {
+        ImagePreprocessors.preprocessImage(image, config, buffer, 0);
+        return buffer;
+    }
+
+    @Override
+    public float[] preprocessStepwise() {
+        return stepwiseCHW(resizeCropStepwise());
+    }
+
+    /**
+     * ImagePreprocessingUtils 的分步流水线：每一步都产生一个完整的中间数组。
+     */
+    private float[] stepwiseCHW(BufferedImage image) {
+        int[][][] pixels = ImagePreprocessingUtils.extractRGBPixels(image);
+        float[][][] rescaled = ImagePreprocessingUtils.rescalePixels(pixels, config.getRescale_factor());
+        float[][][] normalized = ImagePreprocessingUtils.normalizePixels(rescaled, config.getImage_mean(), config.getImage_std());
+        return ImagePreprocessingUtils.flattenNCHW(ImagePreprocessingUtils.convertToNCHW(normalized));
+    }
+}
@@ -0,0 +1,73 @@
+package com.keevol.ai.djl.playground.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端的 embedding 基准：从编码后的图像文件内容开始，解码、预处理、推理、池化。
+ * <p>
+ * 默认使用 {@code src/test/resources/tiny-embedding.onnx}：输入 {@code pixel_values} [N, 3, 224, 224]，
+ * 两层步长卷积加 ReLU，输出 [N, 32, 7, 7]，权重由固定种子生成。模型很小，推理只占少量时间，
+ * 测得的主要是推理以外的开销；换成真实模型时通过 {@code -p modelPath=...} 指定。
+ * 需要在项目根目录下运行，或以绝对路径指定模型。实现见默认包中的 {@code EndToEndWorkload}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class EndToEndBenchmark {
+
+    public interface Workload extends AutoCloseable {
+        void setUp(String modelPath, String size, String format, int batch) throws Exception;
+
+        /**
+         * 解码 batch 张图像后一次批量推理；batch 为 1 时即单张图像的端到端延迟。
+         */
+        Object embed() throws Exception;
+    }
+
+    @Param({"src/test/resources/tiny-embedding.onnx"})
+    public String modelPath;
+
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    public String size;
+
+    @Param({"jpeg", "png"})
+    public String format;
+
+    @Param({"1", "8"})
+    public int batch;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = Workloads.load("EndToEndWorkload", Workload.class);
+        workload.setUp(modelPath, size, format, batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.close();
+    }
+
+    @Benchmark
+    public Object embed() throws Exception {
+        return workload.embed();
+    }
+}
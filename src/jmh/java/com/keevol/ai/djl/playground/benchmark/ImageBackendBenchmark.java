@@ -0,0 +1,77 @@
+package com.keevol.ai.djl.playground.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比两个 {@code ImageBackend}：从编码数据到 CHW 输入的耗时与分配量。
+ * <ul>
+ *     <li>{@code decode}：按预处理配置解码；java2d 后端得到降采样或区域解码的图像，
+ *     opencv 后端在解码时即完成缩放与裁剪，两者的分工不同，应与 {@code decodeAndPreprocess} 一起看；</li>
+ *     <li>{@code decodeAndPreprocess}：解码加完整预处理，写入直接内存，即服务中每张图像的预处理开销；</li>
+ *     <li>{@code preprocess}：只做解码之后的部分，opencv 后端只剩查表写出 CHW。</li>
+ * </ul>
+ * 数值差异见 {@code ImageBackendParity}。实现见默认包中的 {@code ImageBackendWorkload}。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ImageBackendBenchmark {
+
+    public interface Workload {
+        void setUp(String backend, String size, String format) throws IOException;
+
+        Object decode() throws IOException;
+
+        Object decodeAndPreprocess() throws IOException;
+
+        Object preprocess();
+    }
+
+    @Param({"java2d", "opencv"})
+    public String backend;
+
+    @Param({"640x480", "1920x1080", "4000x3000", "8160x6120"})
+    public String size;
+
+    @Param({"jpeg", "png"})
+    public String format;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() throws IOException {
+        workload = Workloads.load("ImageBackendWorkload", Workload.class);
+        workload.setUp(backend, size, format);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        return workload.decode();
+    }
+
+    @Benchmark
+    public Object decodeAndPreprocess() throws IOException {
+        return workload.decodeAndPreprocess();
+    }
+
+    @Benchmark
+    public Object preprocess() {
+        return workload.preprocess();
+    }
+}
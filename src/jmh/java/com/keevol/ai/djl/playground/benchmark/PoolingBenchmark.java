@@ -0,0 +1,53 @@
+package com.keevol.ai.djl.playground.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code ImageEmbeddingExtractor} 全局平均池化的基准，输出形状与 MobileNetV2 的最后一层相同：[N, 1280, 7, 7]。
+ * 实现见默认包中的 {@code PoolingWorkload}。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PoolingBenchmark {
+
+    public interface Workload {
+        void setUp(int batch, int channels);
+
+        Object globalAvgPooling();
+    }
+
+    @Param({"1", "8", "32"})
+    public int batch;
+
+    @Param({"1280"})
+    public int channels;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workloads.load("PoolingWorkload", Workload.class);
+        workload.setUp(batch, channels);
+    }
+
+    @Benchmark
+    public Object globalAvgPooling() {
+        return workload.globalAvgPooling();
+    }
+}
@@ -0,0 +1,110 @@
+package com.keevol.ai.djl.playground.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 预处理各阶段的基准：{@code ImagePreprocessors} 的融合实现对比 {@code ImagePreprocessingUtils} 的分步实现。
+ * <ul>
+ *     <li>{@code decode}：ImageIO 解码，作为其余阶段的参照；</li>
+ *     <li>{@code resizeCrop*}：按最短边缩放到 256 并中心裁剪到 224，融合实现只计算裁剪窗口内的像素；</li>
+ *     <li>{@code toCHW*}：从 224x224 的裁剪结果提取像素、rescale、normalize 并转为 CHW；</li>
+ *     <li>{@code preprocess*}：从解码后的图像到 CHW 数组的完整预处理，{@code preprocessIntoBuffer} 直接写入直接内存。</li>
+ * </ul>
+ * 以源图尺寸与格式参数化：格式决定解码后的栅格类型，从而决定像素读取走哪条路径（见 {@code ImagePixelReader}）。
+ * 实现见默认包中的 {@code PreprocessingWorkload}。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PreprocessingBenchmark {
+
+    public interface Workload {
+        void setUp(String size, String format) throws IOException;
+
+        Object decode() throws IOException;
+
+        Object resizeCropFused();
+
+        Object resizeCropStepwise();
+
+        Object toCHWFused();
+
+        Object toCHWStepwise();
+
+        Object preprocessFused();
+
+        Object preprocessIntoBuffer();
+
+        Object preprocessStepwise();
+    }
+
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    public String size;
+
+    @Param({"jpeg", "png", "gray", "alpha"})
+    public String format;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() throws IOException {
+        workload = Workloads.load("PreprocessingWorkload", Workload.class);
+        workload.setUp(size, format);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        return workload.decode();
+    }
+
+    @Benchmark
+    public Object resizeCropFused() {
+        return workload.resizeCropFused();
+    }
+
+    @Benchmark
+    public Object resizeCropStepwise() {
+        return workload.resizeCropStepwise();
+    }
+
+    @Benchmark
+    public Object toCHWFused() {
+        return workload.toCHWFused();
+    }
+
+    @Benchmark
+    public Object toCHWStepwise() {
+        return workload.toCHWStepwise();
+    }
+
+    @Benchmark
+    public Object preprocessFused() {
+        return workload.preprocessFused();
+    }
+
+    @Benchmark
+    public Object preprocessIntoBuffer() {
+        return workload.preprocessIntoBuffer();
+    }
+
+    @Benchmark
+    public Object preprocessStepwise() {
+        return workload.preprocessStepwise();
+    }
+}
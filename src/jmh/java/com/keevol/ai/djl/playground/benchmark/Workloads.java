@@ -0,0 +1,27 @@
+package com.keevol.ai.djl.playground.benchmark;
+
+/**
+ * 按类名加载基准的工作负载。
+ * <p>
+ * JMH 要求基准类位于具名包中，而被测的预处理、推理等实现类都在默认包中，具名包中的代码无法引用它们
+ * （与 {@code Bootstrap} 加载 {@code EmbeddingBackend} 的原因相同）。因此每个基准类只声明一个 {@code Workload} 接口并转发调用，
+ * 实现位于 {@code src/jmh/java} 的默认包中，在 {@code @Setup} 中按类名加载。接口调用只有一个实现，会被 JIT 内联。
+ */
+final class Workloads {
+
+    private Workloads() {
+    }
+
+    /**
+     * @param className 默认包中的实现类名，须为 public 且有 public 无参构造函数
+     * @param type      工作负载接口
+     * @return 新的实例
+     */
+    static <T> T load(String className, Class<T> type) {
+        try {
+            return type.cast(Class.forName(className).getConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法加载基准工作负载: " + className, e);
+        }
+    }
+}
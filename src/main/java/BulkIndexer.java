@@ -0,0 +1,363 @@
+import ai.onnxruntime.OrtException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 批量索引命令：遍历图像库目录树，用所有核心和批量推理为每张图像生成 embedding。
+ * <p>
+ * 图像经由 {@link EmbeddingPipeline} 并行解码、预处理与推理，结果由单个写入线程顺序写入 {@link Sink}。
+ * Sink 记录了已完成的文件及其修改时间，重新运行时跳过未变化的文件，因此崩溃或中断后可以从上次的检查点继续；
+ * 失败的文件不会被记录，下次运行时会重试。运行期间定期输出进度、吞吐 (images/sec)、失败数与预计剩余时间。
+ * <p>
+ * 提供 {@link EmbeddingCache} 时先读入文件、按内容查缓存，图像库中内容相同的文件只推理一次；
+ * 内容哈希同时交给 Sink，{@link EmbeddingStore} 不必再读一遍文件。缓存内存层的容量由
+ * {@code -Dembedding.cache.max.bytes} 指定，默认 256 MiB，为 0 时不使用缓存。
+ * <p>
+ * 用法：
+ * <pre>
+ * java BulkIndexer &lt;图像库目录&gt; &lt;模型路径&gt; &lt;输出文件&gt; [批量大小]
+ * </pre>
+ * 输出文件以 {@code .db} 或 {@code .sqlite} 结尾时写入 {@link EmbeddingStore}，否则写入 {@link EmbeddingLogFile}。
+ * 会话个数、线程数等推理参数通过 {@code -Dembedding.ort.*} 系统属性指定，见 {@link InferenceEngineConfig}。
+ */
+public final class BulkIndexer {
+
+    /**
+     * embedding 的输出目标，同时记录断点续跑所需的进度。只会在一个线程上调用。
+     */
+    public interface Sink extends AutoCloseable {
+        /**
+         * @return 已完成的文件路径及其索引时的修改时间
+         */
+        Map<String, Long> completed() throws IOException;
+
+        void write(String path, long mtime, float[] embedding) throws IOException;
+
+        /**
+         * 调用方已算出文件内容哈希（见 {@link ContentHash}）时调用，默认忽略哈希。
+         *
+         * @param contentHash 内容哈希，未知时为 null
+         */
+        default void write(String path, long mtime, String contentHash, float[] embedding) throws IOException {
+            write(path, mtime, embedding);
+        }
+
+        /**
+         * 将已写入的结果持久化；返回后这些文件在下次运行时会被跳过。
+         */
+        void checkpoint() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("png", "jpg", "jpeg", "bmp", "gif");
+    private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    /**
+     * 使用缓存时同时读入内存、计算哈希的文件数上限
+     */
+    private static final int MAX_CONCURRENT_READS = 64;
+
+    private final EmbeddingPipeline pipeline;
+    private final Sink sink;
+    private final EmbeddingCache cache;
+
+    /**
+     * @param pipeline 用于生成 embedding 的流水线，由调用方负责关闭
+     * @param sink     输出目标，由调用方负责关闭
+     */
+    public BulkIndexer(EmbeddingPipeline pipeline, Sink sink) {
+        this(pipeline, sink, null);
+    }
+
+    /**
+     * @param pipeline 用于生成 embedding 的流水线，由调用方负责关闭
+     * @param sink     输出目标，由调用方负责关闭
+     * @param cache    按内容缓存 embedding，标识须与流水线的模型与预处理配置一致；为 null 时不使用缓存
+     */
+    public BulkIndexer(EmbeddingPipeline pipeline, Sink sink, EmbeddingCache cache) {
+        if (pipeline == null || sink == null) {
+            throw new IllegalArgumentException("pipeline 与 sink 不能为 null");
+        }
+        this.pipeline = pipeline;
+        this.sink = sink;
+        this.cache = cache;
+    }
+
+    /**
+     * 索引 root 下所有尚未索引或已被修改的图像。
+     *
+     * @param root 图像库根目录
+     * @return 本次运行的统计
+     * @throws IOException 遍历目录或写入 sink 失败时抛出
+     */
+    public Progress index(Path root) throws IOException {
+        Map<String, Long> completed = sink.completed();
+        List<ImageFile> pending = listPending(root, completed);
+        Progress progress = new Progress(pending.size());
+        System.out.println("待索引图像: " + pending.size() + "，已完成: " + completed.size());
+        if (pending.isEmpty()) {
+            return progress;
+        }
+
+        // 提交线程在流水线满时阻塞，完成的结果交给当前线程顺序写入 sink
+        LinkedBlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+        Thread submitter = Thread.ofVirtual().name("bulk-indexer-submit").start(() -> {
+            if (cache != null) {
+                submitCached(pending, completions);
+                return;
+            }
+            for (ImageFile image : pending) {
+                pipeline.submit(image.path).whenComplete((embedding, error) ->
+                        completions.add(new Completion(image, null, embedding, error)));
+            }
+        });
+
+        long lastCheckpoint = System.nanoTime();
+        long lastReport = lastCheckpoint;
+        try {
+            while (progress.processed() < pending.size()) {
+                Completion completion = completions.poll(1, TimeUnit.SECONDS);
+                if (completion != null) {
+                    if (completion.error != null) {
+                        progress.failed++;
+                        System.err.println("索引失败: " + completion.image.path + " - " + rootCause(completion.error));
+                    } else {
+                        sink.write(completion.image.path, completion.image.mtime, completion.contentHash, completion.embedding);
+                        progress.succeeded++;
+                    }
+                }
+                long now = System.nanoTime();
+                if (now - lastCheckpoint >= CHECKPOINT_INTERVAL_NANOS) {
+                    sink.checkpoint();
+                    lastCheckpoint = now;
+                }
+                if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+                    System.out.println(progress);
+                    lastReport = now;
+                }
+            }
+            submitter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            submitter.interrupt();
+        } finally {
+            sink.checkpoint();
+        }
+        System.out.println(progress);
+        return progress;
+    }
+
+    /**
+     * 在虚拟线程上读入文件、计算内容哈希后查缓存，未命中的交给流水线；同时读入内存的文件数有上限。
+     */
+    private void submitCached(List<ImageFile> pending, LinkedBlockingQueue<Completion> completions) {
+        Semaphore reads = new Semaphore(MAX_CONCURRENT_READS);
+        try (ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (ImageFile image : pending) {
+                reads.acquire();
+                readers.execute(() -> {
+                    try {
+                        byte[] bytes = Files.readAllBytes(Paths.get(image.path));
+                        String contentHash = ContentHash.of(bytes);
+                        cache.embedAsync(contentHash, bytes, pipeline::submit).whenComplete((embedding, error) ->
+                                completions.add(new Completion(image, contentHash, embedding, error)));
+                    } catch (Exception e) {
+                        completions.add(new Completion(image, null, null, e));
+                    } finally {
+                        reads.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            // index() 被中断
+        }
+    }
+
+    /**
+     * 遍历目录树，找出扩展名为图像、且不在已完成列表中或修改时间已变化的文件。
+     */
+    static List<ImageFile> listPending(Path root, Map<String, Long> completed) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException("图像库目录不存在: " + root);
+        }
+        List<ImageFile> pending = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(Files::isRegularFile)
+                    .filter(BulkIndexer::isImage)
+                    .sorted()
+                    .forEach(file -> {
+                        try {
+                            String path = file.toAbsolutePath().normalize().toString();
+                            long mtime = Files.getLastModifiedTime(file).toMillis();
+                            Long indexed = completed.get(path);
+                            if (indexed == null || indexed != mtime) {
+                                pending.add(new ImageFile(path, mtime));
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return pending;
+    }
+
+    private static boolean isImage(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static String rootCause(Throwable error) {
+        while (error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error.toString();
+    }
+
+    static final class ImageFile {
+        final String path;
+        final long mtime;
+
+        ImageFile(String path, long mtime) {
+            this.path = path;
+            this.mtime = mtime;
+        }
+    }
+
+    private static final class Completion {
+        final ImageFile image;
+        final String contentHash;
+        final float[] embedding;
+        final Throwable error;
+
+        Completion(ImageFile image, String contentHash, float[] embedding, Throwable error) {
+            this.image = image;
+            this.contentHash = contentHash;
+            this.embedding = embedding;
+            this.error = error;
+        }
+    }
+
+    /**
+     * 一次运行的进度：成功、失败数，吞吐与预计剩余时间。
+     */
+    public static final class Progress {
+        private final int total;
+        private final long startNanos = System.nanoTime();
+        private int succeeded;
+        private int failed;
+
+        Progress(int total) {
+            this.total = total;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getSucceeded() {
+            return succeeded;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        int processed() {
+            return succeeded + failed;
+        }
+
+        /**
+         * @return 自开始以来的平均吞吐 (images/sec)
+         */
+        public double getImagesPerSecond() {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            return seconds <= 0 ? 0 : processed() / seconds;
+        }
+
+        @Override
+        public String toString() {
+            double rate = getImagesPerSecond();
+            long etaSeconds = rate <= 0 ? -1 : Math.round((total - processed()) / rate);
+            return String.format("进度 %d/%d (%.1f%%), 失败 %d, %.1f images/sec, ETA %s",
+                    processed(), total, total == 0 ? 100.0 : 100.0 * processed() / total, failed, rate,
+                    etaSeconds < 0 ? "-" : String.format("%d:%02d:%02d", etaSeconds / 3600, etaSeconds / 60 % 60, etaSeconds % 60));
+        }
+    }
+
+    /**
+     * 按输出文件的扩展名选择 sink；SQLite 存储以 {@link #modelIdOf(String)} 作为模型标识。
+     */
+    static Sink openSink(Path output, String modelPath) throws IOException, SQLException {
+        String name = output.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".db") || name.endsWith(".sqlite")) {
+            return new EmbeddingStore(output, modelIdOf(modelPath));
+        }
+        return new EmbeddingLogFile(output);
+    }
+
+    /**
+     * @return 模型文件所在目录名与文件名，如 {@code mobilenet-v2/model.onnx}
+     */
+    static String modelIdOf(String modelPath) {
+        Path model = Paths.get(modelPath).toAbsolutePath();
+        return model.getParent() == null
+                ? model.getFileName().toString()
+                : model.getParent().getFileName() + "/" + model.getFileName();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("用法: BulkIndexer <图像库目录> <模型路径> <输出文件> [批量大小]");
+            System.exit(1);
+        }
+        Path root = Paths.get(args[0]);
+        String modelPath = args[1];
+        Path output = Paths.get(args[2]);
+        int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+
+        InferenceEngineConfig engineConfig = InferenceEngineConfig.fromSystemProperties();
+        System.out.println("Session config: " + engineConfig);
+        ImageProcessorConfig config = new ImageProcessorConfig();
+        long cacheMaxBytes = Long.getLong("embedding.cache.max.bytes", 256L << 20);
+        EmbeddingCache cache = cacheMaxBytes > 0
+                ? new EmbeddingCache(EmbeddingCache.identity(modelIdOf(modelPath), config), cacheMaxBytes, null)
+                : null;
+        try (InferenceEngine engine = new InferenceEngine(modelPath, engineConfig);
+             EmbeddingPipeline pipeline = new EmbeddingPipeline(engine, config, batchSize, 4 * batchSize);
+             Sink sink = openSink(output, modelPath)) {
+            Progress progress = new BulkIndexer(pipeline, sink, cache).index(root);
+            System.out.println("索引完成: 成功 " + progress.getSucceeded() + "，失败 " + progress.getFailed());
+            System.out.println(pipeline.getStatistics());
+            if (cache != null) {
+                System.out.println("缓存: " + cache.getStatistics());
+            }
+        } catch (OrtException e) {
+            System.err.println("ONNX Runtime error: " + e.getMessage());
+            e.printStackTrace();
+        } catch (Exception e) {
+            System.err.println("An unexpected error occurred: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
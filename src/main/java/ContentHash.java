@@ -0,0 +1,60 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 图像文件内容哈希工具类。
+ * <p>
+ * 对原始文件字节计算 SHA-256（JDK 在支持的 CPU 上使用 SHA 指令加速），以十六进制字符串表示，
+ * 内容相同的文件无论路径如何都得到相同的键，用于 embedding 的存储与缓存。
+ * <p>
+ * 这里需要抗碰撞的哈希，不能换成 xxHash3 / Murmur3 这类非密码学哈希：HTTP 服务的 {@link EmbeddingCache}
+ * 由所有客户端共享，键又持久化在 {@link EmbeddingStore} 中，而这类哈希存在与种子无关的碰撞构造，
+ * 上传一张与他人图像同键的图像即可污染对方的结果。代价很小：开启 SHA 指令时约 1.1 GB/s，
+ * 一张 3 MB 的照片约 3 ms，而解码同一张照片需要数十毫秒。
+ */
+public final class ContentHash {
+
+    // 私有构造函数，防止实例化
+    private ContentHash() {}
+
+    /**
+     * @param bytes 原始文件内容
+     * @return 64 个字符的十六进制 SHA-256
+     */
+    public static String of(byte[] bytes) {
+        return HexFormat.of().formatHex(digest().digest(bytes));
+    }
+
+    /**
+     * 流式读取文件计算哈希，不把整个文件读入内存。
+     *
+     * @param file 文件路径
+     * @return 64 个字符的十六进制 SHA-256
+     * @throws IOException 读取文件失败时抛出
+     */
+    public static String of(Path file) throws IOException {
+        MessageDigest digest = digest();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // 每个 Java 平台都必须支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,34 +1,295 @@
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
 import javax.imageio.ImageIO;
 
 /**
- * 创建一个测试图片用于验证预处理
+ * 创建测试图片：不带参数时生成单张 300x200 的 test_image.jpg 用于验证预处理；
+ * 带参数时生成一个合成图像语料库，用于压测与容量规划（见 {@link LoadDriver}）。
+ * <p>
+ * 用法：
+ * <pre>
+ * CreateTestImage &lt;输出目录&gt; &lt;张数&gt; [--seed 42] [--sizes 640x480:4,1920x1080:4,4032x3024:2,8160x6120:1]
+ *                 [--formats jpeg:6,png:2,gray:1,alpha:1]
+ * </pre>
+ * {@code --sizes} 与 {@code --formats} 为带权重的取值列表，每张图像按权重独立抽取尺寸与格式，
+ * 单张图像最大 50 MP。格式：
+ * <ul>
+ *     <li>{@code jpeg}：RGB JPEG；</li>
+ *     <li>{@code png}：RGB PNG；</li>
+ *     <li>{@code gray}：灰度 PNG；</li>
+ *     <li>{@code alpha}：带透明通道的 PNG。</li>
+ * </ul>
+ * 第 i 张图像的尺寸、格式与内容只由 (seed, i) 决定，相同参数总是生成逐字节相同的语料库。
+ * 生成前先抽样检查实际比例与权重一致，结束时输出语料库中各尺寸与格式的张数。
+ * 目录中同时写出 {@code manifest.tsv}（文件名、宽、高、格式、字节数）。
  */
 public class CreateTestImage {
+
+    /**
+     * 单张图像的最大像素数
+     */
+    static final long MAX_PIXELS = 50_000_000L;
+
+    private static final String DEFAULT_SIZES = "640x480:4,1920x1080:4,4032x3024:2,8160x6120:1";
+    private static final String DEFAULT_FORMATS = "jpeg:6,png:2,gray:1,alpha:1";
+
+    /**
+     * 检查抽取比例时的抽样张数与允许的偏差（绝对值）：10000 次抽样的标准差不超过 0.005
+     */
+    private static final int CHECK_SAMPLES = 10_000;
+    private static final double CHECK_TOLERANCE = 0.03;
+
     public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            createSingle();
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println("用法: CreateTestImage [<输出目录> <张数> [--seed 42] [--sizes 640x480:4,...] [--formats jpeg:6,...]]");
+            System.exit(1);
+        }
+        Path dir = Paths.get(args[0]);
+        int count = Integer.parseInt(args[1]);
+        long seed = 42;
+        String sizes = DEFAULT_SIZES;
+        String formats = DEFAULT_FORMATS;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                case "--sizes" -> sizes = args[i + 1];
+                case "--formats" -> formats = args[i + 1];
+                default -> throw new IllegalArgumentException("未知的参数: " + args[i]);
+            }
+        }
+        createCorpus(dir, count, seed, Weighted.parse(sizes), Weighted.parse(formats));
+    }
+
+    private static void createSingle() throws IOException {
         // 创建一个简单的测试图片 (300x200)
         BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
         Graphics2D g2d = image.createGraphics();
-        
+
         // 填充背景色
         g2d.setColor(Color.BLUE);
         g2d.fillRect(0, 0, 300, 200);
-        
+
         // 画一些图形
         g2d.setColor(Color.RED);
         g2d.fillOval(50, 50, 100, 100);
-        
+
         g2d.setColor(Color.GREEN);
         g2d.fillRect(150, 75, 100, 50);
-        
+
         g2d.dispose();
-        
+
         // 保存图片
         File outputFile = new File("test_image.jpg");
         ImageIO.write(image, "jpg", outputFile);
-        
+
         System.out.println("测试图片已创建: " + outputFile.getAbsolutePath());
     }
-}
\ No newline at end of file
+
+    /**
+     * 生成语料库，逐张生成并写盘，同一时刻只有一张图像在内存中。
+     *
+     * @param dir     输出目录，不存在时创建
+     * @param count   张数
+     * @param seed    随机种子
+     * @param sizes   带权重的尺寸，取值形如 {@code 1920x1080}
+     * @param formats 带权重的格式
+     */
+    static void createCorpus(Path dir, int count, long seed, Weighted sizes, Weighted formats) throws IOException {
+        for (String size : sizes.values) {
+            int[] wh = parseSize(size);
+            if ((long) wh[0] * wh[1] > MAX_PIXELS) {
+                throw new IllegalArgumentException("尺寸 " + size + " 超过 " + MAX_PIXELS / 1_000_000 + " MP");
+            }
+        }
+        checkDistribution(seed, sizes, formats);
+        Files.createDirectories(dir);
+        Map<String, Integer> picked = new TreeMap<>();
+        long totalBytes = 0;
+        long start = System.nanoTime();
+        try (PrintWriter manifest = new PrintWriter(Files.newBufferedWriter(dir.resolve("manifest.tsv"), StandardCharsets.UTF_8))) {
+            manifest.println("file\twidth\theight\tformat\tbytes");
+            for (int i = 0; i < count; i++) {
+                Random random = randomOf(seed, i);
+                String size = sizes.pick(random);
+                int[] wh = parseSize(size);
+                String format = formats.pick(random);
+                picked.merge(size, 1, Integer::sum);
+                picked.merge(format, 1, Integer::sum);
+                String file = String.format("img-%06d.%s", i, extensionOf(format));
+                byte[] encoded = encode(wh[0], wh[1], format, random.nextLong());
+                Files.write(dir.resolve(file), encoded);
+                manifest.println(file + "\t" + wh[0] + "\t" + wh[1] + "\t" + format + "\t" + encoded.length);
+                totalBytes += encoded.length;
+                if ((i + 1) % 100 == 0) {
+                    System.out.println("已生成 " + (i + 1) + "/" + count);
+                }
+            }
+        }
+        System.out.printf("语料库已创建: %s，%d 张，%.1f MB，耗时 %.1f s%n", dir.toAbsolutePath(), count,
+                totalBytes / 1048576.0, (System.nanoTime() - start) / 1e9);
+        System.out.println("各尺寸与格式的张数: " + picked);
+    }
+
+    /**
+     * 第 i 张图像的随机数发生器。
+     * <p>
+     * 种子先经 SplitMix64 混合：{@link Random} 只对种子做线性扰动，相邻的种子给出的第一个 {@code nextInt(n)}
+     * 在 n 为 2 的幂时几乎相同，直接以 {@code seed + i} 作种子会使整个语料库抽到同一个尺寸或格式。
+     */
+    static Random randomOf(long seed, int i) {
+        long z = seed + (i + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new Random(z ^ (z >>> 31));
+    }
+
+    /**
+     * 按与 {@link #createCorpus} 相同的方式抽样，检查各取值的比例与权重一致。
+     *
+     * @throws IllegalStateException 偏差超过 {@link #CHECK_TOLERANCE}
+     */
+    static void checkDistribution(long seed, Weighted sizes, Weighted formats) {
+        int[] sizeCounts = new int[sizes.values.size()];
+        int[] formatCounts = new int[formats.values.size()];
+        for (int i = 0; i < CHECK_SAMPLES; i++) {
+            Random random = randomOf(seed, i);
+            sizeCounts[sizes.values.indexOf(sizes.pick(random))]++;
+            formatCounts[formats.values.indexOf(formats.pick(random))]++;
+        }
+        sizes.check(sizeCounts);
+        formats.check(formatCounts);
+    }
+
+    /**
+     * 生成一张合成图像并编码：渐变背景加随机色块，既有平滑区域也有边缘，编码后的大小与解码耗时接近真实照片。
+     *
+     * @param width  宽度
+     * @param height 高度
+     * @param format jpeg / png / gray / alpha
+     * @param seed   内容的随机种子
+     * @return 编码后的图像文件内容
+     */
+    static byte[] encode(int width, int height, String format, long seed) throws IOException {
+        int type = switch (format) {
+            case "jpeg", "png" -> BufferedImage.TYPE_INT_RGB;
+            case "gray" -> BufferedImage.TYPE_BYTE_GRAY;
+            case "alpha" -> BufferedImage.TYPE_INT_ARGB;
+            default -> throw new IllegalArgumentException("未知的格式: " + format);
+        };
+        BufferedImage image = draw(width, height, type, new Random(seed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, extensionOf(format), out)) {
+            throw new IOException("没有可用的 " + format + " 编码器");
+        }
+        return out.toByteArray();
+    }
+
+    private static String extensionOf(String format) {
+        return "jpeg".equals(format) ? "jpg" : "png";
+    }
+
+    private static BufferedImage draw(int width, int height, int type, Random random) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setPaint(new GradientPaint(0, 0, new Color(random.nextInt(), true), width, height, new Color(random.nextInt(), true)));
+            g.fillRect(0, 0, width, height);
+            for (int i = 0; i < 64; i++) {
+                g.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), 64 + random.nextInt(192)));
+                int w = 1 + random.nextInt(Math.max(1, width / 4));
+                int h = 1 + random.nextInt(Math.max(1, height / 4));
+                int x = random.nextInt(width);
+                int y = random.nextInt(height);
+                if (random.nextBoolean()) {
+                    g.fillOval(x, y, w, h);
+                } else {
+                    g.fillRect(x, y, w, h);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    static int[] parseSize(String size) {
+        String[] wh = size.split("x");
+        if (wh.length != 2) {
+            throw new IllegalArgumentException("尺寸应形如 1920x1080: " + size);
+        }
+        return new int[]{Integer.parseInt(wh[0].trim()), Integer.parseInt(wh[1].trim())};
+    }
+
+    /**
+     * 带权重的取值列表，形如 {@code a:3,b:1}，省略权重时为 1。
+     */
+    static final class Weighted {
+        final List<String> values = new ArrayList<>();
+        private final List<Integer> cumulative = new ArrayList<>();
+        private int total;
+
+        static Weighted parse(String spec) {
+            Weighted weighted = new Weighted();
+            for (String item : spec.split(",")) {
+                String[] parts = item.trim().split(":");
+                int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+                if (weight <= 0) {
+                    throw new IllegalArgumentException("权重必须大于 0: " + item);
+                }
+                weighted.total += weight;
+                weighted.values.add(parts[0].trim());
+                weighted.cumulative.add(weighted.total);
+            }
+            return weighted;
+        }
+
+        String pick(Random random) {
+            int r = random.nextInt(total);
+            for (int i = 0; i < values.size(); i++) {
+                if (r < cumulative.get(i)) {
+                    return values.get(i);
+                }
+            }
+            throw new IllegalStateException();
+        }
+
+        /**
+         * @param counts 按 {@link #values} 顺序的抽取次数
+         */
+        void check(int[] counts) {
+            int samples = 0;
+            for (int count : counts) {
+                samples += count;
+            }
+            int previous = 0;
+            for (int i = 0; i < values.size(); i++) {
+                double expected = (double) (cumulative.get(i) - previous) / total;
+                double actual = (double) counts[i] / samples;
+                if (Math.abs(actual - expected) > CHECK_TOLERANCE) {
+                    throw new IllegalStateException(String.format(Locale.ROOT, "%s 的抽取比例 %.3f 与权重 %.3f 不符",
+                            values.get(i), actual, expected));
+                }
+                previous = cumulative.get(i);
+            }
+        }
+    }
+}
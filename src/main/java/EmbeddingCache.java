@@ -0,0 +1,340 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按图像内容缓存 embedding。
+ * <p>
+ * 缓存键为原始文件字节的内容哈希（见 {@link ContentHash}，共享缓存需要抗碰撞），缓存实例本身绑定一个标识：模型标识加上预处理配置
+ * （见 {@link #identity(String, ImageProcessorConfig)}），不同模型或配置应使用不同的缓存实例。
+ * 命中时只需计算哈希并查表，不再解码图像或推理。
+ * <p>
+ * 内存层按字节数而不是条目数限制容量，超出时按 LRU 顺序淘汰；可选的磁盘层是一个以该标识为模型标识的
+ * {@link EmbeddingStore}，内存未命中时先查磁盘，命中后提升到内存层，新计算的结果同时异步写入磁盘层。
+ * 同一内容的并发未命中只会计算一次，其余调用方等待同一个结果。
+ * <p>
+ * 命中、磁盘命中、未命中与淘汰次数见 {@link #getStatistics()}。
+ * <p>
+ * 典型用法：
+ * <pre>
+ * EmbeddingCache cache = new EmbeddingCache(EmbeddingCache.identity("mobilenet-v2", new ImageProcessorConfig()), 256L &lt;&lt; 20, null);
+ * float[] embedding = cache.embed(Paths.get(imagePath), imageEmbedding.getConfig(), imageEmbedding::embed);
+ * </pre>
+ * 推理异步进行时（{@link MicroBatchScheduler}、{@link EmbeddingPipeline}）使用 {@link #embedAsync(byte[], AsyncEmbedder)}，
+ * 解码与推理由调用方提供，缓存只负责查找、合并并发未命中与写入结果。
+ */
+public final class EmbeddingCache {
+
+    /**
+     * 缓存未命中时计算 embedding，图像为按缓存配置解码的结果，应以同一份配置预处理。
+     */
+    @FunctionalInterface
+    public interface Embedder {
+        float[] embed(BufferedImage image) throws Exception;
+    }
+
+    /**
+     * 缓存未命中时异步计算 embedding：在调用线程上同步解码（或提交解码），推理异步完成。
+     */
+    @FunctionalInterface
+    public interface AsyncEmbedder {
+        CompletionStage<float[]> embed(byte[] imageBytes) throws IOException;
+    }
+
+    /**
+     * 每个条目除 float 数据外的估计开销：哈希字符串、链表节点与数组头。
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final String identity;
+    private final long maxBytes;
+    private final EmbeddingStore diskTier;
+    private final LinkedHashMap<String, float[]> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final ConcurrentHashMap<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param identity 模型与预处理配置的标识，见 {@link #identity(String, ImageProcessorConfig)}
+     * @param maxBytes 内存层的容量上限（字节）
+     * @param diskTier 可选的磁盘层，为 null 时只使用内存；其模型标识必须与 identity 相同
+     */
+    public EmbeddingCache(String identity, long maxBytes, EmbeddingStore diskTier) {
+        if (identity == null || identity.isEmpty()) {
+            throw new IllegalArgumentException("identity 不能为空");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes 必须大于 0");
+        }
+        if (diskTier != null && !identity.equals(diskTier.getModelId())) {
+            throw new IllegalArgumentException("磁盘层的模型标识 " + diskTier.getModelId() + " 与缓存标识 " + identity + " 不一致");
+        }
+        this.identity = identity;
+        this.maxBytes = maxBytes;
+        this.diskTier = diskTier;
+    }
+
+    /**
+     * 由模型标识与预处理配置组成缓存标识，也可作为磁盘层 {@link EmbeddingStore} 的模型标识。
+     *
+     * @param modelId 模型标识，如模型文件名
+     * @param config  预处理配置
+     * @return 缓存标识
+     */
+    public static String identity(String modelId, ImageProcessorConfig config) {
+        return modelId + "|" + config.getIdentity();
+    }
+
+    /**
+     * @return 缓存标识
+     */
+    public String getIdentity() {
+        return identity;
+    }
+
+    /**
+     * 读取文件内容后按 {@link #embed(byte[], ImageProcessorConfig, Embedder)} 处理。
+     *
+     * @param file     图像文件
+     * @param config   预处理配置，必须与缓存标识中的配置相同
+     * @param embedder 未命中时计算 embedding
+     * @return embedding
+     * @throws IOException 读取文件、解码或计算失败时抛出
+     */
+    public float[] embed(Path file, ImageProcessorConfig config, Embedder embedder) throws IOException {
+        return embed(Files.readAllBytes(file), config, embedder);
+    }
+
+    /**
+     * 返回图像内容对应的 embedding：命中时直接返回，未命中时按配置解码图像（经 {@link ImagePreprocessors#decodeImage}，
+     * 与配置选择的后端、降采样一致）并调用 embedder 计算后写入缓存。
+     *
+     * @param imageBytes 原始图像文件字节
+     * @param config     预处理配置，必须与缓存标识中的配置相同，否则以一种配置计算的结果会记在另一种配置的标识下
+     * @param embedder   未命中时以同一份配置预处理并计算 embedding
+     * @return embedding（副本，调用方可以修改）
+     * @throws IOException 解码或计算失败时抛出
+     * @throws IllegalArgumentException 配置与缓存标识不一致
+     */
+    public float[] embed(byte[] imageBytes, ImageProcessorConfig config, Embedder embedder) throws IOException {
+        if (!identity.endsWith("|" + config.getIdentity())) {
+            throw new IllegalArgumentException("预处理配置 " + config.getIdentity() + " 与缓存标识 " + identity + " 不一致");
+        }
+        String key = ContentHash.of(imageBytes);
+        float[] cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<float[]> computing = new CompletableFuture<>();
+        CompletableFuture<float[]> existing = inFlight.putIfAbsent(key, computing);
+        if (existing != null) {
+            // 同一内容正在由其他线程计算
+            return join(existing).clone();
+        }
+        try {
+            misses.increment();
+            BufferedImage image = ImagePreprocessors.decodeImage(new ByteArrayInputStream(imageBytes), config);
+            if (image == null) {
+                throw new IOException("无法解码图像");
+            }
+            float[] embedding = embedder.embed(image);
+            put(key, embedding);
+            computing.complete(embedding);
+            return embedding.clone();
+        } catch (Exception e) {
+            computing.completeExceptionally(e);
+            throw e instanceof IOException ioException ? ioException : new IOException(e);
+        } finally {
+            inFlight.remove(key, computing);
+        }
+    }
+
+    /**
+     * 计算内容哈希后按 {@link #embedAsync(String, byte[], AsyncEmbedder)} 处理。
+     */
+    public CompletableFuture<float[]> embedAsync(byte[] imageBytes, AsyncEmbedder embedder) throws IOException {
+        return embedAsync(ContentHash.of(imageBytes), imageBytes, embedder);
+    }
+
+    /**
+     * 返回图像内容对应的 embedding：命中时返回已完成的结果；同一内容正在计算时返回同一个结果；
+     * 否则调用 embedder，完成后写入缓存。
+     *
+     * @param contentHash 图像内容哈希，调用方已经算过时（如还要写入 {@link EmbeddingStore}）不必再算一次
+     * @param imageBytes  原始图像文件字节
+     * @param embedder    未命中时计算 embedding
+     * @return embedding（副本，调用方可以修改）；计算失败时以异常完成
+     * @throws IOException embedder 同步抛出的异常（如解码失败）原样抛出，等待同一内容的其他调用方以同一异常完成
+     */
+    public CompletableFuture<float[]> embedAsync(String contentHash, byte[] imageBytes, AsyncEmbedder embedder)
+            throws IOException {
+        float[] cached = get(contentHash);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<float[]> computing = new CompletableFuture<>();
+        CompletableFuture<float[]> existing = inFlight.putIfAbsent(contentHash, computing);
+        if (existing != null) {
+            return existing.thenApply(float[]::clone);
+        }
+        misses.increment();
+        CompletionStage<float[]> result;
+        try {
+            result = embedder.embed(imageBytes);
+        } catch (IOException | RuntimeException e) {
+            inFlight.remove(contentHash, computing);
+            computing.completeExceptionally(e);
+            throw e;
+        }
+        result.whenComplete((embedding, error) -> {
+            // 先写入缓存再移除，并发的调用方总能在内存层或 inFlight 中找到结果
+            if (error == null) {
+                put(contentHash, embedding);
+            }
+            inFlight.remove(contentHash, computing);
+            if (error == null) {
+                computing.complete(embedding);
+            } else {
+                computing.completeExceptionally(error);
+            }
+        });
+        return computing.thenApply(float[]::clone);
+    }
+
+    /**
+     * 按内容哈希查找：先查内存层，再查磁盘层（命中后提升到内存层）。
+     *
+     * @param contentHash 图像内容哈希
+     * @return embedding 的副本，未命中时返回 null
+     */
+    public float[] get(String contentHash) {
+        float[] embedding;
+        synchronized (this) {
+            embedding = entries.get(contentHash);
+        }
+        if (embedding != null) {
+            hits.increment();
+            return embedding.clone();
+        }
+        if (diskTier != null) {
+            try {
+                embedding = diskTier.get(contentHash);
+            } catch (SQLException e) {
+                System.err.println("读取磁盘缓存失败: " + e.getMessage());
+            }
+            if (embedding != null) {
+                diskHits.increment();
+                putInMemory(contentHash, embedding);
+                return embedding.clone();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 写入缓存：内存层立即可见，磁盘层异步写入。
+     *
+     * @param contentHash 图像内容哈希
+     * @param embedding   embedding，缓存保存其副本
+     */
+    public void put(String contentHash, float[] embedding) {
+        float[] copy = embedding.clone();
+        putInMemory(contentHash, copy);
+        if (diskTier != null) {
+            diskTier.put(contentHash, null, 0, copy);
+        }
+    }
+
+    private synchronized void putInMemory(String contentHash, float[] embedding) {
+        long size = sizeOf(embedding);
+        if (size > maxBytes) {
+            return;
+        }
+        float[] previous = entries.put(contentHash, embedding);
+        bytes += size - (previous == null ? 0 : sizeOf(previous));
+        Iterator<Map.Entry<String, float[]>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, float[]> entry = eldest.next();
+            bytes -= sizeOf(entry.getValue());
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private static long sizeOf(float[] embedding) {
+        return ENTRY_OVERHEAD_BYTES + (long) embedding.length * Float.BYTES;
+    }
+
+    private static float[] join(CompletableFuture<float[]> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * 清空内存层，不影响磁盘层与统计。
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return 内存层的条目数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return 内存层当前占用的估计字节数
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return 命中、磁盘命中、未命中、淘汰次数与内存层占用
+     */
+    public String getStatistics() {
+        long h = hits.sum();
+        long d = diskHits.sum();
+        long m = misses.sum();
+        long total = h + d + m;
+        return String.format("hits=%d, diskHits=%d, misses=%d, hitRate=%.1f%%, evictions=%d, entries=%d, bytes=%d/%d",
+                h, d, m, total == 0 ? 0.0 : 100.0 * (h + d) / total, evictions.sum(), size(), getBytes(), maxBytes);
+    }
+}
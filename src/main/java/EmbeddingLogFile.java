@@ -0,0 +1,139 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 只追加的 embedding 日志文件，{@link BulkIndexer} 的默认输出，同时充当断点续跑的检查点。
+ * <p>
+ * 文件由连续的记录组成，每条记录为：
+ * <pre>
+ * int    路径的 UTF-8 字节数
+ * byte[] 路径
+ * long   文件修改时间 (毫秒)
+ * int    embedding 维度 d
+ * float  x d
+ * </pre>
+ * 同一路径出现多次时以最后一条为准。进程崩溃时最后一条记录可能只写了一半，
+ * 打开文件时会截掉这部分，之前 {@link #checkpoint()} 过的记录都是完整的。
+ */
+public final class EmbeddingLogFile implements BulkIndexer.Sink {
+
+    /**
+     * 逐条读取记录的回调。
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(String path, long mtime, float[] embedding);
+    }
+
+    private final Path file;
+    private final Map<String, Long> completed;
+    private final FileOutputStream fileOut;
+    private final DataOutputStream out;
+
+    /**
+     * 打开（或创建）日志文件，截掉末尾不完整的记录后以追加方式写入。
+     *
+     * @param file 日志文件路径
+     * @throws IOException 读写失败时抛出
+     */
+    public EmbeddingLogFile(Path file) throws IOException {
+        this.file = file;
+        this.completed = new HashMap<>();
+        long valid = Files.exists(file) ? read(file, (path, mtime, embedding) -> completed.put(path, mtime)) : 0;
+        if (Files.exists(file) && Files.size(file) > valid) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        this.fileOut = new FileOutputStream(file.toFile(), true);
+        this.out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+    }
+
+    /**
+     * 顺序读取日志文件中所有完整的记录。
+     *
+     * @param file     日志文件路径
+     * @param consumer 每条记录的回调
+     * @return 最后一条完整记录的结束位置（字节）
+     * @throws IOException 读取失败时抛出
+     */
+    public static long read(Path file, EntryConsumer consumer) throws IOException {
+        long valid = 0;
+        try (InputStream fileIn = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn, 1 << 16))) {
+            while (true) {
+                try {
+                    int pathLength = in.readInt();
+                    if (pathLength < 0) {
+                        throw new IOException("日志文件已损坏，位置 " + valid + ": " + file);
+                    }
+                    byte[] pathBytes = new byte[pathLength];
+                    in.readFully(pathBytes);
+                    long mtime = in.readLong();
+                    int dim = in.readInt();
+                    if (dim < 0) {
+                        throw new IOException("日志文件已损坏，位置 " + valid + ": " + file);
+                    }
+                    float[] embedding = new float[dim];
+                    for (int i = 0; i < dim; i++) {
+                        embedding[i] = in.readFloat();
+                    }
+                    consumer.accept(new String(pathBytes, StandardCharsets.UTF_8), mtime, embedding);
+                    valid += 4 + pathLength + 8 + 4 + 4L * dim;
+                } catch (EOFException e) {
+                    return valid;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 日志文件路径
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public Map<String, Long> completed() {
+        return completed;
+    }
+
+    @Override
+    public void write(String path, long mtime, float[] embedding) throws IOException {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(pathBytes.length);
+        out.write(pathBytes);
+        out.writeLong(mtime);
+        out.writeInt(embedding.length);
+        for (float v : embedding) {
+            out.writeFloat(v);
+        }
+        completed.put(path, mtime);
+    }
+
+    @Override
+    public void checkpoint() throws IOException {
+        out.flush();
+        fileOut.getFD().sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        checkpoint();
+        out.close();
+    }
+}
@@ -0,0 +1,529 @@
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import com.keevol.ai.djl.playground.systemd.StageMetrics;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分阶段的 embedding 流水线：解码 → 预处理 → 推理 → 池化。
+ * <p>
+ * 每个阶段都有自己的工作线程和一个有界的交接队列，各阶段同时处理不同的图像：
+ * <ul>
+ *     <li>解码：读取文件与 PNG/JPEG 解码以 I/O 为主，使用虚拟线程，并发数可以远大于核数；</li>
+ *     <li>预处理：resize / crop / normalize 为纯 CPU 计算，使用固定大小的平台线程池。各线程在当前打开的批次中
+ *     领取一个位置，直接写入该批次从 {@link InputTensorPool} 借来的直接内存，不分配中间数组、不再拷贝；
+ *     批次写满，或预处理队列已空（不等待凑满批量）时封口，其中的图像全部写完后整批交给推理阶段；</li>
+ *     <li>推理：每个 {@link InferenceEngine} 会话对应一个工作线程，取出已封口的批次推理；</li>
+ *     <li>池化：对推理输出做全局平均池化并完成各请求的 {@link CompletableFuture}。</li>
+ * </ul>
+ * 任一阶段变慢时，其输入队列被填满，上游的工作线程阻塞在交接处，最终 {@link #submit(String)} 也会阻塞，
+ * 形成逐级向上的背压，内存占用由各队列容量决定。
+ * <p>
+ * 单个图像在任一阶段失败只会使它自己的 future 以异常完成，不影响流水线中的其他图像。
+ */
+public final class EmbeddingPipeline implements AutoCloseable {
+
+    /**
+     * 图像来源，在解码阶段的虚拟线程上调用。
+     */
+    @FunctionalInterface
+    public interface ImageSource {
+        BufferedImage read() throws IOException;
+    }
+
+    private static final Job POISON = new Job(null);
+    private static final Batch POISON_BATCH = new Batch(null, 0);
+    private static final Output POISON_OUTPUT = new Output(null, null, null);
+
+    private final InferenceEngine engine;
+    private final ImageProcessorConfig config;
+    private final String inputName;
+    private final InputTensorPool inputPool;
+    private final int itemSize;
+    private final int maxBatchSize;
+    /**
+     * 预处理线程正在写入的批次，由 this 保护
+     */
+    private Batch openBatch;
+
+    private final BlockingQueue<Job> decodeQueue;
+    private final BlockingQueue<Job> preprocessQueue;
+    private final BlockingQueue<Batch> inferQueue;
+    private final BlockingQueue<Output> poolQueue;
+
+    private final int decodeWorkers;
+    private final int preprocessWorkers;
+    private final int inferWorkers;
+    private final AtomicInteger liveDecodeWorkers;
+    private final AtomicInteger livePreprocessWorkers;
+    private final AtomicInteger liveInferWorkers;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final Stage decode = new Stage("decode");
+    private final Stage preprocess = new Stage("preprocess");
+    private final Stage infer = new Stage("infer");
+    private final Stage pool = new Stage("pool");
+
+    /**
+     * 使用默认并发度创建流水线：解码并发数等于队列容量，预处理线程数等于可用核数。
+     *
+     * @param engine        推理引擎，由调用方负责关闭
+     * @param config        预处理配置，需开启中心裁剪以保证所有图像的输入形状一致
+     * @param maxBatchSize  每次推理的最大批量
+     * @param queueCapacity 每个交接队列的容量
+     * @throws OrtException 读取模型输入信息失败时抛出
+     */
+    public EmbeddingPipeline(InferenceEngine engine, ImageProcessorConfig config, int maxBatchSize, int queueCapacity) throws OrtException {
+        this(engine, config, maxBatchSize, queueCapacity, queueCapacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param engine            推理引擎，由调用方负责关闭
+     * @param config            预处理配置，需开启中心裁剪以保证所有图像的输入形状一致
+     * @param maxBatchSize      每次推理的最大批量
+     * @param queueCapacity     每个交接队列的容量
+     * @param decodeConcurrency 解码阶段的虚拟线程数
+     * @param preprocessThreads 预处理阶段的平台线程数
+     * @throws OrtException 读取模型输入信息失败时抛出
+     */
+    public EmbeddingPipeline(InferenceEngine engine, ImageProcessorConfig config, int maxBatchSize, int queueCapacity,
+                             int decodeConcurrency, int preprocessThreads) throws OrtException {
+        if (engine == null || config == null) {
+            throw new IllegalArgumentException("engine 与 config 不能为 null");
+        }
+        if (!config.isDo_center_crop()) {
+            throw new IllegalArgumentException("流水线需要固定的输入尺寸，请开启 do_center_crop");
+        }
+        if (maxBatchSize <= 0 || queueCapacity <= 0 || decodeConcurrency <= 0 || preprocessThreads <= 0) {
+            throw new IllegalArgumentException("maxBatchSize、queueCapacity、decodeConcurrency 与 preprocessThreads 必须大于 0");
+        }
+        this.engine = engine;
+        this.config = config;
+        this.inputName = engine.getInputNames().iterator().next();
+        // 同时存在的批次：每个会话一个正在推理的，加上一个正在写入的与排队中的
+        int batchesInFlight = Math.max(1, queueCapacity / maxBatchSize);
+        this.inputPool = new InputTensorPool(engine.getEnvironment(),
+                new long[]{maxBatchSize, 3, config.getCrop_height(), config.getCrop_width()},
+                engine.getSessionCount() + 1 + batchesInFlight);
+        this.itemSize = inputPool.getItemSize();
+        this.maxBatchSize = maxBatchSize;
+
+        this.decodeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.preprocessQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.inferQueue = new ArrayBlockingQueue<>(batchesInFlight);
+        this.poolQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.decodeWorkers = decodeConcurrency;
+        this.preprocessWorkers = preprocessThreads;
+        this.inferWorkers = engine.getSessionCount();
+        this.liveDecodeWorkers = new AtomicInteger(decodeWorkers);
+        this.livePreprocessWorkers = new AtomicInteger(preprocessWorkers);
+        this.liveInferWorkers = new AtomicInteger(inferWorkers);
+
+        for (int i = 0; i < decodeWorkers; i++) {
+            threads.add(Thread.ofVirtual().name("pipeline-decode-" + i).start(this::decodeLoop));
+        }
+        for (int i = 0; i < preprocessWorkers; i++) {
+            threads.add(Thread.ofPlatform().daemon().name("pipeline-preprocess-" + i).start(this::preprocessLoop));
+        }
+        for (int i = 0; i < inferWorkers; i++) {
+            threads.add(Thread.ofPlatform().daemon().name("pipeline-infer-" + i).start(this::inferLoop));
+        }
+        threads.add(Thread.ofPlatform().daemon().name("pipeline-pool").start(this::poolLoop));
+    }
+
+    /**
+     * 提交一个图像文件；解码队列已满时阻塞，直到流水线有空间接收。
+     *
+     * @param imagePath 图像文件路径
+     * @return 该图像的 embedding
+     */
+    public CompletableFuture<float[]> submit(String imagePath) {
+        return submit(() -> ImagePreprocessors.decodeImage(new File(imagePath), config));
+    }
+
+    /**
+     * 提交已读入内存的图像文件内容；解码队列已满时阻塞，直到流水线有空间接收。
+     *
+     * @param imageBytes 图像文件内容
+     * @return 该图像的 embedding
+     */
+    public CompletableFuture<float[]> submit(byte[] imageBytes) {
+        return submit(() -> ImagePreprocessors.decodeImage(new ByteArrayInputStream(imageBytes), config));
+    }
+
+    /**
+     * 提交一个图像来源；解码队列已满时阻塞，直到流水线有空间接收。
+     *
+     * @param source 图像来源，在解码阶段读取
+     * @return 该图像的 embedding
+     */
+    public CompletableFuture<float[]> submit(ImageSource source) {
+        if (source == null) {
+            throw new IllegalArgumentException("图像来源不能为 null");
+        }
+        Job job = new Job(source);
+        if (closed) {
+            job.future.completeExceptionally(new RejectedExecutionException("EmbeddingPipeline 已关闭"));
+            return job.future;
+        }
+        try {
+            decodeQueue.put(job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.future.completeExceptionally(e);
+            return job.future;
+        }
+        // close() 与 put 并发时，排在毒丸之后的图像不会再被处理
+        if (closed && decodeQueue.remove(job)) {
+            job.future.completeExceptionally(new RejectedExecutionException("EmbeddingPipeline 已关闭"));
+        }
+        return job.future;
+    }
+
+    /**
+     * @return 各阶段处理的图像数、累计耗时与当前队列长度（推理阶段的队列长度以批计）
+     */
+    public String getStatistics() {
+        return String.join(", ",
+                decode.describe(decodeQueue.size()),
+                preprocess.describe(preprocessQueue.size()),
+                infer.describe(inferQueue.size()),
+                pool.describe(poolQueue.size()));
+    }
+
+    private void decodeLoop() {
+        try {
+            Job job;
+            while ((job = decodeQueue.take()) != POISON) {
+                long start = System.nanoTime();
+                try {
+                    job.image = job.source.read();
+                    if (job.image == null) {
+                        throw new IOException("无法解码图像");
+                    }
+                } catch (Exception e) {
+                    job.future.completeExceptionally(e);
+                    continue;
+                } finally {
+                    decode.record(start);
+                }
+                preprocessQueue.put(job);
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+        if (liveDecodeWorkers.decrementAndGet() == 0) {
+            poison(preprocessQueue, POISON, preprocessWorkers);
+        }
+    }
+
+    private void preprocessLoop() {
+        try {
+            Job job;
+            while ((job = preprocessQueue.take()) != POISON) {
+                long start = System.nanoTime();
+                Batch batch;
+                int slot;
+                try {
+                    synchronized (this) {
+                        if (openBatch == null) {
+                            openBatch = new Batch(inputPool.acquire(), maxBatchSize);
+                        }
+                        batch = openBatch;
+                        slot = batch.claimed++;
+                        if (batch.claimed == maxBatchSize) {
+                            batch.sealed = true;
+                            openBatch = null;
+                        }
+                    }
+                } catch (Exception e) {
+                    preprocess.record(start);
+                    job.future.completeExceptionally(e);
+                    continue;
+                }
+                boolean written = false;
+                try {
+                    ImagePreprocessors.preprocessImage(job.image, config, batch.lease.buffer(), slot * itemSize);
+                    job.image = null;
+                    written = true;
+                } catch (Exception e) {
+                    job.future.completeExceptionally(e);
+                } finally {
+                    preprocess.record(start);
+                }
+                Batch ready = finish(batch, slot, written ? job : null);
+                if (ready != null) {
+                    inferQueue.put(ready);
+                }
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+        if (livePreprocessWorkers.decrementAndGet() == 0) {
+            Batch ready;
+            synchronized (this) {
+                ready = openBatch;
+                openBatch = null;
+            }
+            try {
+                if (ready != null) {
+                    // 所有预处理线程都已退出，批中的位置都已写完
+                    inferQueue.put(ready);
+                }
+            } catch (InterruptedException e) {
+                ready.fail(new RejectedExecutionException("EmbeddingPipeline 已关闭"));
+                return;
+            }
+            poison(inferQueue, POISON_BATCH, inferWorkers);
+        }
+    }
+
+    /**
+     * 记录一个位置已写完；批次已封口且全部写完时返回该批次，由调用方交给推理阶段。
+     *
+     * @param job 写入该位置的图像，预处理失败时为 null，推理照常进行，只是该行输出被丢弃
+     */
+    private synchronized Batch finish(Batch batch, int slot, Job job) {
+        batch.jobs[slot] = job;
+        batch.done++;
+        if (!batch.sealed && batch == openBatch && preprocessQueue.isEmpty()) {
+            // 没有更多已解码的图像，不等待凑满批量
+            batch.sealed = true;
+            openBatch = null;
+        }
+        return batch.sealed && batch.done == batch.claimed ? batch : null;
+    }
+
+    private void inferLoop() {
+        try {
+            Batch batch;
+            while ((batch = inferQueue.take()) != POISON_BATCH) {
+                Output output = runBatch(batch);
+                if (output != null) {
+                    poolQueue.put(output);
+                }
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+        if (liveInferWorkers.decrementAndGet() == 0) {
+            poison(poolQueue, POISON_OUTPUT, 1);
+        }
+    }
+
+    private Output runBatch(Batch batch) {
+        long start = System.nanoTime();
+        List<Job> jobs = Arrays.asList(batch.jobs).subList(0, batch.claimed);
+        try (InputTensorPool.Lease input = batch.lease) {
+            long tensorStart = StageMetrics.start();
+            OnnxTensor tensor = input.tensor(batch.claimed);
+            StageMetrics.Stage.TENSOR.record(tensorStart, batch.claimed);
+            return engine.withSession(session -> {
+                long runStart = StageMetrics.start();
+                try (OrtSession.Result result = session.run(Collections.singletonMap(inputName, tensor))) {
+                    StageMetrics.Stage.INFERENCE.record(runStart, batch.claimed);
+                    OnnxTensor outputTensor = ImageEmbeddingExtractor.outputTensor(result);
+                    return new Output(jobs, ImageEmbeddingExtractor.toArray(outputTensor.getFloatBuffer()),
+                            outputTensor.getInfo().getShape());
+                }
+            });
+        } catch (Exception e) {
+            batch.fail(e);
+            return null;
+        } finally {
+            infer.record(start, batch.claimed);
+        }
+    }
+
+    private void poolLoop() {
+        try {
+            Output output;
+            while ((output = poolQueue.take()) != POISON_OUTPUT) {
+                long start = System.nanoTime();
+                try {
+                    float[][] embeddings = ImageEmbeddingExtractor.extractBatchWithGlobalAvgPooling(output.data, output.shape);
+                    for (int i = 0; i < output.jobs.size(); i++) {
+                        Job job = output.jobs.get(i);
+                        if (job != null) {
+                            job.future.complete(embeddings[i]);
+                        }
+                    }
+                } catch (Exception e) {
+                    for (Job job : output.jobs) {
+                        if (job != null) {
+                            job.future.completeExceptionally(e);
+                        }
+                    }
+                } finally {
+                    pool.record(start, output.jobs.size());
+                }
+            }
+        } catch (InterruptedException e) {
+            // close() 已放弃等待
+        }
+    }
+
+    private static <T> void poison(BlockingQueue<T> queue, T poison, int count) {
+        try {
+            for (int i = 0; i < count; i++) {
+                queue.put(poison);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 停止接收新图像，等待已提交的图像全部流经各阶段后关闭；关闭时被中断则放弃剩余图像。
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        poison(decodeQueue, POISON, decodeWorkers);
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            failRemaining();
+        } finally {
+            inputPool.close();
+        }
+    }
+
+    private void failRemaining() {
+        RejectedExecutionException closedException = new RejectedExecutionException("EmbeddingPipeline 已关闭");
+        for (BlockingQueue<Job> queue : List.of(decodeQueue, preprocessQueue)) {
+            Job job;
+            while ((job = queue.poll()) != null) {
+                if (job != POISON) {
+                    job.future.completeExceptionally(closedException);
+                }
+            }
+        }
+        Batch batch;
+        while ((batch = inferQueue.poll()) != null) {
+            if (batch != POISON_BATCH) {
+                batch.fail(closedException);
+            }
+        }
+        synchronized (this) {
+            if (openBatch != null) {
+                openBatch.fail(closedException);
+                openBatch = null;
+            }
+        }
+        Output output;
+        while ((output = poolQueue.poll()) != null) {
+            if (output != POISON_OUTPUT) {
+                for (Job job : output.jobs) {
+                    if (job != null) {
+                        job.future.completeExceptionally(closedException);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Job {
+        final ImageSource source;
+        final CompletableFuture<float[]> future = new CompletableFuture<>();
+        BufferedImage image;
+
+        Job(ImageSource source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * 一个批量输入：预处理线程按领取的位置把 CHW 写入 lease 的缓冲区，计数由 {@link EmbeddingPipeline} 的锁保护。
+     */
+    private static final class Batch {
+        final InputTensorPool.Lease lease;
+        final Job[] jobs;
+        int claimed;
+        int done;
+        boolean sealed;
+
+        Batch(InputTensorPool.Lease lease, int capacity) {
+            this.lease = lease;
+            this.jobs = new Job[capacity];
+        }
+
+        /**
+         * 以异常完成批中的图像并归还输入缓冲区。
+         */
+        void fail(Exception e) {
+            for (Job job : jobs) {
+                if (job != null) {
+                    job.future.completeExceptionally(e);
+                }
+            }
+            lease.close();
+        }
+    }
+
+    /**
+     * 一个批量的推理输出，交给池化阶段；jobs 中预处理失败的位置为 null。
+     */
+    private static final class Output {
+        final List<Job> jobs;
+        final float[] data;
+        final long[] shape;
+
+        Output(List<Job> jobs, float[] data, long[] shape) {
+            this.jobs = jobs;
+            this.data = data;
+            this.shape = shape;
+        }
+    }
+
+    /**
+     * 单个阶段的处理计数与累计耗时。
+     */
+    private static final class Stage {
+        final String name;
+        final LongAdder items = new LongAdder();
+        final LongAdder busyNanos = new LongAdder();
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void record(long start) {
+            record(start, 1);
+        }
+
+        void record(long start, int count) {
+            busyNanos.add(System.nanoTime() - start);
+            items.add(count);
+        }
+
+        String describe(int queued) {
+            return String.format("%s[items=%d, busy=%.1f ms, queued=%d]", name, items.sum(), busyNanos.sum() / 1e6, queued);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import ai.onnxruntime.OrtException;
+import com.keevol.ai.djl.playground.systemd.EmbeddingBackend;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP embedding 服务的默认实现：一个 {@link InferenceEngine} 加上 {@link MicroBatchScheduler}，
+ * 并发请求由调度器攒批推理。请求先按内容查 {@link EmbeddingCache}，重复上传的图像不再解码与推理。
+ * <p>
+ * 配置项（见 {@code application.properties}，均可用同名系统属性覆盖）：
+ * <ul>
+ *     <li>{@code embedding.model.path}：ONNX 模型路径，必填；</li>
+ *     <li>{@code embedding.batch.max.size}：每批最多的请求数，默认 32，不超过模型允许的批量；</li>
+ *     <li>{@code embedding.batch.max.wait.millis}：批中最早的请求最多等待的毫秒数，默认 5；</li>
+ *     <li>{@code embedding.queue.size}：排队请求数上限，默认 1024，超出时请求立即被拒绝；</li>
+ *     <li>{@code embedding.index.path}：检索使用的 {@link MappedEmbeddingFile}，为空时不提供检索；</li>
+ *     <li>{@code embedding.image.backend}：解码与预处理的后端，{@code java2d}（默认）或 {@code opencv}，见 {@link ImageBackend}；</li>
+ *     <li>{@code embedding.decode.oversampling}：大图解码时降采样的余量，默认 4，使单张图像解码占用的堆有上界；
+ *     为 0 时不降采样，占用随源图尺寸增长，见 {@link ImageDecoder}；</li>
+ *     <li>{@code embedding.cache.max.bytes}：embedding 缓存内存层的容量，默认 256 MiB，为 0 时不使用缓存；</li>
+ *     <li>{@code embedding.cache.path}：缓存的磁盘层（SQLite 文件），为空时只使用内存。</li>
+ * </ul>
+ * 会话个数、线程数等推理参数沿用 {@link InferenceEngineConfig#fromSystemProperties()}；调度器同时执行的批数等于会话个数。
+ */
+public final class EmbeddingServiceBackend implements EmbeddingBackend {
+
+    private final InferenceEngine engine;
+    private final ImageEmbeddingDemo embedder;
+    private final MicroBatchScheduler scheduler;
+    private final MappedEmbeddingFile index;
+    private final EmbeddingCache cache;
+    private final EmbeddingStore cacheStore;
+
+    public EmbeddingServiceBackend(Properties config) throws OrtException, IOException, SQLException {
+        String modelPath = config.getProperty("embedding.model.path");
+        if (modelPath == null || modelPath.isEmpty()) {
+            throw new IllegalArgumentException("未配置 embedding.model.path");
+        }
+        int maxBatchSize = Integer.parseInt(config.getProperty("embedding.batch.max.size", "32"));
+        long maxWaitMillis = Long.parseLong(config.getProperty("embedding.batch.max.wait.millis", "5"));
+        int queueSize = Integer.parseInt(config.getProperty("embedding.queue.size", "1024"));
+        String indexPath = config.getProperty("embedding.index.path", "");
+        String imageBackend = config.getProperty("embedding.image.backend", ImageBackend.JAVA2D);
+        int decodeOversampling = Integer.parseInt(config.getProperty("embedding.decode.oversampling", "4"));
+        long cacheMaxBytes = Long.parseLong(config.getProperty("embedding.cache.max.bytes", String.valueOf(256L << 20)));
+        String cachePath = config.getProperty("embedding.cache.path", "");
+        // 尽早加载所选后端，未知的名称或无法加载的本地库在启动时即报错
+        ImageBackend.of(imageBackend);
+
+        this.index = indexPath.isEmpty() ? null : MappedEmbeddingFile.open(Paths.get(indexPath));
+        if (index != null) {
+            System.out.println("向量索引: " + indexPath + ", " + index.size() + " x " + index.dimension() + ", model=" + index.getModelId());
+        }
+
+        InferenceEngineConfig engineConfig = InferenceEngineConfig.fromSystemProperties();
+        System.out.println("Session config: " + engineConfig);
+        this.engine = new InferenceEngine(modelPath, engineConfig);
+        try {
+            this.embedder = new ImageEmbeddingDemo(engine, maxBatchSize);
+            embedder.getConfig().setBackend(imageBackend);
+            embedder.getConfig().setDecode_oversampling(decodeOversampling);
+            System.out.println("Image backend: " + imageBackend + ", decode oversampling: " + decodeOversampling);
+            if (cacheMaxBytes > 0) {
+                // 标识在设置后端与降采样余量之后计算：两者都会改变输出
+                String identity = EmbeddingCache.identity(BulkIndexer.modelIdOf(modelPath), embedder.getConfig());
+                this.cacheStore = cachePath.isEmpty() ? null : new EmbeddingStore(Paths.get(cachePath), identity);
+                this.cache = new EmbeddingCache(identity, cacheMaxBytes, cacheStore);
+                System.out.println("Embedding cache: " + cacheMaxBytes + " bytes" + (cachePath.isEmpty() ? "" : ", disk tier " + cachePath));
+            } else {
+                this.cacheStore = null;
+                this.cache = null;
+            }
+            // 每个推理会话同时执行一批，embedding.ort.session_count 决定服务的并发推理数
+            this.scheduler = new MicroBatchScheduler(embedder::embedImages, embedder.getMaxBatchSize(),
+                    maxWaitMillis, TimeUnit.MILLISECONDS, queueSize, embedder.getSessionCount());
+        } catch (OrtException | SQLException | RuntimeException e) {
+            engine.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletionStage<float[]> embed(InputStream image) throws IOException {
+        if (cache == null) {
+            return compute(image);
+        }
+        return cache.embedAsync(image.readAllBytes(), bytes -> compute(new ByteArrayInputStream(bytes)));
+    }
+
+    private CompletionStage<float[]> compute(InputStream image) throws IOException {
+        // 只解码预处理需要的分辨率与区域，大图不会完整解码
+        BufferedImage decoded = ImagePreprocessors.decodeImage(image, embedder.getConfig());
+        if (decoded == null) {
+            throw new IllegalArgumentException("无法解码图像，格式不受支持或数据已损坏");
+        }
+        return scheduler.submit(decoded).thenApply(MicroBatchScheduler.Embedding::getEmbedding);
+    }
+
+    @Override
+    public SearchResult search(float[] query, int k) {
+        MappedEmbeddingFile index = requireIndex();
+        long start = System.nanoTime();
+        List<VectorIndex.Hit> hits = index.search(query, k);
+        long searchNanos = System.nanoTime() - start;
+        String[] ids = new String[hits.size()];
+        float[] scores = new float[hits.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = hits.get(i).getId();
+            scores[i] = hits.get(i).getScore();
+        }
+        return new SearchResult(ids, scores, searchNanos);
+    }
+
+    @Override
+    public SearchResult searchById(String id, int k) {
+        MappedEmbeddingFile index = requireIndex();
+        int row = index.rowOf(id);
+        if (row < 0) {
+            throw new NoSuchElementException("索引中没有标识: " + id);
+        }
+        return search(index.get(row), k);
+    }
+
+    private MappedEmbeddingFile requireIndex() {
+        if (index == null) {
+            throw new UnsupportedOperationException("未配置向量索引 embedding.index.path");
+        }
+        return index;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return scheduler.getQueueSize();
+    }
+
+    @Override
+    public String getStatistics() {
+        return scheduler.getStatistics() + ", queued=" + scheduler.getQueueSize()
+                + (cache == null ? "" : ", cache: " + cache.getStatistics());
+    }
+
+    @Override
+    public void close() {
+        scheduler.close();
+        try {
+            embedder.close();
+        } catch (Exception e) {
+            System.err.println("关闭 embedding 模型失败: " + e.getMessage());
+        } finally {
+            engine.close();
+            if (index != null) {
+                index.close();
+            }
+            if (cacheStore != null) {
+                try {
+                    cacheStore.close();
+                } catch (IOException e) {
+                    System.err.println("关闭 embedding 缓存失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,611 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于 SQLite 的 embedding 持久化存储。
+ * <p>
+ * 表结构：
+ * <pre>
+ * embeddings(content_hash, model_id, dim, vector)   -- 主键 (content_hash, model_id)，vector 为小端 float32 BLOB
+ * files(path, model_id, mtime, content_hash)        -- 主键 (path, model_id)，内容相同的多个文件共享同一个 embedding
+ * </pre>
+ * 数据库以 WAL 模式打开，写入由一个专用的写线程完成：{@link #put(String, String, long, float[])} 只把记录放入队列，
+ * 写线程每次取出队列中积累的全部记录（最多 {@code batchSize} 条），在一个事务中批量写入，
+ * 因此调用方（推理线程）不会阻塞在磁盘 I/O 上。读取使用独立的连接，WAL 模式下读写互不阻塞。
+ * <p>
+ * 写入是异步的，失败的事务整批回滚，其中的记录不会重试。丢失的记录数计入 {@link #getLostWrites()}，
+ * 一旦有记录丢失，之后的每次 {@link #flush()} 都以带有丢失条数的异常结束，
+ * 调用方（如 {@link BulkIndexer} 的检查点）不会把丢失的写入当作已经持久化。
+ * <p>
+ * 读取连接与其上的预编译语句长期保留、在读取之间复用：并发的读取各自借用一个连接，用完归还，
+ * 空闲连接最多保留 {@code MAX_IDLE_READERS} 个。{@link #get(Collection)} 以 {@code IN (...)} 一次读取多条，
+ * 供重排序等需要随机读取一批向量的场景使用。
+ * <p>
+ * 该类也是 {@link BulkIndexer.Sink}：按路径记录进度，{@link #checkpoint()} 等待此前的写入全部提交；
+ * 以及 {@link QuantizedIndex.VectorSource}：为压缩索引的重排序提供全精度向量。
+ */
+public final class EmbeddingStore implements BulkIndexer.Sink, QuantizedIndex.VectorSource {
+
+    /**
+     * 逐条读取 embedding 的回调。
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(String contentHash, float[] embedding);
+    }
+
+    private static final int DEFAULT_BATCH_SIZE = 512;
+    private static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    private static final int MAX_IDLE_READERS = 4;
+    /**
+     * 批量读取时单条语句最多的参数个数，低于 SQLite 默认的 999 个参数上限
+     */
+    private static final int MAX_KEYS_PER_SELECT = 512;
+
+    private final String url;
+    private final String modelId;
+    private final int batchSize;
+    private final BlockingQueue<Write> queue;
+    private final Connection writeConnection;
+    private final Thread writer;
+    private final ConcurrentLinkedQueue<Reader> idleReaders = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleReaderCount = new AtomicInteger();
+    private volatile boolean closed;
+    /**
+     * 写线程已退出（被 {@link #close()} 中断或因错误退出），此后入队的记录不会再被写入
+     */
+    private volatile boolean writerExited;
+    /**
+     * 写线程因错误退出时的原因
+     */
+    private volatile SQLException writerFailure;
+    /**
+     * 因事务失败而丢失的 embedding 与文件记录数，以及最近一次失败的原因；只由写线程修改
+     */
+    private volatile long lostEmbeddings;
+    private volatile long lostFiles;
+    private volatile SQLException lastWriteError;
+
+    /**
+     * @param file    数据库文件路径，不存在时创建
+     * @param modelId 模型（及预处理配置）的标识，不同模型的 embedding 互不覆盖
+     * @throws SQLException 打开数据库或建表失败时抛出
+     */
+    public EmbeddingStore(Path file, String modelId) throws SQLException {
+        this(file, modelId, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param file          数据库文件路径，不存在时创建
+     * @param modelId       模型（及预处理配置）的标识，不同模型的 embedding 互不覆盖
+     * @param batchSize     每个写事务最多包含的记录数
+     * @param queueCapacity 写队列容量，写线程跟不上时 {@link #put(String, String, long, float[])} 才会阻塞
+     * @throws SQLException 打开数据库或建表失败时抛出
+     */
+    public EmbeddingStore(Path file, String modelId, int batchSize, int queueCapacity) throws SQLException {
+        if (modelId == null || modelId.isEmpty()) {
+            throw new IllegalArgumentException("modelId 不能为空");
+        }
+        if (batchSize <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("batchSize 与 queueCapacity 必须大于 0");
+        }
+        this.url = "jdbc:sqlite:" + file.toAbsolutePath();
+        this.modelId = modelId;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writeConnection = DriverManager.getConnection(url);
+        try (Statement statement = writeConnection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            // WAL 模式下 NORMAL 只在检查点时 fsync，崩溃时不会损坏数据库，最多丢失最后几个事务
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("CREATE TABLE IF NOT EXISTS embeddings (" +
+                    "content_hash TEXT NOT NULL, model_id TEXT NOT NULL, dim INTEGER NOT NULL, vector BLOB NOT NULL, " +
+                    "PRIMARY KEY (content_hash, model_id)) WITHOUT ROWID");
+            statement.execute("CREATE TABLE IF NOT EXISTS files (" +
+                    "path TEXT NOT NULL, model_id TEXT NOT NULL, mtime INTEGER NOT NULL, content_hash TEXT NOT NULL, " +
+                    "PRIMARY KEY (path, model_id)) WITHOUT ROWID");
+            writeConnection.setAutoCommit(false);
+        } catch (SQLException e) {
+            writeConnection.close();
+            throw e;
+        }
+        this.writer = Thread.ofPlatform().daemon().name("embedding-store-writer").start(this::writeLoop);
+    }
+
+    /**
+     * @return 模型标识
+     */
+    public String getModelId() {
+        return modelId;
+    }
+
+    /**
+     * 异步写入一条 embedding；只有写队列已满时才阻塞。
+     *
+     * @param contentHash 图像内容哈希，见 {@link ContentHash}
+     * @param path        图像文件路径，可为 null（如通过 API 上传的图像）
+     * @param mtime       文件修改时间 (毫秒)
+     * @param embedding   embedding 向量
+     */
+    public void put(String contentHash, String path, long mtime, float[] embedding) {
+        if (contentHash == null || embedding == null) {
+            throw new IllegalArgumentException("contentHash 与 embedding 不能为 null");
+        }
+        enqueue(new Write(contentHash, path, mtime, embedding, null));
+    }
+
+    /**
+     * 等待此前提交的所有写入完成提交。
+     *
+     * @throws SQLException 曾有写入因事务失败而丢失（异常信息中带有丢失的条数），或写线程已因错误退出
+     */
+    public void flush() throws SQLException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        enqueue(new Write(null, null, 0, null, done));
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待写入完成时被中断", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof SQLException sqlException ? sqlException : new SQLException(e.getCause());
+        }
+    }
+
+    /**
+     * @return 因事务失败而丢失的 embedding 记录数
+     */
+    public long getLostWrites() {
+        return lostEmbeddings;
+    }
+
+    private void enqueue(Write write) {
+        if (closed) {
+            throw new IllegalStateException("EmbeddingStore 已关闭");
+        }
+        if (!writerExited) {
+            try {
+                queue.put(write);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("写入 embedding 时被中断", e);
+            }
+            // 写线程先标记退出再清空队列：这里看不到退出标记，或记录已被写线程取走（由写线程处理），都不必再管
+            if (!writerExited || !queue.remove(write)) {
+                return;
+            }
+        }
+        // 写线程已退出，记录不会再被写入
+        SQLException error = new SQLException("embedding 写线程已退出", writerFailure);
+        if (write.done != null) {
+            write.done.completeExceptionally(error);
+        } else {
+            throw new IllegalStateException(error.getMessage(), error);
+        }
+    }
+
+    private void writeLoop() {
+        List<Write> batch = new ArrayList<>(batchSize);
+        try (PreparedStatement insertEmbedding = writeConnection.prepareStatement(
+                "INSERT OR REPLACE INTO embeddings (content_hash, model_id, dim, vector) VALUES (?, ?, ?, ?)");
+             PreparedStatement insertFile = writeConnection.prepareStatement(
+                     "INSERT OR REPLACE INTO files (path, model_id, mtime, content_hash) VALUES (?, ?, ?, ?)")) {
+            while (true) {
+                Write first = queue.take();
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                int embeddings = 0;
+                int files = 0;
+                try {
+                    for (Write write : batch) {
+                        if (write.contentHash == null) {
+                            continue;
+                        }
+                        insertEmbedding.setString(1, write.contentHash);
+                        insertEmbedding.setString(2, modelId);
+                        insertEmbedding.setInt(3, write.embedding.length);
+                        insertEmbedding.setBytes(4, toBytes(write.embedding));
+                        insertEmbedding.addBatch();
+                        embeddings++;
+                        if (write.path != null) {
+                            insertFile.setString(1, write.path);
+                            insertFile.setString(2, modelId);
+                            insertFile.setLong(3, write.mtime);
+                            insertFile.setString(4, write.contentHash);
+                            insertFile.addBatch();
+                            files++;
+                        }
+                    }
+                    insertEmbedding.executeBatch();
+                    insertFile.executeBatch();
+                    writeConnection.commit();
+                } catch (SQLException e) {
+                    // 整批回滚，批中的记录全部丢失
+                    lostEmbeddings += embeddings;
+                    lostFiles += files;
+                    lastWriteError = e;
+                    System.err.println("写入 embedding 失败，丢失 " + embeddings + " 条 embedding 与 " + files + " 条文件记录: " + e.getMessage());
+                    try {
+                        writeConnection.rollback();
+                    } catch (SQLException ignored) {
+                        // 回滚失败时保留原始错误
+                    }
+                }
+                for (Write write : batch) {
+                    if (write.done != null) {
+                        SQLException lost = lostWritesError();
+                        if (lost != null) {
+                            write.done.completeExceptionally(lost);
+                        } else {
+                            write.done.complete(null);
+                        }
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // close() 中断写线程
+        } catch (SQLException e) {
+            // 预编译语句失败，写线程无法继续工作
+            System.err.println("embedding 写线程退出: " + e.getMessage());
+            writerFailure = e;
+        } finally {
+            // 先标记退出再清空队列，与 enqueue 中的检查配合，任何入队的记录都会被处理，等待中的 flush 都会被唤醒
+            writerExited = true;
+            SQLException error = new SQLException("embedding 写线程已退出", writerFailure);
+            Write write;
+            while ((write = queue.poll()) != null) {
+                if (write.done != null) {
+                    write.done.completeExceptionally(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 有记录丢失时描述丢失条数的异常，否则为 null
+     */
+    private SQLException lostWritesError() {
+        if (lostEmbeddings == 0) {
+            return null;
+        }
+        return new SQLException("已有 " + lostEmbeddings + " 条 embedding 与 " + lostFiles + " 条文件记录因写入失败而丢失，最近一次错误: "
+                + lastWriteError.getMessage(), lastWriteError);
+    }
+
+    /**
+     * 按内容哈希读取 embedding。
+     *
+     * @param contentHash 图像内容哈希
+     * @return embedding，不存在时返回 null
+     * @throws SQLException 读取失败时抛出
+     */
+    @Override
+    public float[] get(String contentHash) throws SQLException {
+        Reader reader = acquireReader();
+        try {
+            reader.selectOne.setString(1, contentHash);
+            try (ResultSet rs = reader.selectOne.executeQuery()) {
+                return rs.next() ? toFloats(rs.getBytes(1)) : null;
+            }
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    /**
+     * 按内容哈希批量读取 embedding，每 {@code MAX_KEYS_PER_SELECT} 个哈希一条查询。
+     *
+     * @param contentHashes 图像内容哈希，可以重复
+     * @return 内容哈希到 embedding 的映射，不存在的哈希不在其中
+     * @throws SQLException 读取失败时抛出
+     */
+    @Override
+    public Map<String, float[]> get(Collection<String> contentHashes) throws SQLException {
+        Map<String, float[]> embeddings = new HashMap<>();
+        if (contentHashes.isEmpty()) {
+            return embeddings;
+        }
+        Reader reader = acquireReader();
+        try {
+            Iterator<String> it = contentHashes.iterator();
+            int remaining = contentHashes.size();
+            while (remaining > 0) {
+                int n = Math.min(remaining, MAX_KEYS_PER_SELECT);
+                // 参数个数向上取到 2 的幂，多出的参数重复最后一个哈希，使预编译语句只有少数几种
+                int slots = n == 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+                PreparedStatement select = reader.selectIn(slots);
+                String last = null;
+                for (int i = 0; i < slots; i++) {
+                    if (i < n) {
+                        last = it.next();
+                    }
+                    select.setString(i + 2, last);
+                }
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        embeddings.put(rs.getString(1), toFloats(rs.getBytes(2)));
+                    }
+                }
+                remaining -= n;
+            }
+        } finally {
+            releaseReader(reader);
+        }
+        return embeddings;
+    }
+
+    /**
+     * 顺序读取当前模型的全部 embedding，用于构建检索结构；读取期间不阻塞写入。
+     *
+     * @param consumer 每条记录的回调
+     * @return 读取的条数
+     * @throws SQLException 读取失败时抛出
+     */
+    public int forEach(EntryConsumer consumer) throws SQLException {
+        int count = 0;
+        Reader reader = acquireReader();
+        try {
+            try (ResultSet rs = reader.selectAll.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs.getString(1), toFloats(rs.getBytes(2)));
+                    count++;
+                }
+            }
+        } finally {
+            releaseReader(reader);
+        }
+        return count;
+    }
+
+    /**
+     * @return 当前模型已存储的 embedding 条数
+     * @throws SQLException 读取失败时抛出
+     */
+    public int size() throws SQLException {
+        Reader reader = acquireReader();
+        try (ResultSet rs = reader.count.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    @Override
+    public Map<String, Long> completed() throws IOException {
+        Map<String, Long> completed = new HashMap<>();
+        try {
+            Reader reader = acquireReader();
+            try (ResultSet rs = reader.selectFiles.executeQuery()) {
+                while (rs.next()) {
+                    completed.put(rs.getString(1), rs.getLong(2));
+                }
+            } finally {
+                releaseReader(reader);
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        return completed;
+    }
+
+    /**
+     * 借用一个空闲的读取连接，没有时新建；不会阻塞。
+     */
+    private Reader acquireReader() throws SQLException {
+        if (closed) {
+            throw new IllegalStateException("EmbeddingStore 已关闭");
+        }
+        Reader reader = idleReaders.poll();
+        if (reader != null) {
+            idleReaderCount.decrementAndGet();
+            return reader;
+        }
+        return new Reader(DriverManager.getConnection(url));
+    }
+
+    /**
+     * 归还读取连接；已关闭或空闲连接已足够时直接关闭。
+     */
+    private void releaseReader(Reader reader) {
+        if (!closed) {
+            if (idleReaderCount.incrementAndGet() <= MAX_IDLE_READERS) {
+                idleReaders.offer(reader);
+                // close() 与归还并发时，确保不会留下未关闭的连接
+                if (closed && idleReaders.remove(reader)) {
+                    reader.close();
+                }
+                return;
+            }
+            idleReaderCount.decrementAndGet();
+        }
+        reader.close();
+    }
+
+    /**
+     * 计算文件的内容哈希后异步写入。哈希在调用线程上计算，文件刚被解码过，通常直接命中页缓存。
+     */
+    @Override
+    public void write(String path, long mtime, float[] embedding) throws IOException {
+        write(path, mtime, null, embedding);
+    }
+
+    /**
+     * 异步写入；内容哈希未知时先在调用线程上计算。
+     */
+    @Override
+    public void write(String path, long mtime, String contentHash, float[] embedding) throws IOException {
+        put(contentHash != null ? contentHash : ContentHash.of(Paths.get(path)), path, mtime, embedding);
+    }
+
+    @Override
+    public void checkpoint() throws IOException {
+        try {
+            flush();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 等待队列中的写入全部提交后关闭；有写入丢失或写线程已因错误退出时，仍会释放全部连接，之后抛出异常。
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        IOException failure = null;
+        try {
+            flush();
+        } catch (SQLException e) {
+            failure = new IOException(e);
+        }
+        closed = true;
+        writer.interrupt();
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        Reader reader;
+        while ((reader = idleReaders.poll()) != null) {
+            reader.close();
+        }
+        try {
+            writeConnection.close();
+        } catch (SQLException e) {
+            if (failure == null) {
+                failure = new IOException(e);
+            } else {
+                failure.addSuppressed(e);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    static byte[] toBytes(float[] embedding) {
+        ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(embedding);
+        return buffer.array();
+    }
+
+    static float[] toFloats(byte[] bytes) {
+        float[] embedding = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(embedding);
+        return embedding;
+    }
+
+    /**
+     * 一个读取连接及其上的预编译语句，同一时刻只被一个线程使用。
+     */
+    private final class Reader {
+        final Connection connection;
+        final PreparedStatement selectOne;
+        final PreparedStatement selectAll;
+        final PreparedStatement count;
+        final PreparedStatement selectFiles;
+        /**
+         * 下标为 log2(参数个数) 的 {@code IN (...)} 查询，按需预编译
+         */
+        final PreparedStatement[] selectIn = new PreparedStatement[Integer.numberOfTrailingZeros(MAX_KEYS_PER_SELECT) + 1];
+
+        Reader(Connection connection) throws SQLException {
+            this.connection = connection;
+            try {
+                selectOne = connection.prepareStatement(
+                        "SELECT vector FROM embeddings WHERE content_hash = ? AND model_id = ?");
+                selectOne.setString(2, modelId);
+                selectAll = connection.prepareStatement("SELECT content_hash, vector FROM embeddings WHERE model_id = ?");
+                selectAll.setFetchSize(4096);
+                selectAll.setString(1, modelId);
+                count = connection.prepareStatement("SELECT COUNT(*) FROM embeddings WHERE model_id = ?");
+                count.setString(1, modelId);
+                selectFiles = connection.prepareStatement("SELECT path, mtime FROM files WHERE model_id = ?");
+                selectFiles.setString(1, modelId);
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @param slots 哈希参数个数，2 的幂且不超过 {@code MAX_KEYS_PER_SELECT}
+         * @return 对应的查询，第 1 个参数（model_id）已设置，哈希从第 2 个参数开始
+         */
+        PreparedStatement selectIn(int slots) throws SQLException {
+            int log = Integer.numberOfTrailingZeros(slots);
+            PreparedStatement select = selectIn[log];
+            if (select == null) {
+                StringBuilder sql = new StringBuilder(
+                        "SELECT content_hash, vector FROM embeddings WHERE model_id = ? AND content_hash IN (?");
+                for (int i = 1; i < slots; i++) {
+                    sql.append(", ?");
+                }
+                select = connection.prepareStatement(sql.append(')').toString());
+                select.setString(1, modelId);
+                selectIn[log] = select;
+            }
+            return select;
+        }
+
+        /**
+         * 关闭连接，其上的语句随之关闭。
+         */
+        void close() {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("关闭读取连接失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 写队列中的一项：一条 embedding，或一个 flush 标记（contentHash 为 null）。
+     */
+    private static final class Write {
+        final String contentHash;
+        final String path;
+        final long mtime;
+        final float[] embedding;
+        final CompletableFuture<Void> done;
+
+        Write(String contentHash, String path, long mtime, float[] embedding, CompletableFuture<Void> done) {
+            this.contentHash = contentHash;
+            this.path = path;
+            this.mtime = mtime;
+            this.embedding = embedding;
+            this.done = done;
+        }
+    }
+}
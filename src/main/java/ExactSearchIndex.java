@@ -0,0 +1,223 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 精确的 top-k 余弦相似度检索。
+ * <p>
+ * 所有向量在写入时 L2 归一化后按行连续存放在同一个 {@code float[]} 中（容量不足时倍增），
+ * 检索即对每一行与归一化后的查询向量求点积。扫描按行区间切分到 {@link ForkJoinPool} 上并行执行，
+ * 每个叶子任务维护自己的有界堆，最后逐级合并，结果与逐行扫描完全相同。
+ * <p>
+ * 该索引同时是近似索引召回率评估的基准。写入与检索可以并发，写入时会短暂阻塞检索。
+ */
+public final class ExactSearchIndex implements VectorIndex {
+
+    /**
+     * 每个叶子任务至少扫描的行数，过小时任务调度的开销会超过扫描本身
+     */
+    private static final int MIN_ROWS_PER_TASK = 4096;
+
+    private final int dimension;
+    private final ForkJoinPool pool;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private float[] data;
+    private String[] ids;
+    private int size;
+
+    /**
+     * 使用公共 ForkJoinPool 创建索引。
+     *
+     * @param dimension 向量维度
+     */
+    public ExactSearchIndex(int dimension) {
+        this(dimension, 1024, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param dimension       向量维度
+     * @param initialCapacity 初始容量（向量个数）
+     * @param pool            执行并行扫描的线程池
+     */
+    public ExactSearchIndex(int dimension, int initialCapacity, ForkJoinPool pool) {
+        if (dimension <= 0 || initialCapacity <= 0) {
+            throw new IllegalArgumentException("dimension 与 initialCapacity 必须大于 0");
+        }
+        if ((long) dimension * initialCapacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("初始容量过大: " + initialCapacity + " x " + dimension);
+        }
+        this.dimension = dimension;
+        this.pool = pool;
+        this.data = new float[dimension * initialCapacity];
+        this.ids = new String[initialCapacity];
+    }
+
+    /**
+     * 从 {@link EmbeddingStore} 读取当前模型的全部 embedding 构建索引，以内容哈希为标识。
+     *
+     * @param store     embedding 存储
+     * @param dimension 向量维度
+     * @return 索引
+     * @throws SQLException 读取失败时抛出
+     */
+    public static ExactSearchIndex load(EmbeddingStore store, int dimension) throws SQLException {
+        ExactSearchIndex index = new ExactSearchIndex(dimension, Math.max(1, store.size()), ForkJoinPool.commonPool());
+        store.forEach(index::add);
+        return index;
+    }
+
+    @Override
+    public void add(String id, float[] vector) {
+        checkDimension(vector);
+        float[] normalized = VectorIndex.normalize(vector);
+        lock.writeLock().lock();
+        try {
+            if (size == ids.length) {
+                grow();
+            }
+            System.arraycopy(normalized, 0, data, size * dimension, dimension);
+            ids[size++] = id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void grow() {
+        long capacity = Math.min((long) ids.length * 2, (Integer.MAX_VALUE - 8) / dimension);
+        if (capacity <= ids.length) {
+            throw new IllegalStateException("索引已满: " + ids.length + " x " + dimension + " 超出单个 float[] 的上限");
+        }
+        data = Arrays.copyOf(data, (int) capacity * dimension);
+        ids = Arrays.copyOf(ids, (int) capacity);
+    }
+
+    @Override
+    public List<Hit> search(float[] query, int k) {
+        checkDimension(query);
+        if (k <= 0) {
+            throw new IllegalArgumentException("k 必须大于 0");
+        }
+        float[] q = VectorIndex.normalize(query);
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return List.of();
+            }
+            int rowsPerTask = Math.max(MIN_ROWS_PER_TASK, size / (pool.getParallelism() * 4) + 1);
+            TopK top = size <= rowsPerTask
+                    ? new ScanTask(q, k, 0, size, rowsPerTask).compute()
+                    : pool.invoke(new ScanTask(q, k, 0, size, rowsPerTask));
+            return toHits(top);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Hit> toHits(TopK top) {
+        int[] rows = new int[top.size()];
+        float[] scores = new float[top.size()];
+        int n = top.drainDescending(rows, scores);
+        List<Hit> hits = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            hits.add(new Hit(ids[rows[i]], scores[i]));
+        }
+        return hits;
+    }
+
+    /**
+     * 对 [from, to) 行做扫描，行数超过 rowsPerTask 时二分后并行执行，再合并两个子结果。
+     */
+    private final class ScanTask extends RecursiveTask<TopK> {
+        private final float[] query;
+        private final int k;
+        private final int from;
+        private final int to;
+        private final int rowsPerTask;
+
+        ScanTask(float[] query, int k, int from, int to, int rowsPerTask) {
+            this.query = query;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+            this.rowsPerTask = rowsPerTask;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= rowsPerTask) {
+                NumericKernels kernels = NumericKernels.get();
+                TopK top = new TopK(k);
+                for (int row = from, offset = from * dimension; row < to; row++, offset += dimension) {
+                    top.offer(row, kernels.dot(data, offset, query, 0, dimension));
+                }
+                return top;
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(query, k, from, mid, rowsPerTask);
+            left.fork();
+            TopK right = new ScanTask(query, k, mid, to, rowsPerTask).compute();
+            TopK merged = left.join();
+            merged.addAll(right);
+            return merged;
+        }
+    }
+
+    /**
+     * 按行号读取归一化后的向量。
+     *
+     * @param row 行号，按写入顺序从 0 开始
+     * @return 归一化向量的副本
+     */
+    public float[] get(int row) {
+        lock.readLock().lock();
+        try {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("行号 " + row + " 超出范围 [0, " + size + ")");
+            }
+            return Arrays.copyOfRange(data, row * dimension, (row + 1) * dimension);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param row 行号
+     * @return 该行的标识
+     */
+    public String getId(int row) {
+        lock.readLock().lock();
+        try {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("行号 " + row + " 超出范围 [0, " + size + ")");
+            }
+            return ids[row];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度 " + (vector == null ? "null" : vector.length) + " 与索引维度 " + dimension + " 不一致");
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对比 {@link HnswIndex} 与 {@link ExactSearchIndex}：不同 efSearch 下的 recall@k 与单次检索延迟。
+ * <p>
+ * 数据可以来自 {@link EmbeddingStore}（真实 embedding），也可以随机生成：随机数据由若干簇中心加噪声组成，
+ * 比各向同性的高斯分布更接近真实 embedding 的分布。查询向量不在索引中，以精确检索的结果为标准答案。
+ * <p>
+ * 用法：
+ * <pre>
+ * HnswBenchmark &lt;向量个数&gt; &lt;维度&gt; [M] [efConstruction]
+ * HnswBenchmark &lt;embeddings.db&gt; &lt;模型标识&gt; [M] [efConstruction]
+ * </pre>
+ */
+public final class HnswBenchmark {
+
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+    private static final int[] EF_SEARCH = {10, 20, 40, 80, 160, 320};
+
+    // 私有构造函数，防止实例化
+    private HnswBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("用法: HnswBenchmark <向量个数|embeddings.db> <维度|模型标识> [M] [efConstruction]");
+            System.exit(1);
+        }
+        int m = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int efConstruction = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        List<float[]> vectors = args[0].endsWith(".db") || args[0].endsWith(".sqlite")
+                ? loadStore(Paths.get(args[0]), args[1])
+                : generate(Integer.parseInt(args[0]), Integer.parseInt(args[1]), new Random(42));
+        if (vectors.size() <= QUERIES) {
+            System.err.println("向量个数必须大于查询个数 " + QUERIES);
+            System.exit(1);
+        }
+        List<float[]> queries = vectors.subList(vectors.size() - QUERIES, vectors.size());
+        List<float[]> data = vectors.subList(0, vectors.size() - QUERIES);
+        int dimension = data.get(0).length;
+        System.out.println("数据: " + data.size() + " x " + dimension + "，查询: " + QUERIES + "，k=" + K
+                + "，M=" + m + "，efConstruction=" + efConstruction);
+
+        ExactSearchIndex exact = new ExactSearchIndex(dimension, data.size(), ForkJoinPool.commonPool());
+        for (int i = 0; i < data.size(); i++) {
+            exact.add(Integer.toString(i), data.get(i));
+        }
+
+        HnswIndex hnsw = new HnswIndex(dimension, data.size(), m, efConstruction, EF_SEARCH[0]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        build(hnsw, data, threads);
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("HNSW 构建: %.1f s，%d 线程，%.0f 向量/秒%n", buildSeconds, threads, data.size() / buildSeconds);
+
+        List<Set<String>> truth = new ArrayList<>(QUERIES);
+        long[] exactNanos = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            long t = System.nanoTime();
+            List<VectorIndex.Hit> hits = exact.search(queries.get(i), K);
+            exactNanos[i] = System.nanoTime() - t;
+            Set<String> ids = new HashSet<>();
+            for (VectorIndex.Hit hit : hits) {
+                ids.add(hit.getId());
+            }
+            truth.add(ids);
+        }
+        System.out.printf("精确检索: 平均 %.0f us，p99 %.0f us%n", mean(exactNanos) / 1e3, percentile(exactNanos, 0.99) / 1e3);
+
+        System.out.println("efSearch  recall@" + K + "  平均(us)  p99(us)");
+        for (int ef : EF_SEARCH) {
+            hnsw.setEfSearch(ef);
+            // 预热
+            for (float[] query : queries) {
+                hnsw.search(query, K);
+            }
+            long[] nanos = new long[QUERIES];
+            int found = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                long t = System.nanoTime();
+                List<VectorIndex.Hit> hits = hnsw.search(queries.get(i), K);
+                nanos[i] = System.nanoTime() - t;
+                for (VectorIndex.Hit hit : hits) {
+                    if (truth.get(i).contains(hit.getId())) {
+                        found++;
+                    }
+                }
+            }
+            System.out.printf("%8d  %9.4f  %8.0f  %7.0f%n", ef, (double) found / (QUERIES * K),
+                    mean(nanos) / 1e3, percentile(nanos, 0.99) / 1e3);
+        }
+
+        Path file = Files.createTempFile("hnsw", ".idx");
+        try {
+            start = System.nanoTime();
+            hnsw.save(file);
+            long saveNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            HnswIndex loaded = HnswIndex.load(file);
+            long loadNanos = System.nanoTime() - start;
+            loaded.setEfSearch(hnsw.getEfSearch());
+            boolean same = true;
+            for (float[] query : queries) {
+                same &= hnsw.search(query, K).toString().equals(loaded.search(query, K).toString());
+            }
+            System.out.printf("保存 %.1f ms，加载 %.1f ms，文件 %d 字节，加载后结果%s%n", saveNanos / 1e6, loadNanos / 1e6,
+                    Files.size(file), same ? "一致" : "不一致");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void build(HnswIndex index, List<float[]> data, int threads) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < data.size(); i = next.getAndIncrement()) {
+                        index.add(Integer.toString(i), data.get(i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<float[]> loadStore(Path db, String modelId) throws Exception {
+        List<float[]> vectors = new ArrayList<>();
+        try (EmbeddingStore store = new EmbeddingStore(db, modelId)) {
+            store.forEach((hash, embedding) -> vectors.add(embedding));
+        }
+        if (vectors.isEmpty()) {
+            throw new IllegalArgumentException("存储中没有模型 " + modelId + " 的 embedding");
+        }
+        return vectors;
+    }
+
+    /**
+     * 生成 n 个向量：每个向量等于随机选取的一个簇中心加上较小的高斯噪声。
+     */
+    static List<float[]> generate(int n, int dimension, Random random) {
+        int clusters = Math.max(1, n / 100);
+        float[][] centers = new float[clusters][dimension];
+        for (float[] center : centers) {
+            for (int j = 0; j < dimension; j++) {
+                center[j] = (float) random.nextGaussian();
+            }
+        }
+        List<float[]> vectors = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            float[] center = centers[random.nextInt(clusters)];
+            float[] v = new float[dimension];
+            for (int j = 0; j < dimension; j++) {
+                v[j] = center[j] + 0.5f * (float) random.nextGaussian();
+            }
+            vectors.add(v);
+        }
+        return vectors;
+    }
+
+    static double mean(long[] values) {
+        return Arrays.stream(values).average().orElse(0);
+    }
+
+    static long percentile(long[] values, double p) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+}
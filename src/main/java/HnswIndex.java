@@ -0,0 +1,730 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * HNSW (Hierarchical Navigable Small World) 近似最近邻索引。
+ * <p>
+ * 参数含义与原论文及 hnswlib 相同：
+ * <ul>
+ *     <li>{@code M}：每个节点在上层的最大邻居数，第 0 层为 {@code 2 * M}；越大召回越高，内存与写入开销也越大；</li>
+ *     <li>{@code efConstruction}：写入时的候选集大小，影响图的质量与构建速度；</li>
+ *     <li>{@code efSearch}：检索时的候选集大小，可随时调整，在召回率与延迟之间取舍。</li>
+ * </ul>
+ * 向量在写入时 L2 归一化，相似度为点积（即余弦相似度），按行存放在固定大小的分块数组中，
+ * 因此容量可以超过单个 {@code float[]} 的上限。容量在创建时确定。
+ * <p>
+ * 支持多线程并发写入与检索：每个节点的邻居表由分段锁保护，只有提升最高层的写入才会独占入口点。
+ * 删除只做标记（tombstone），被删除的节点仍参与图的遍历，但不会出现在结果中；同一标识再次写入时旧节点被标记删除。
+ * 索引可以保存为单个文件并重新加载，保存期间会阻塞写入。
+ */
+public final class HnswIndex implements VectorIndex {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 1;
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_ROWS = 1 << CHUNK_BITS;
+    private static final int LOCK_STRIPES = 1 << 14;
+    /**
+     * 空闲访问标记最多保留的个数；每个占 {@code 2 * capacity} 字节，并发检索更多时临时创建、用完丢弃
+     */
+    private static final int MAX_IDLE_VISITED_SETS = Runtime.getRuntime().availableProcessors();
+
+    private final int dimension;
+    private final int capacity;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private volatile int efSearch;
+
+    private final float[][] vectorChunks;
+    private final String[] ids;
+    /**
+     * links[node][level] 为该节点在该层的邻居表，下标 0 为邻居个数
+     */
+    private final int[][][] links;
+    private final boolean[] deleted;
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicInteger deletedCount = new AtomicInteger();
+    private final ConcurrentHashMap<String, Integer> nodesById = new ConcurrentHashMap<>();
+
+    private final ReentrantLock[] nodeLocks = new ReentrantLock[LOCK_STRIPES];
+    private final ReentrantLock entryLock = new ReentrantLock();
+    private volatile int entryPoint = -1;
+    private volatile int maxLevel = -1;
+    /**
+     * 写入持有读锁（彼此并发），保存持有写锁
+     */
+    private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+    /**
+     * 检索借用、用完归还的访问标记（与 hnswlib 的 VisitedListPool 相同），保留的个数与线程数无关
+     */
+    private final ConcurrentLinkedQueue<VisitedSet> idleVisitedSets = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleVisitedSetCount = new AtomicInteger();
+
+    /**
+     * @param dimension      向量维度
+     * @param capacity       最多容纳的向量个数（包括被删除的）
+     * @param m              每层的最大邻居数，常用 16 ~ 48
+     * @param efConstruction 写入时的候选集大小，常用 100 ~ 400
+     * @param efSearch       检索时的候选集大小
+     */
+    public HnswIndex(int dimension, int capacity, int m, int efConstruction, int efSearch) {
+        if (dimension <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("dimension 与 capacity 必须大于 0");
+        }
+        if (m < 2 || efConstruction <= 0 || efSearch <= 0) {
+            throw new IllegalArgumentException("M 必须不小于 2，efConstruction 与 efSearch 必须大于 0");
+        }
+        this.dimension = dimension;
+        this.capacity = capacity;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.vectorChunks = new float[(capacity + CHUNK_ROWS - 1) >>> CHUNK_BITS][];
+        this.ids = new String[capacity];
+        this.links = new int[capacity][][];
+        this.deleted = new boolean[capacity];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            nodeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * 调整检索时的候选集大小，对之后的检索立即生效。
+     *
+     * @param efSearch 候选集大小
+     */
+    public void setEfSearch(int efSearch) {
+        if (efSearch <= 0) {
+            throw new IllegalArgumentException("efSearch 必须大于 0");
+        }
+        this.efSearch = efSearch;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return count.get() - deletedCount.get();
+    }
+
+    /**
+     * @param id 向量标识
+     * @return 索引中是否存在未被删除的该标识
+     */
+    public boolean contains(String id) {
+        return nodesById.containsKey(id);
+    }
+
+    @Override
+    public void add(String id, float[] vector) {
+        if (id == null) {
+            throw new IllegalArgumentException("id 不能为 null");
+        }
+        checkDimension(vector);
+        float[] normalized = VectorIndex.normalize(vector);
+        structureLock.readLock().lock();
+        try {
+            int node = allocate();
+            float[] chunk = chunk(node);
+            System.arraycopy(normalized, 0, chunk, offset(node), dimension);
+            ids[node] = id;
+            int level = randomLevel();
+            int[][] nodeLinks = new int[level + 1][];
+            nodeLinks[0] = new int[1 + maxM0];
+            for (int l = 1; l <= level; l++) {
+                nodeLinks[l] = new int[1 + m];
+            }
+            links[node] = nodeLinks;
+            insert(node, normalized, level);
+            Integer previous = nodesById.put(id, node);
+            if (previous != null) {
+                markDeleted(previous);
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 标记删除一个向量。
+     *
+     * @param id 向量标识
+     * @return 是否存在并被删除
+     */
+    public boolean remove(String id) {
+        Integer node = nodesById.remove(id);
+        if (node == null) {
+            return false;
+        }
+        markDeleted(node);
+        return true;
+    }
+
+    private void markDeleted(int node) {
+        ReentrantLock lock = lockOf(node);
+        lock.lock();
+        try {
+            if (!deleted[node]) {
+                deleted[node] = true;
+                deletedCount.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int allocate() {
+        while (true) {
+            int node = count.get();
+            if (node >= capacity) {
+                throw new IllegalStateException("HNSW 索引已满，容量为 " + capacity);
+            }
+            if (count.compareAndSet(node, node + 1)) {
+                return node;
+            }
+        }
+    }
+
+    private float[] chunk(int node) {
+        int c = node >>> CHUNK_BITS;
+        float[] chunk = vectorChunks[c];
+        if (chunk == null) {
+            synchronized (vectorChunks) {
+                chunk = vectorChunks[c];
+                if (chunk == null) {
+                    int rows = Math.min(CHUNK_ROWS, capacity - (c << CHUNK_BITS));
+                    chunk = new float[rows * dimension];
+                    vectorChunks[c] = chunk;
+                }
+            }
+        }
+        return chunk;
+    }
+
+    private int offset(int node) {
+        return (node & (CHUNK_ROWS - 1)) * dimension;
+    }
+
+    private int randomLevel() {
+        double r = ThreadLocalRandom.current().nextDouble();
+        return (int) (-Math.log(1 - r) * levelMultiplier);
+    }
+
+    private ReentrantLock lockOf(int node) {
+        return nodeLocks[node & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * 节点与查询向量的相似度。节点通过邻居表（在锁内读取）被发现，其向量的写入先于邻居表的写入，因此可见。
+     */
+    private float similarity(float[] query, int node) {
+        return NumericKernels.get().dot(vectorChunks[node >>> CHUNK_BITS], offset(node), query, 0, dimension);
+    }
+
+    private float similarity(int a, int b) {
+        return NumericKernels.get().dot(vectorChunks[a >>> CHUNK_BITS], offset(a), vectorChunks[b >>> CHUNK_BITS], offset(b), dimension);
+    }
+
+    private void insert(int node, float[] query, int level) {
+        entryLock.lock();
+        int currentMax = maxLevel;
+        int ep = entryPoint;
+        if (ep < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            entryLock.unlock();
+            return;
+        }
+        // 只有新节点的层数超过当前最高层时才在整个写入期间持有入口锁
+        boolean raisesEntry = level > currentMax;
+        if (!raisesEntry) {
+            entryLock.unlock();
+        }
+        try {
+            int[] buffer = new int[maxM0];
+            for (int l = currentMax; l > level; l--) {
+                ep = greedySearch(query, ep, l, buffer);
+            }
+            for (int l = Math.min(level, currentMax); l >= 0; l--) {
+                Heap candidates = searchLayer(query, ep, efConstruction, l, buffer);
+                int n = candidates.size();
+                int[] sortedIds = new int[n];
+                float[] sortedScores = new float[n];
+                candidates.drainDescending(sortedIds, sortedScores);
+                int[] selected = selectNeighbors(sortedIds, sortedScores, n, m);
+                connect(node, selected, l);
+                ep = sortedIds[0];
+            }
+            if (raisesEntry) {
+                entryPoint = node;
+                maxLevel = level;
+            }
+        } finally {
+            if (raisesEntry) {
+                entryLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 启发式选择邻居：按相似度从高到低考察候选，只有当候选与查询的相似度高于它与所有已选邻居的相似度时才选入，
+     * 使邻居分布在不同方向上，提高图的连通性。
+     */
+    private int[] selectNeighbors(int[] sortedIds, float[] sortedScores, int n, int limit) {
+        int[] selected = new int[Math.min(n, limit)];
+        int count = 0;
+        for (int i = 0; i < n && count < limit; i++) {
+            int candidate = sortedIds[i];
+            boolean good = true;
+            for (int j = 0; j < count; j++) {
+                if (similarity(candidate, selected[j]) > sortedScores[i]) {
+                    good = false;
+                    break;
+                }
+            }
+            if (good) {
+                selected[count++] = candidate;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private void connect(int node, int[] selected, int level) {
+        ReentrantLock lock = lockOf(node);
+        lock.lock();
+        try {
+            int[] nodeLinks = links[node][level];
+            System.arraycopy(selected, 0, nodeLinks, 1, selected.length);
+            nodeLinks[0] = selected.length;
+        } finally {
+            lock.unlock();
+        }
+        int maxLinks = level == 0 ? maxM0 : m;
+        for (int neighbor : selected) {
+            ReentrantLock neighborLock = lockOf(neighbor);
+            neighborLock.lock();
+            try {
+                int[] neighborLinks = links[neighbor][level];
+                int n = neighborLinks[0];
+                boolean present = false;
+                for (int i = 1; i <= n; i++) {
+                    if (neighborLinks[i] == node) {
+                        present = true;
+                        break;
+                    }
+                }
+                if (present) {
+                    continue;
+                }
+                if (n < maxLinks) {
+                    neighborLinks[n + 1] = node;
+                    neighborLinks[0] = n + 1;
+                    continue;
+                }
+                // 邻居已满：在原有邻居与新节点中重新做启发式选择
+                Heap candidates = new Heap(n + 1);
+                candidates.push(node, similarity(neighbor, node));
+                for (int i = 1; i <= n; i++) {
+                    candidates.push(neighborLinks[i], similarity(neighbor, neighborLinks[i]));
+                }
+                int[] sortedIds = new int[n + 1];
+                float[] sortedScores = new float[n + 1];
+                candidates.drainDescending(sortedIds, sortedScores);
+                int[] kept = selectNeighbors(sortedIds, sortedScores, n + 1, maxLinks);
+                System.arraycopy(kept, 0, neighborLinks, 1, kept.length);
+                neighborLinks[0] = kept.length;
+            } finally {
+                neighborLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 在邻居表加锁的情况下复制一份，避免与并发写入冲突。
+     */
+    private int readLinks(int node, int level, int[] buffer) {
+        ReentrantLock lock = lockOf(node);
+        lock.lock();
+        try {
+            int[] nodeLinks = links[node][level];
+            int n = nodeLinks[0];
+            System.arraycopy(nodeLinks, 1, buffer, 0, n);
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 在上层贪心地移动到与查询最相似的节点。
+     */
+    private int greedySearch(float[] query, int ep, int level, int[] buffer) {
+        int current = ep;
+        float best = similarity(query, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int n = readLinks(current, level, buffer);
+            for (int i = 0; i < n; i++) {
+                float s = similarity(query, buffer[i]);
+                if (s > best) {
+                    best = s;
+                    current = buffer[i];
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在指定层做 best-first 搜索，返回最多 ef 个最相似节点组成的最小堆。
+     */
+    private Heap searchLayer(float[] query, int ep, int ef, int level, int[] buffer) {
+        VisitedSet visited = acquireVisitedSet();
+        try {
+            return searchLayer(query, ep, ef, level, buffer, visited);
+        } finally {
+            releaseVisitedSet(visited);
+        }
+    }
+
+    private Heap searchLayer(float[] query, int ep, int ef, int level, int[] buffer, VisitedSet visited) {
+        Heap candidates = new Heap(ef * 2);
+        Heap results = new Heap(ef + 1);
+        float s = similarity(query, ep);
+        visited.visit(ep);
+        candidates.push(ep, -s);
+        results.push(ep, s);
+        while (candidates.size() > 0) {
+            float candidateScore = -candidates.peekKey();
+            if (results.size() >= ef && candidateScore < results.peekKey()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            int n = readLinks(candidate, level, buffer);
+            for (int i = 0; i < n; i++) {
+                int neighbor = buffer[i];
+                if (!visited.visit(neighbor)) {
+                    continue;
+                }
+                float ns = similarity(query, neighbor);
+                if (results.size() < ef || ns > results.peekKey()) {
+                    candidates.push(neighbor, -ns);
+                    results.push(neighbor, ns);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<Hit> search(float[] query, int k) {
+        checkDimension(query);
+        if (k <= 0) {
+            throw new IllegalArgumentException("k 必须大于 0");
+        }
+        int ep = entryPoint;
+        if (ep < 0) {
+            return List.of();
+        }
+        float[] q = VectorIndex.normalize(query);
+        int[] buffer = new int[maxM0];
+        // 从入口节点自身的最高层开始，避免与并发提升最高层的写入读到不一致的 maxLevel
+        for (int l = links[ep].length - 1; l > 0; l--) {
+            ep = greedySearch(q, ep, l, buffer);
+        }
+        Heap results = searchLayer(q, ep, Math.max(efSearch, k), 0, buffer);
+        int n = results.size();
+        int[] sortedIds = new int[n];
+        float[] sortedScores = new float[n];
+        results.drainDescending(sortedIds, sortedScores);
+        List<Hit> hits = new ArrayList<>(Math.min(k, n));
+        for (int i = 0; i < n && hits.size() < k; i++) {
+            if (!deleted[sortedIds[i]]) {
+                hits.add(new Hit(ids[sortedIds[i]], sortedScores[i]));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 保存到单个文件：先写临时文件，完成后原子替换。保存期间写入被阻塞，检索不受影响。
+     *
+     * @param file 目标文件
+     * @throws IOException 写入失败时抛出
+     */
+    public void save(Path file) throws IOException {
+        structureLock.writeLock().lock();
+        try {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            int n = count.get();
+            try (OutputStream fileOut = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(dimension);
+                out.writeInt(capacity);
+                out.writeInt(m);
+                out.writeInt(efConstruction);
+                out.writeInt(efSearch);
+                out.writeInt(n);
+                out.writeInt(entryPoint);
+                out.writeInt(maxLevel);
+                ByteBuffer row = ByteBuffer.allocate(dimension * Float.BYTES);
+                for (int node = 0; node < n; node++) {
+                    out.writeUTF(ids[node]);
+                    out.writeBoolean(deleted[node]);
+                    row.clear();
+                    row.asFloatBuffer().put(vectorChunks[node >>> CHUNK_BITS], offset(node), dimension);
+                    out.write(row.array());
+                    int[][] nodeLinks = links[node];
+                    out.writeByte(nodeLinks.length - 1);
+                    for (int[] levelLinks : nodeLinks) {
+                        out.writeShort(levelLinks[0]);
+                        for (int i = 1; i <= levelLinks[0]; i++) {
+                            out.writeInt(levelLinks[i]);
+                        }
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 从 {@link #save(Path)} 保存的文件加载索引。
+     *
+     * @param file 索引文件
+     * @return 索引
+     * @throws IOException 读取失败或文件格式不正确时抛出
+     */
+    public static HnswIndex load(Path file) throws IOException {
+        try (InputStream fileIn = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn, 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是 HNSW 索引文件: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("不支持的 HNSW 索引文件版本: " + version);
+            }
+            int dimension = in.readInt();
+            int capacity = in.readInt();
+            int m = in.readInt();
+            int efConstruction = in.readInt();
+            int efSearch = in.readInt();
+            int n = in.readInt();
+            HnswIndex index = new HnswIndex(dimension, capacity, m, efConstruction, efSearch);
+            index.entryPoint = in.readInt();
+            index.maxLevel = in.readInt();
+            byte[] row = new byte[dimension * Float.BYTES];
+            for (int node = 0; node < n; node++) {
+                index.ids[node] = in.readUTF();
+                index.deleted[node] = in.readBoolean();
+                in.readFully(row);
+                ByteBuffer.wrap(row).asFloatBuffer().get(index.chunk(node), index.offset(node), dimension);
+                int level = in.readUnsignedByte();
+                int[][] nodeLinks = new int[level + 1][];
+                for (int l = 0; l <= level; l++) {
+                    int[] levelLinks = new int[1 + (l == 0 ? index.maxM0 : m)];
+                    levelLinks[0] = in.readUnsignedShort();
+                    for (int i = 1; i <= levelLinks[0]; i++) {
+                        levelLinks[i] = in.readInt();
+                    }
+                    nodeLinks[l] = levelLinks;
+                }
+                index.links[node] = nodeLinks;
+                if (index.deleted[node]) {
+                    index.deletedCount.incrementAndGet();
+                } else {
+                    index.nodesById.put(index.ids[node], node);
+                }
+            }
+            index.count.set(n);
+            return index;
+        }
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度 " + (vector == null ? "null" : vector.length) + " 与索引维度 " + dimension + " 不一致");
+        }
+    }
+
+    /**
+     * 以 float 为键的可增长最小堆，用基本类型数组实现。候选队列以相似度的相反数为键，即相似度最大堆。
+     */
+    private static final class Heap {
+        private int[] ids;
+        private float[] keys;
+        private int size;
+
+        Heap(int initialCapacity) {
+            ids = new int[Math.max(4, initialCapacity)];
+            keys = new float[ids.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        float peekKey() {
+            return keys[0];
+        }
+
+        void push(int id, float key) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                ids[i] = ids[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            keys[i] = key;
+        }
+
+        int pop() {
+            int top = ids[0];
+            size--;
+            int id = ids[size];
+            float key = keys[size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (key <= keys[child]) {
+                    break;
+                }
+                ids[i] = ids[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            ids[i] = id;
+            keys[i] = key;
+            return top;
+        }
+
+        /**
+         * 按键从大到小取出全部元素，之后堆为空。
+         */
+        void drainDescending(int[] idsOut, float[] keysOut) {
+            for (int i = size - 1; i >= 0; i--) {
+                keysOut[i] = keys[0];
+                idsOut[i] = pop();
+            }
+        }
+    }
+
+    /**
+     * 借用一个访问标记并清空，没有空闲的时新建；不会阻塞。
+     */
+    private VisitedSet acquireVisitedSet() {
+        VisitedSet visited = idleVisitedSets.poll();
+        if (visited == null) {
+            visited = new VisitedSet(capacity);
+        } else {
+            idleVisitedSetCount.decrementAndGet();
+        }
+        visited.reset();
+        return visited;
+    }
+
+    /**
+     * 归还访问标记；空闲的已足够时直接丢弃。
+     */
+    private void releaseVisitedSet(VisitedSet visited) {
+        if (idleVisitedSetCount.incrementAndGet() <= MAX_IDLE_VISITED_SETS) {
+            idleVisitedSets.offer(visited);
+        } else {
+            idleVisitedSetCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * 可复用的访问标记：用递增的代数代替每次清空数组，代数为 16 位，回绕时才清空一次。
+     */
+    private static final class VisitedSet {
+        private final short[] marks;
+        private short generation;
+
+        VisitedSet(int capacity) {
+            marks = new short[capacity];
+        }
+
+        void reset() {
+            if (++generation == 0) {
+                Arrays.fill(marks, (short) 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * @return 是否是第一次访问
+         */
+        boolean visit(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+}
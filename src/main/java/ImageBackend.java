@@ -0,0 +1,83 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+
+/**
+ * 图像解码与预处理的后端，由 {@link ImageProcessorConfig#getBackend()} 选择，{@link ImagePreprocessors} 按配置分派。
+ * <ul>
+ *     <li>{@code java2d}（默认）：ImageIO 解码（见 {@link ImageDecoder}），{@link ImageResampler} 以与 PIL 相同的算法缩放；</li>
+ *     <li>{@code opencv}：OpenCV 在本地代码中完成解码、缩放与裁剪（见 {@link OpenCvImageBackend}），
+ *     大尺寸 JPEG 直接在 DCT 域缩小解码。</li>
+ * </ul>
+ * 两个后端的 rescale / normalize 使用同一张查找表，差异只来自解码与缩放，大小可用 {@link ImageBackendParity} 检查。
+ * <p>
+ * 解码的结果只适用于以同一份配置、同一个后端做预处理：两个后端都会按配置只解码或只保留预处理需要的部分。
+ */
+public interface ImageBackend {
+
+    String JAVA2D = "java2d";
+    String OPENCV = "opencv";
+
+    /**
+     * @return 后端名称，即配置中的取值
+     */
+    String getName();
+
+    /**
+     * @param file   图像文件
+     * @param config 之后用于预处理的配置
+     * @return 解码结果；格式不受支持时为 null（与 {@link javax.imageio.ImageIO#read} 一致）
+     * @throws IOException 读取或解码失败
+     */
+    BufferedImage decode(File file, ImageProcessorConfig config) throws IOException;
+
+    /**
+     * @param stream 图像文件内容，不会被关闭
+     * @param config 之后用于预处理的配置
+     * @return 解码结果；格式不受支持时为 null
+     * @throws IOException 读取或解码失败
+     */
+    BufferedImage decode(InputStream stream, ImageProcessorConfig config) throws IOException;
+
+    /**
+     * 完整的预处理，结果为新分配的 CHW 数组。
+     *
+     * @param image  解码后的图像
+     * @param config 预处理配置
+     * @return {@code 3 * height * width} 个 float
+     */
+    float[] preprocess(BufferedImage image, ImageProcessorConfig config);
+
+    /**
+     * 完整的预处理，结果按 CHW 写入 {@code dst} 中从 {@code offset} 开始的位置（绝对位置写入）。
+     *
+     * @param image  解码后的图像
+     * @param config 预处理配置
+     * @param dst    目标缓冲区，通常为张量背后的直接内存
+     * @param offset 写入的起始位置（以 float 计）
+     * @return 写入的 float 个数
+     */
+    int preprocess(BufferedImage image, ImageProcessorConfig config, FloatBuffer dst, int offset);
+
+    /**
+     * @param name {@code java2d} 或 {@code opencv}
+     * @return 对应的后端（进程内单例）
+     * @throws IllegalArgumentException 未知的后端
+     * @throws IllegalStateException    OpenCV 本地库无法加载
+     */
+    static ImageBackend of(String name) {
+        if (JAVA2D.equals(name)) {
+            return Java2DImageBackend.INSTANCE;
+        }
+        if (OPENCV.equals(name)) {
+            try {
+                return OpenCvImageBackend.INSTANCE;
+            } catch (LinkageError e) {
+                throw new IllegalStateException("无法加载 OpenCV 本地库", e);
+            }
+        }
+        throw new IllegalArgumentException("未知的图像后端: " + name);
+    }
+}
@@ -0,0 +1,137 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+/**
+ * 检查两个 {@link ImageBackend} 的预处理输出差异是否在约定的范围内：对同一份编码数据分别以 java2d 与 opencv 后端
+ * 解码、预处理，逐个 float 比较 CHW 输出。
+ * <p>
+ * 差异以灰度级计（1 级即 8 位像素值相差 1 经 rescale / normalize 后的大小），对每张图像报告平均、p99 与最大差异。
+ * 两个后端的 rescale / normalize 逐位相同，差异只来自解码（JPEG 的 IDCT 与色彩转换舍入、DCT 域缩小）与缩放滤波器：
+ * 平均差异反映整体的偏移，p99 反映边缘附近的差异；最大差异出现在锐利边缘上的个别像素，只报告、不作为判定依据。
+ * 任一图像超出范围或输出尺寸不同时以退出码 1 结束，可用于 CI 或升级 OpenCV 之后的回归检查。
+ * 默认范围取自 OpenCV 4.9.0 在合成图像上的实测（平均最大 0.40 级，p99 最大 8 级），另留出余量。
+ * <p>
+ * 用法：
+ * <pre>
+ * ImageBackendParity [&lt;图像目录&gt;] [--max-mean 1] [--max-p99 12]
+ * </pre>
+ * 不指定目录时使用 {@link CreateTestImage} 生成的合成图像（各尺寸与格式各一张）；
+ * 指定目录时检查其中的全部图像，例如 {@code CreateTestImage} 生成的语料库。
+ */
+public final class ImageBackendParity {
+
+    private static final String[] SIZES = {"640x480", "1920x1080", "4032x3024", "8160x6120"};
+    private static final String[] FORMATS = {"jpeg", "png", "gray", "alpha"};
+
+    // 私有构造函数，防止实例化
+    private ImageBackendParity() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path dir = null;
+        double maxMean = 1;
+        double maxP99 = 12;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--max-mean" -> maxMean = Double.parseDouble(args[++i]);
+                case "--max-p99" -> maxP99 = Double.parseDouble(args[++i]);
+                default -> dir = Paths.get(args[i]);
+            }
+        }
+
+        Map<String, Callable<byte[]>> images = dir == null ? synthetic() : load(dir);
+        ImageProcessorConfig java2d = new ImageProcessorConfig();
+        java2d.setBackend(ImageBackend.JAVA2D);
+        ImageProcessorConfig opencv = new ImageProcessorConfig();
+        opencv.setBackend(ImageBackend.OPENCV);
+        float[] lut = java2d.getPixelLut();
+        double level = Math.abs(lut[1] - lut[0]);
+
+        System.out.printf("%-28s %10s %10s %10s%n", "image", "mean", "p99", "max");
+        int failures = 0;
+        for (Map.Entry<String, Callable<byte[]>> image : images.entrySet()) {
+            // 逐张读取或生成，同一时刻只有一张图像在内存中
+            byte[] encoded = image.getValue().call();
+            float[] expected = preprocess(encoded, java2d);
+            float[] actual = preprocess(encoded, opencv);
+            if (expected == null || actual == null) {
+                System.out.printf("%-28s 无法解码（java2d=%s, opencv=%s）%n", image.getKey(),
+                        expected != null, actual != null);
+                failures++;
+                continue;
+            }
+            if (expected.length != actual.length) {
+                System.out.printf("%-28s 输出长度不同: %d != %d%n", image.getKey(), expected.length, actual.length);
+                failures++;
+                continue;
+            }
+            double[] diff = compare(expected, actual, level);
+            boolean ok = diff[0] <= maxMean && diff[1] <= maxP99;
+            System.out.printf("%-28s %10.3f %10.3f %10.3f%s%n", image.getKey(), diff[0], diff[1], diff[2], ok ? "" : "  超出范围");
+            if (!ok) {
+                failures++;
+            }
+        }
+        System.out.printf("%d 张图像，%d 张超出范围（平均 <= %.2f 级，p99 <= %.2f 级）%n", images.size(), failures, maxMean, maxP99);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static float[] preprocess(byte[] encoded, ImageProcessorConfig config) throws IOException {
+        BufferedImage image = ImagePreprocessors.decodeImage(new ByteArrayInputStream(encoded), config);
+        return image == null ? null : ImagePreprocessors.preprocessImage(image, config);
+    }
+
+    /**
+     * @return 以灰度级计的 {平均, p99, 最大} 绝对差异
+     */
+    static double[] compare(float[] expected, float[] actual, double level) {
+        float[] diff = new float[expected.length];
+        double sum = 0;
+        for (int i = 0; i < diff.length; i++) {
+            diff[i] = Math.abs(expected[i] - actual[i]);
+            sum += diff[i];
+        }
+        Arrays.sort(diff);
+        int p99 = Math.min(diff.length - 1, (int) Math.ceil(0.99 * diff.length) - 1);
+        return new double[]{sum / diff.length / level, diff[Math.max(0, p99)] / level, diff[diff.length - 1] / level};
+    }
+
+    private static Map<String, Callable<byte[]>> synthetic() {
+        Map<String, Callable<byte[]>> images = new LinkedHashMap<>();
+        for (String size : SIZES) {
+            int[] wh = CreateTestImage.parseSize(size);
+            for (String format : FORMATS) {
+                images.put(size + "." + format, () -> CreateTestImage.encode(wh[0], wh[1], format, 42));
+            }
+        }
+        return images;
+    }
+
+    private static Map<String, Callable<byte[]>> load(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(dir)) {
+            list.filter(Files::isRegularFile)
+                    .filter(p -> !p.getFileName().toString().endsWith(".tsv"))
+                    .sorted()
+                    .forEach(files::add);
+        }
+        Map<String, Callable<byte[]>> images = new LinkedHashMap<>();
+        for (Path file : files) {
+            images.put(file.getFileName().toString(), () -> Files.readAllBytes(file));
+        }
+        return images;
+    }
+}
@@ -0,0 +1,244 @@
+import com.keevol.ai.djl.playground.systemd.StageMetrics;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * 按预处理所需的分辨率解码图像，避免大图先完整解码再被缩小。
+ * <p>
+ * 先只读取图像头得到尺寸，再根据 {@link ImageProcessorConfig} 决定：
+ * <ul>
+ *     <li>源图降采样（{@link ImageReadParam#setSourceSubsampling}），仅在 {@link ImageProcessorConfig#getDecode_oversampling()}
+ *     大于 0 时进行：缩放比例大于余量的 2 倍时，每隔 k 个像素取一个，使解码结果的最短边仍不小于目标最短边的
+ *     余量倍，之后仍由 {@link ImageResampler} 以抗锯齿滤波完成最终缩放；</li>
+ *     <li>区域读取（{@link ImageReadParam#setSourceRegion}）：开启中心裁剪时只解码裁剪窗口依赖的源图行列，
+ *     范围由 {@link ImageResampler#sourceRange} 精确给出。</li>
+ * </ul>
+ * 缩减后的结果以 {@link ReducedImage} 返回，记录它在源图中的位置，{@link ImagePreprocessors} 据此按完整源图的
+ * 几何关系计算缩放尺寸与裁剪窗口：只做区域读取时结果与完整解码逐像素相同；做了降采样时，
+ * 差异来自降采样本身（点采样，不做滤波）。以 6000x4000 的合成图像为例，按 2 倍余量时平均误差约 0.4 个灰度级，
+ * 锐利边缘上的个别像素可达数十个灰度级；余量取 4 时两者大约减半。
+ * <p>
+ * 开启降采样时解码出的像素数有上界：约为 {@code (余量 * shortest_edge)^2} 乘以宽高比，与源图的尺寸无关，
+ * 一批大尺寸照片不会因为解码把工作线程的堆撑爆。JPEG 解码器仍需对每个块做熵解码，
+ * 节省的主要是内存与像素读取，PNG 则逐行跳过。
+ * <p>
+ * 余量为 0（{@link ImageProcessorConfig} 的默认值）时只做区域读取，结果与完整解码相同，但<b>解码占用的内存没有上界</b>：
+ * 中心裁剪只去掉长边两侧，6000x4000 的照片仍要解码 3516x3516 的区域（约一半像素），堆占用随源图尺寸增长；
+ * 余量取 4 时只解码 1172x1172。需要限制单张大图峰值堆占用的场合（如 HTTP 服务，默认余量 4）应开启降采样。
+ * <p>
+ * 得到的图像只适用于以同一份配置做预处理。降采样改变了输出，余量因此是配置的一部分并计入
+ * {@link ImageProcessorConfig#getIdentity()}。
+ */
+public final class ImageDecoder {
+
+    // 私有构造函数，防止实例化
+    private ImageDecoder() {}
+
+    /**
+     * @param file   图像文件
+     * @param config 之后用于预处理的配置
+     * @return 解码结果，可能是 {@link ReducedImage}；格式不受支持时为 null（与 {@link ImageIO#read} 一致）
+     * @throws IOException 读取或解码失败
+     */
+    public static BufferedImage decode(File file, ImageProcessorConfig config) throws IOException {
+        if (!file.exists()) {
+            throw new IOException("图像文件不存在: " + file);
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                throw new IOException("无法读取图像文件: " + file);
+            }
+            return decode(in, config);
+        }
+    }
+
+    /**
+     * @param stream 图像文件内容，不会被关闭
+     * @param config 之后用于预处理的配置
+     * @return 解码结果，可能是 {@link ReducedImage}；格式不受支持时为 null（与 {@link ImageIO#read} 一致）
+     * @throws IOException 读取或解码失败
+     */
+    public static BufferedImage decode(InputStream stream, ImageProcessorConfig config) throws IOException {
+        // 显式使用内存缓存：ImageIO.createImageInputStream 在默认的 useCache=true 下会把整个流缓存到临时文件
+        try (ImageInputStream in = new MemoryCacheImageInputStream(stream)) {
+            return decode(in, config);
+        }
+    }
+
+    private static BufferedImage decode(ImageInputStream in, ImageProcessorConfig config) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        long start = StageMetrics.start();
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(in, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            ImageReadParam param = reader.getDefaultReadParam();
+            Plan plan = plan(width, height, config);
+            if (plan == null) {
+                return reader.read(0, param);
+            }
+            param.setSourceRegion(new Rectangle(plan.x * plan.subsampling, plan.y * plan.subsampling,
+                    Math.min(width, plan.xEnd * plan.subsampling) - plan.x * plan.subsampling,
+                    Math.min(height, plan.yEnd * plan.subsampling) - plan.y * plan.subsampling));
+            param.setSourceSubsampling(plan.subsampling, plan.subsampling, 0, 0);
+            BufferedImage region = reader.read(0, param);
+            return new ReducedImage(region, width, height, plan);
+        } finally {
+            reader.dispose();
+            StageMetrics.Stage.DECODE.record(start);
+        }
+    }
+
+    /**
+     * 计算降采样倍数与需要解码的区域，不需要缩减时返回 null。
+     */
+    static Plan plan(int width, int height, ImageProcessorConfig config) {
+        if (config.isDo_resize()) {
+            int[] size = ImageResampler.shortestEdgeSize(width, height, config.getShortest_edge());
+            int subsampling = 1;
+            int oversampling = config.getDecode_oversampling();
+            if (oversampling > 0) {
+                double scale = Math.min((double) width / size[0], (double) height / size[1]);
+                subsampling = Math.max(1, (int) (scale / oversampling));
+            }
+            int gridWidth = (width + subsampling - 1) / subsampling;
+            int gridHeight = (height + subsampling - 1) / subsampling;
+            if (config.isDo_center_crop()) {
+                if (size[0] < config.getCrop_width() || size[1] < config.getCrop_height()) {
+                    // 交给预处理报告尺寸错误
+                    return null;
+                }
+                int[] xs = ImageResampler.sourceRange(gridWidth, size[0], (size[0] - config.getCrop_width()) / 2,
+                        config.getCrop_width(), config.getResample());
+                int[] ys = ImageResampler.sourceRange(gridHeight, size[1], (size[1] - config.getCrop_height()) / 2,
+                        config.getCrop_height(), config.getResample());
+                return reduced(subsampling, gridWidth, gridHeight, xs[0], ys[0], xs[1], ys[1]);
+            }
+            return reduced(subsampling, gridWidth, gridHeight, 0, 0, gridWidth, gridHeight);
+        }
+        if (config.isDo_center_crop() && width >= config.getCrop_width() && height >= config.getCrop_height()) {
+            int x = (width - config.getCrop_width()) / 2;
+            int y = (height - config.getCrop_height()) / 2;
+            return reduced(1, width, height, x, y, x + config.getCrop_width(), y + config.getCrop_height());
+        }
+        return null;
+    }
+
+    private static Plan reduced(int subsampling, int gridWidth, int gridHeight, int x, int y, int xEnd, int yEnd) {
+        if (subsampling == 1 && x == 0 && y == 0 && xEnd == gridWidth && yEnd == gridHeight) {
+            return null;
+        }
+        return new Plan(subsampling, gridWidth, gridHeight, x, y, xEnd, yEnd);
+    }
+
+    /**
+     * 解码计划：源图按 subsampling 降采样后为 gridWidth x gridHeight 的网格，只解码其中 [x, xEnd) x [y, yEnd) 的部分。
+     */
+    static final class Plan {
+        final int subsampling;
+        final int gridWidth;
+        final int gridHeight;
+        final int x;
+        final int y;
+        final int xEnd;
+        final int yEnd;
+
+        Plan(int subsampling, int gridWidth, int gridHeight, int x, int y, int xEnd, int yEnd) {
+            this.subsampling = subsampling;
+            this.gridWidth = gridWidth;
+            this.gridHeight = gridHeight;
+            this.x = x;
+            this.y = y;
+            this.xEnd = xEnd;
+            this.yEnd = yEnd;
+        }
+    }
+
+    /**
+     * 按缩减的分辨率或区域解码出的图像：像素为降采样网格中从 ({@link #getGridX()}, {@link #getGridY()})
+     * 开始的一块，直接共享解码结果的栅格，不做拷贝。
+     */
+    public static final class ReducedImage extends BufferedImage {
+        private final int sourceWidth;
+        private final int sourceHeight;
+        private final int subsampling;
+        private final int gridWidth;
+        private final int gridHeight;
+        private final int gridX;
+        private final int gridY;
+
+        private ReducedImage(BufferedImage decoded, int sourceWidth, int sourceHeight, Plan plan) {
+            super(decoded.getColorModel(), decoded.getRaster(), decoded.isAlphaPremultiplied(), null);
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.subsampling = plan.subsampling;
+            this.gridWidth = plan.gridWidth;
+            this.gridHeight = plan.gridHeight;
+            this.gridX = plan.x;
+            this.gridY = plan.y;
+        }
+
+        /**
+         * @return 源图的宽度，用于计算缩放尺寸与裁剪窗口
+         */
+        public int getSourceWidth() {
+            return sourceWidth;
+        }
+
+        /**
+         * @return 源图的高度，用于计算缩放尺寸与裁剪窗口
+         */
+        public int getSourceHeight() {
+            return sourceHeight;
+        }
+
+        /**
+         * @return 降采样倍数，1 表示只做了区域读取
+         */
+        public int getSubsampling() {
+            return subsampling;
+        }
+
+        /**
+         * @return 降采样后完整网格的宽度，即缩放时的源宽度
+         */
+        public int getGridWidth() {
+            return gridWidth;
+        }
+
+        /**
+         * @return 降采样后完整网格的高度，即缩放时的源高度
+         */
+        public int getGridHeight() {
+            return gridHeight;
+        }
+
+        /**
+         * @return 本图像第 0 列在网格中的位置
+         */
+        public int getGridX() {
+            return gridX;
+        }
+
+        /**
+         * @return 本图像第 0 行在网格中的位置
+         */
+        public int getGridY() {
+            return gridY;
+        }
+    }
+}
@@ -21,28 +21,133 @@ import ai.onnxruntime.OnnxTensor;
 import ai.onnxruntime.OrtEnvironment;
 import ai.onnxruntime.OrtException;
 import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
+import com.keevol.ai.djl.playground.systemd.StageMetrics;
 
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
-import java.nio.FloatBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 public class ImageEmbeddingDemo implements AutoCloseable {
+    private static final String INPUT_NAME = "pixel_values";
+    private static final int DEFAULT_MAX_BATCH_SIZE = 32;
+
     private OrtEnvironment environment;
-    private OrtSession session;
+    private InferenceEngine engine;
+    private final boolean ownsEngine;
+    private final ImageProcessorConfig config = new ImageProcessorConfig();
+    private final int maxBatchSize;
+    private InputTensorPool inputPool;
+    private InputTensorPool batchInputPool;
 
     /**
      * Constructs an ImageEmbedding instance.
+     * Session settings are read from {@code -Dembedding.ort.*} system properties, see {@link InferenceEngineConfig#fromSystemProperties()}.
      *
      * @param modelPath The file path to the ONNX model.
      * @throws OrtException If there is an error initializing the ONNX Runtime environment or session.
      */
     public ImageEmbeddingDemo(String modelPath) throws OrtException {
-        this.environment = OrtEnvironment.getEnvironment();
-        this.session = environment.createSession(modelPath, new OrtSession.SessionOptions());
+        this(modelPath, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs an ImageEmbedding instance.
+     * Session settings are read from {@code -Dembedding.ort.*} system properties, see {@link InferenceEngineConfig#fromSystemProperties()}.
+     *
+     * @param modelPath    The file path to the ONNX model.
+     * @param maxBatchSize The maximum number of images stacked into one {@code session.run} by {@link #embedBatch(List)}.
+     *                     Capped to the model's batch dimension if that dimension is fixed.
+     * @throws OrtException If there is an error initializing the ONNX Runtime environment or session.
+     */
+    public ImageEmbeddingDemo(String modelPath, int maxBatchSize) throws OrtException {
+        this(modelPath, InferenceEngineConfig.fromSystemProperties(), maxBatchSize);
+    }
+
+    /**
+     * Constructs an ImageEmbedding instance with explicit session settings.
+     *
+     * @param modelPath    The file path to the ONNX model.
+     * @param engineConfig Thread counts, execution mode, optimization level and session sharing of the inference engine.
+     * @param maxBatchSize The maximum number of images stacked into one {@code session.run} by {@link #embedBatch(List)}.
+     * @throws OrtException If there is an error initializing the ONNX Runtime environment or session.
+     */
+    public ImageEmbeddingDemo(String modelPath, InferenceEngineConfig engineConfig, int maxBatchSize) throws OrtException {
+        this(new InferenceEngine(modelPath, engineConfig), true, maxBatchSize);
         System.out.println("ONNX model loaded from: " + modelPath);
-        System.out.println("Input names: " + session.getInputNames());
-        System.out.println("Output names: " + session.getOutputNames());
+        System.out.println("Session config: " + engineConfig);
+        System.out.println("Input names: " + engine.getInputNames());
+        System.out.println("Output names: " + engine.getOutputNames());
+    }
+
+    /**
+     * Constructs an ImageEmbedding instance on top of an existing inference engine, which stays owned by the caller
+     * and is not closed by {@link #close()}.
+     *
+     * @param engine       The inference engine running the model.
+     * @param maxBatchSize The maximum number of images stacked into one {@code session.run} by {@link #embedBatch(List)}.
+     * @throws OrtException If the model input cannot be inspected.
+     */
+    public ImageEmbeddingDemo(InferenceEngine engine, int maxBatchSize) throws OrtException {
+        this(engine, false, maxBatchSize);
+    }
+
+    private ImageEmbeddingDemo(InferenceEngine engine, boolean ownsEngine, int maxBatchSize) throws OrtException {
+        if (maxBatchSize <= 0) {
+            if (ownsEngine) {
+                engine.close();
+            }
+            throw new IllegalArgumentException("maxBatchSize 必须大于 0");
+        }
+        this.engine = engine;
+        this.ownsEngine = ownsEngine;
+        this.environment = engine.getEnvironment();
+        long modelBatch = ((TensorInfo) engine.getInputInfo().get(INPUT_NAME).getInfo()).getShape()[0];
+        this.maxBatchSize = modelBatch > 0 ? (int) Math.min(maxBatchSize, modelBatch) : maxBatchSize;
+        int processors = Runtime.getRuntime().availableProcessors();
+        this.inputPool = new InputTensorPool(environment, inputShape(1), processors);
+        this.batchInputPool = new InputTensorPool(environment, inputShape(this.maxBatchSize), Math.max(1, processors / 4));
+    }
+
+    private long[] inputShape(int batch) {
+        return new long[]{batch, 3, config.getCrop_height(), config.getCrop_width()};
+    }
+
+    /**
+     * @return The maximum number of images per {@code session.run} in batch mode.
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return The number of inference sessions, i.e. how many batches can run at the same time.
+     */
+    public int getSessionCount() {
+        return engine.getSessionCount();
+    }
+
+    /**
+     * @return The preprocessing settings, including the image backend; images decoded with
+     * {@link ImagePreprocessors#decodeImage} for this instance must use them.
+     */
+    public ImageProcessorConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Decodes an image file at the resolution the preprocessing needs with the configured backend, see {@link ImageBackend}.
+     */
+    private BufferedImage decode(String imagePath) throws IOException {
+        BufferedImage image = ImagePreprocessors.decodeImage(new File(imagePath), config);
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + imagePath);
+        }
+        return image;
     }
 
     /**
@@ -54,32 +159,112 @@ public class ImageEmbeddingDemo implements AutoCloseable {
      * @throws OrtException If there is an error during model inference.
      */
     public float[] embed(String imagePath) throws IOException, OrtException {
-        // 1. Preprocess the image using the utility class
-        // Assuming the utility returns a float array in the shape [1, C, H, W]
-        float[] preprocessedData = ImagePreprocessingUtils.preprocessImage(imagePath);
-
-        // 2. Create an ONNX tensor from the preprocessed data
-        // Assuming the model's input node name is "input"
-        // 创建输入张量
-        long[] inputShape = {1, 3, 224, 224};
-        OnnxTensor inputTensor = OnnxTensor.createTensor(environment, FloatBuffer.wrap(preprocessedData), inputShape);
-
-        // 执行推理
-        System.out.println("执行模型推理...");
-        try (OrtSession.Result result = session.run(Collections.singletonMap("pixel_values", inputTensor))) {
-            // 4. Extract the embedding from the result
-            return ImageEmbeddingExtractor.extractWithGlobalAvgPooling(result);
+        return embed(decode(imagePath));
+    }
+
+    /**
+     * Generates an embedding for an already decoded image.
+     *
+     * @param image The decoded image.
+     * @return A float array representing the image embedding.
+     * @throws OrtException If there is an error during model inference.
+     */
+    public float[] embed(BufferedImage image) throws OrtException {
+        // 1. Borrow a pooled input tensor backed by direct memory of shape [1, C, H, W]
+        long leaseStart = StageMetrics.start();
+        try (InputTensorPool.Lease input = inputPool.acquire()) {
+            long leaseNanos = leaseStart == 0 ? 0 : System.nanoTime() - leaseStart;
+            // 2. Preprocess straight into the tensor's memory, ONNX Runtime reads it without another copy
+            ImagePreprocessors.preprocessImage(image, config, input.buffer(), 0);
+
+            // 执行推理
+            long tensorStart = StageMetrics.start();
+            OnnxTensor tensor = input.tensor();
+            if (tensorStart != 0) {
+                StageMetrics.Stage.TENSOR.recordNanos(leaseNanos + System.nanoTime() - tensorStart, 1);
+            }
+            return engine.withSession(session -> {
+                long start = StageMetrics.start();
+                try (OrtSession.Result result = session.run(Collections.singletonMap(INPUT_NAME, tensor))) {
+                    StageMetrics.Stage.INFERENCE.record(start);
+                    // 3. Extract the embedding from the result
+                    return ImageEmbeddingExtractor.extractWithGlobalAvgPooling(result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Generates embeddings for a list of image files with batched inference.
+     *
+     * @param imagePaths The paths to the image files.
+     * @return One embedding per image, in the same order as {@code imagePaths}.
+     * @throws IOException  If an image file cannot be read.
+     * @throws OrtException If there is an error during model inference.
+     * @see #embedImages(List)
+     */
+    public List<float[]> embedBatch(List<String> imagePaths) throws IOException, OrtException {
+        List<BufferedImage> images = new ArrayList<>(imagePaths.size());
+        for (String imagePath : imagePaths) {
+            images.add(decode(imagePath));
         }
+        return embedImages(images);
+    }
+
+    /**
+     * Generates embeddings for a list of decoded images with batched inference.
+     * <p>
+     * Up to {@link #getMaxBatchSize()} preprocessed images are stacked into one {@code [N, C, H, W]} input tensor
+     * and run through the model at once; larger lists are split into several runs.
+     *
+     * @param images The decoded images.
+     * @return One embedding per image, in the same order as {@code images}.
+     * @throws OrtException If there is an error during model inference.
+     */
+    public List<float[]> embedImages(List<BufferedImage> images) throws OrtException {
+        List<float[]> embeddings = new ArrayList<>(images.size());
+        for (int from = 0; from < images.size(); from += maxBatchSize) {
+            int batch = Math.min(maxBatchSize, images.size() - from);
+            long leaseStart = StageMetrics.start();
+            try (InputTensorPool.Lease input = batchInputPool.acquire()) {
+                long leaseNanos = leaseStart == 0 ? 0 : System.nanoTime() - leaseStart;
+                // Each image is written into its own [C, H, W] slot of the shared batch buffer
+                int offset = 0;
+                for (int i = 0; i < batch; i++) {
+                    offset += ImagePreprocessors.preprocessImage(images.get(from + i), config, input.buffer(), offset);
+                }
+                long tensorStart = StageMetrics.start();
+                OnnxTensor tensor = input.tensor(batch);
+                if (tensorStart != 0) {
+                    StageMetrics.Stage.TENSOR.recordNanos(leaseNanos + System.nanoTime() - tensorStart, batch);
+                }
+                float[][] pooled = engine.withSession(session -> {
+                    long start = StageMetrics.start();
+                    try (OrtSession.Result result = session.run(Collections.singletonMap(INPUT_NAME, tensor))) {
+                        StageMetrics.Stage.INFERENCE.record(start, batch);
+                        return ImageEmbeddingExtractor.extractBatchWithGlobalAvgPooling(result);
+                    }
+                });
+                Collections.addAll(embeddings, pooled);
+            }
+        }
+        return embeddings;
     }
 
 
     @Override
     public void close() throws Exception {
-        if (session != null) {
-            session.close();
+        if (inputPool != null) {
+            inputPool.close();
+        }
+        if (batchInputPool != null) {
+            batchInputPool.close();
         }
-        if (environment != null) {
-            environment.close();
+        if (engine != null && ownsEngine) {
+            engine.close();
+            if (environment != null) {
+                environment.close();
+            }
         }
     }
 
@@ -104,6 +289,7 @@ public class ImageEmbeddingDemo implements AutoCloseable {
 //            float[] embedding = imageEmbedding.embed("/Users/fq/福匠素材库.library/images/MESGARN2V4E0W.info/Output for the Skill Character Mix.png");
 //            float[] embedding = imageEmbedding.embed("/Users/fq/福匠素材库.library/images/MESGBS2F1QQ1X.info/小黄人 minion joker.png");
 
+            System.out.println("执行模型推理...");
             float[] embedding = imageEmbedding.embed("/Users/fq/福匠素材库.library/images/MATN4MON5564I.info/Clipboard - 2025-05-18 20.36.39.png");
 
 
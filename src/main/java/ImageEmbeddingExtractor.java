@@ -1,7 +1,12 @@
+import ai.onnxruntime.OnnxJavaType;
 import ai.onnxruntime.OnnxTensor;
 import ai.onnxruntime.OnnxValue;
-import ai.onnxruntime.OrtException;
 import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
+import com.keevol.ai.djl.playground.systemd.StageMetrics;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 /**
  * 从 ONNX 模型输出中提取 Embedding 的工具类。
@@ -16,56 +21,125 @@ public final class ImageEmbeddingExtractor {
      * <p>
      * 此方法假定模型的输出是一个4D张量 (batch, channels, height, width)，
      * 并且 embedding 是通过对 height 和 width 维度进行平均池化得到的。
+     * 只处理 batch 中的第一个元素；批量推理请使用 {@link #extractBatchWithGlobalAvgPooling(OrtSession.Result)}。
      *
      * @param result ONNX session 的运行结果
      * @return 经过全局平均池化后的一维 embedding 向量
      * @throws IllegalArgumentException 如果结果为空或格式不正确
      */
     public static float[] extractWithGlobalAvgPooling(OrtSession.Result result) {
-        if (result == null) {
-            throw new IllegalArgumentException("ONNX推理结果为空。");
-        }
+        long start = StageMetrics.start();
+        OnnxTensor outputTensor = outputTensor(result);
+        long[] shape = outputTensor.getInfo().getShape();
+        float[] data = toArray(outputTensor.getFloatBuffer());
+        // 我们只处理batch中的第一个元素 (index 0)
+        float[] embedding = globalAvgPool(data, 0, (int) shape[1], (int) (shape[2] * shape[3]));
+        StageMetrics.Stage.POOLING.record(start);
+        return embedding;
+    }
 
-        try {
-            // 通常我们关心的是第一个输出张量
-            OnnxValue output = result.get(0);
-            if (!(output instanceof OnnxTensor outputTensor)) {
-                throw new IllegalArgumentException("模型输出不是一个有效的张量 (OnnxTensor)。");
-            }
+    /**
+     * 从批量推理结果中提取每个 batch 元素的 embedding，并分别应用全局平均池化。
+     *
+     * @param result 输入形状为 [N, C, H, W] 的 ONNX session 运行结果
+     * @return N 个 embedding，顺序与输入批量中的顺序一致
+     * @throws IllegalArgumentException 如果结果为空或格式不正确
+     */
+    public static float[][] extractBatchWithGlobalAvgPooling(OrtSession.Result result) {
+        long start = StageMetrics.start();
+        OnnxTensor outputTensor = outputTensor(result);
+        float[][] embeddings = globalAvgPoolBatch(toArray(outputTensor.getFloatBuffer()), outputTensor.getInfo().getShape());
+        StageMetrics.Stage.POOLING.record(start, embeddings.length);
+        return embeddings;
+    }
+
+    /**
+     * 对已经读出的批量输出逐个 batch 元素应用全局平均池化。
+     * <p>
+     * 用于推理与池化分属不同线程的场景：推理线程只负责读出输出数据，池化在其他线程上完成。
+     *
+     * @param data  NCHW 连续存放的输出
+     * @param shape 输出形状 [N, C, H, W]
+     * @return N 个 embedding，顺序与输入批量中的顺序一致
+     */
+    public static float[][] extractBatchWithGlobalAvgPooling(float[] data, long[] shape) {
+        long start = StageMetrics.start();
+        float[][] embeddings = globalAvgPoolBatch(data, shape);
+        StageMetrics.Stage.POOLING.record(start, embeddings.length);
+        return embeddings;
+    }
 
-            Object outputValue = outputTensor.getValue();
+    private static float[][] globalAvgPoolBatch(float[] data, long[] shape) {
+        int batch = (int) shape[0];
+        int channels = (int) shape[1];
+        int spatial = (int) (shape[2] * shape[3]);
+        if (data.length < (long) batch * channels * spatial) {
+            throw new IllegalArgumentException("输出数据长度 " + data.length + " 与形状 " + Arrays.toString(shape) + " 不一致");
+        }
+        float[][] embeddings = new float[batch][];
+        for (int n = 0; n < batch; n++) {
+            embeddings[n] = globalAvgPool(data, n * channels * spatial, channels, spatial);
+        }
+        return embeddings;
+    }
 
-            if (!(outputValue instanceof float[][][][] output4D)) {
-                throw new IllegalArgumentException("模型输出张量的数据类型不是预期的 float[][][][]，而是 " + outputValue.getClass().getName());
-            }
+    /**
+     * 取出并校验第一个输出张量：需为 float 类型的非空4维张量。
+     */
+    static OnnxTensor outputTensor(OrtSession.Result result) {
+        if (result == null) {
+            throw new IllegalArgumentException("ONNX推理结果为空。");
+        }
 
-            // 验证维度，至少需要4维且不为空
-            if (output4D.length == 0 || output4D[0].length == 0 || output4D[0][0].length == 0 || output4D[0][0][0].length == 0) {
-                throw new IllegalArgumentException("输出张量的维度为空。");
-            }
+        // 通常我们关心的是第一个输出张量
+        OnnxValue output = result.get(0);
+        if (!(output instanceof OnnxTensor outputTensor)) {
+            throw new IllegalArgumentException("模型输出不是一个有效的张量 (OnnxTensor)。");
+        }
 
-            // 执行全局平均池化
-            int channels = output4D[0].length;
-            int height = output4D[0][0].length;
-            int width = output4D[0][0][0].length;
+        // 直接按一维缓冲区读取输出 (NCHW 连续存放)，避免构造 float[][][][] 多维数组
+        TensorInfo info = outputTensor.getInfo();
+        if (info.type != OnnxJavaType.FLOAT) {
+            throw new IllegalArgumentException("模型输出张量的数据类型不是预期的 float，而是 " + info.type);
+        }
 
-            float[] embedding = new float[channels];
-            for (int c = 0; c < channels; c++) {
-                float channelSum = 0;
-                // 我们只处理batch中的第一个元素 (index 0)
-                for (int h = 0; h < height; h++) {
-                    for (int w = 0; w < width; w++) {
-                        channelSum += output4D[0][c][h][w];
-                    }
-                }
-                embedding[c] = channelSum / (height * width);
-            }
+        // 验证维度，需要4维且不为空
+        long[] shape = info.getShape();
+        if (shape.length != 4) {
+            throw new IllegalArgumentException("模型输出张量不是预期的4维 (batch, channels, height, width)，而是 " + shape.length + " 维。");
+        }
+        if (shape[0] == 0 || shape[1] == 0 || shape[2] == 0 || shape[3] == 0) {
+            throw new IllegalArgumentException("输出张量的维度为空。");
+        }
+        return outputTensor;
+    }
 
-            return embedding;
+    /**
+     * 对一个 batch 元素执行全局平均池化，每个通道的 height * width 个值是连续的。
+     *
+     * @param data     NCHW 连续存放的输出
+     * @param offset   该 batch 元素在 data 中的起始位置
+     * @param channels 通道数
+     * @param spatial  height * width
+     * @return 长度为 channels 的 embedding
+     */
+    private static float[] globalAvgPool(float[] data, int offset, int channels, int spatial) {
+        NumericKernels kernels = NumericKernels.get();
+        float[] embedding = new float[channels];
+        for (int c = 0; c < channels; c++) {
+            float channelSum = kernels.sum(data, offset + c * spatial, spatial);
+            embedding[c] = channelSum / spatial;
+        }
+        return embedding;
+    }
 
-        } catch (OrtException e) {
-            // 将检查型异常转换为运行时异常，简化调用方代码
-            throw new RuntimeException("提取ONNX结果时发生错误", e);
+    static float[] toArray(FloatBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
         }
+        float[] data = new float[buffer.remaining()];
+        buffer.get(data);
+        return data;
     }
 }
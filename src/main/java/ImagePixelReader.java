@@ -0,0 +1,213 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * 像素读取层：按行把 {@link BufferedImage} 的像素读成 {@code 0xRRGGBB} 形式的 int。
+ * <p>
+ * 对常见的栅格类型（INT_RGB、INT_ARGB、3BYTE_BGR、4BYTE_ABGR、BYTE_GRAY）直接读取底层的
+ * {@link DataBufferInt} / {@link DataBufferByte}，并正确处理 {@link BufferedImage#getSubimage}
+ * 产生的子图偏移与扫描行跨度，从而避免 {@link BufferedImage#getRGB(int, int)} 每个像素都要经过
+ * ColorModel 转换的开销。其余不常见的颜色模型退回到通用的 getRGB 路径。
+ * <p>
+ * 无论走哪条路径，读出的结果都与 {@code image.getRGB(x, y) & 0xFFFFFF} 逐像素相同。
+ * 注意：直接访问 DataBuffer 会使该图像失去 Java2D 的加速缓存，这对一次性的预处理图像没有影响。
+ */
+public abstract class ImagePixelReader {
+
+    protected final int width;
+    protected final int height;
+
+    private ImagePixelReader(BufferedImage image) {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+    }
+
+    /**
+     * 为指定图像选择最快的像素读取实现。
+     *
+     * @param image 输入图像，可以是 {@link BufferedImage#getSubimage} 返回的子图
+     * @return 对应的像素读取器
+     */
+    public static ImagePixelReader of(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        SampleModel sm = raster.getSampleModel();
+        DataBuffer db = raster.getDataBuffer();
+        if (db.getNumBanks() == 1) {
+            switch (image.getType()) {
+                case BufferedImage.TYPE_INT_RGB:
+                case BufferedImage.TYPE_INT_ARGB:
+                    if (db instanceof DataBufferInt && sm instanceof SinglePixelPackedSampleModel) {
+                        return new IntPackedReader(image);
+                    }
+                    break;
+                case BufferedImage.TYPE_3BYTE_BGR:
+                case BufferedImage.TYPE_4BYTE_ABGR:
+                    if (db instanceof DataBufferByte && sm instanceof ComponentSampleModel) {
+                        return new ByteInterleavedReader(image);
+                    }
+                    break;
+                case BufferedImage.TYPE_BYTE_GRAY:
+                    if (db instanceof DataBufferByte && sm instanceof ComponentSampleModel) {
+                        return new ByteGrayReader(image);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new GenericReader(image);
+    }
+
+    /**
+     * 读取第 y 行的像素。
+     *
+     * @param y   行号，范围 [0, height)
+     * @param row 输出数组，长度至少为图像宽度，每个元素为 {@code 0xRRGGBB}
+     */
+    public final void readRow(int y, int[] row) {
+        readRow(y, 0, width, row);
+    }
+
+    /**
+     * 读取第 y 行中从 x0 开始的 w 个像素。
+     *
+     * @param y   行号，范围 [0, height)
+     * @param x0  起始列
+     * @param w   读取的像素个数，{@code x0 + w <= width}
+     * @param row 输出数组，长度至少为 w，每个元素为 {@code 0xRRGGBB}
+     */
+    public abstract void readRow(int y, int x0, int w, int[] row);
+
+    /**
+     * 计算图像坐标 (0, y) 在 DataBuffer 数据数组中的下标（已包含子图偏移）。
+     */
+    private static int rowStart(WritableRaster raster, int y, int scanlineStride, int pixelStride) {
+        int smX = raster.getMinX() - raster.getSampleModelTranslateX();
+        int smY = raster.getMinY() + y - raster.getSampleModelTranslateY();
+        return raster.getDataBuffer().getOffset() + smY * scanlineStride + smX * pixelStride;
+    }
+
+    /**
+     * INT_RGB / INT_ARGB：每个像素就是一个打包好的 int。
+     */
+    private static final class IntPackedReader extends ImagePixelReader {
+        private final WritableRaster raster;
+        private final int[] data;
+        private final int stride;
+
+        IntPackedReader(BufferedImage image) {
+            super(image);
+            this.raster = image.getRaster();
+            this.data = ((DataBufferInt) raster.getDataBuffer()).getData();
+            this.stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        }
+
+        @Override
+        public void readRow(int y, int x0, int w, int[] row) {
+            int base = rowStart(raster, y, stride, 1) + x0;
+            for (int x = 0; x < w; x++) {
+                row[x] = data[base + x] & 0xFFFFFF;
+            }
+        }
+    }
+
+    /**
+     * 3BYTE_BGR / 4BYTE_ABGR：按 band 偏移从交错的字节中取出 R、G、B。
+     */
+    private static final class ByteInterleavedReader extends ImagePixelReader {
+        private final WritableRaster raster;
+        private final byte[] data;
+        private final int stride;
+        private final int pixelStride;
+        private final int rOffset;
+        private final int gOffset;
+        private final int bOffset;
+
+        ByteInterleavedReader(BufferedImage image) {
+            super(image);
+            this.raster = image.getRaster();
+            ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+            int[] bandOffsets = sm.getBandOffsets();
+            this.data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            this.stride = sm.getScanlineStride();
+            this.pixelStride = sm.getPixelStride();
+            this.rOffset = bandOffsets[0];
+            this.gOffset = bandOffsets[1];
+            this.bOffset = bandOffsets[2];
+        }
+
+        @Override
+        public void readRow(int y, int x0, int w, int[] row) {
+            int p = rowStart(raster, y, stride, pixelStride) + x0 * pixelStride;
+            for (int x = 0; x < w; x++, p += pixelStride) {
+                row[x] = (data[p + rOffset] & 0xFF) << 16
+                        | (data[p + gOffset] & 0xFF) << 8
+                        | (data[p + bOffset] & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * BYTE_GRAY：灰度值需经 ColorModel 从线性灰度转换到 sRGB，
+     * 这里预先为 256 个可能的取值建表，保证结果与 getRGB 一致。
+     */
+    private static final class ByteGrayReader extends ImagePixelReader {
+        private final WritableRaster raster;
+        private final byte[] data;
+        private final int stride;
+        private final int pixelStride;
+        private final int grayOffset;
+        private final int[] lut = new int[256];
+
+        ByteGrayReader(BufferedImage image) {
+            super(image);
+            this.raster = image.getRaster();
+            ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+            this.data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            this.stride = sm.getScanlineStride();
+            this.pixelStride = sm.getPixelStride();
+            this.grayOffset = sm.getBandOffsets()[0];
+            ColorModel cm = image.getColorModel();
+            byte[] pixel = new byte[1];
+            for (int v = 0; v < 256; v++) {
+                pixel[0] = (byte) v;
+                lut[v] = cm.getRGB(pixel) & 0xFFFFFF;
+            }
+        }
+
+        @Override
+        public void readRow(int y, int x0, int w, int[] row) {
+            int p = rowStart(raster, y, stride, pixelStride) + x0 * pixelStride + grayOffset;
+            for (int x = 0; x < w; x++, p += pixelStride) {
+                row[x] = lut[data[p] & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * 其他颜色模型：退回到通用的 getRGB（按行批量读取）。
+     */
+    private static final class GenericReader extends ImagePixelReader {
+        private final BufferedImage image;
+
+        GenericReader(BufferedImage image) {
+            super(image);
+            this.image = image;
+        }
+
+        @Override
+        public void readRow(int y, int x0, int w, int[] row) {
+            image.getRGB(x0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                row[x] &= 0xFFFFFF;
+            }
+        }
+    }
+}
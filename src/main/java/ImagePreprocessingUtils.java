@@ -1,7 +1,9 @@
-import java.awt.*;
+import com.keevol.ai.djl.playground.systemd.StageMetrics;
+
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.FloatBuffer;
 import javax.imageio.ImageIO;
 
 /**
@@ -10,42 +12,34 @@ import javax.imageio.ImageIO;
  */
 public class ImagePreprocessingUtils {
 
+    /**
+     * 默认 rescale (1/255) 与 normalize (mean=[0.5, 0.5, 0.5], std=[0.5, 0.5, 0.5]) 参数对应的像素变换
+     */
+    private static final ImageProcessorConfig.PixelTransform DEFAULT_PIXEL_TRANSFORM = new ImageProcessorConfig.PixelTransform(
+            true, 1.0f / 255.0f, true, new float[]{0.5f, 0.5f, 0.5f}, new float[]{0.5f, 0.5f, 0.5f});
+
     /**
      * 从文件加载图像
      */
     public static BufferedImage loadImage(String imagePath) throws IOException {
-        return ImageIO.read(new File(imagePath));
+        long start = StageMetrics.start();
+        BufferedImage image = ImageIO.read(new File(imagePath));
+        StageMetrics.Stage.DECODE.record(start);
+        return image;
     }
 
     /**
      * 步骤1: do_resize - 按最短边缩放到指定尺寸，保持宽高比
+     * 尺寸计算与重采样均与HuggingFace/PIL一致，见 {@link ImageResampler}
      * @param image 原始图像
      * @param shortestEdge 最短边目标尺寸 (如256)
      * @return 缩放后的图像
      */
     public static BufferedImage resizeByShortestEdge(BufferedImage image, int shortestEdge) {
-        int width = image.getWidth();
-        int height = image.getHeight();
+        int[] size = ImageResampler.shortestEdgeSize(image.getWidth(), image.getHeight(), shortestEdge);
         
-        // 计算缩放比例
-        float scale;
-        if (height < width) {
-            scale = (float) shortestEdge / height;
-        } else {
-            scale = (float) shortestEdge / width;
-        }
-        
-        int newWidth = Math.round(width * scale);
-        int newHeight = Math.round(height * scale);
-        
-        // 使用双线性插值进行缩放
-        BufferedImage resized = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = resized.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.drawImage(image, 0, 0, newWidth, newHeight, null);
-        g2d.dispose();
-        
-        return resized;
+        // 使用与PIL一致的双线性插值进行缩放
+        return ImageResampler.resize(image, size[0], size[1], 2);
     }
 
     /**
@@ -73,10 +67,13 @@ public class ImagePreprocessingUtils {
         int width = image.getWidth();
         int height = image.getHeight();
         int[][][] pixels = new int[height][width][3];
+        ImagePixelReader reader = ImagePixelReader.of(image);
+        int[] row = new int[width];
         
         for (int y = 0; y < height; y++) {
+            reader.readRow(y, row);
             for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
+                int rgb = row[x];
                 pixels[y][x][0] = (rgb >> 16) & 0xFF; // Red
                 pixels[y][x][1] = (rgb >> 8) & 0xFF;  // Green
                 pixels[y][x][2] = rgb & 0xFF;         // Blue
@@ -187,27 +184,29 @@ public class ImagePreprocessingUtils {
         // 加载图像
         BufferedImage image = loadImage(imagePath);
         
-        // 1. 按最短边缩放到256
-        BufferedImage resized = resizeByShortestEdge(image, 256);
-        
-        // 2. 中心裁剪到224x224
-        BufferedImage cropped = centerCrop(resized, 224, 224);
+        // 1~2. 按最短边缩放到256并中心裁剪到224x224，只计算裁剪窗口内的像素
+        int[] size = ImageResampler.shortestEdgeSize(image.getWidth(), image.getHeight(), 256);
+        BufferedImage cropped = ImageResampler.resizeAndCenterCrop(image, size[0], size[1], 224, 224, 2);
         
-        // 3. 提取RGB像素
-        int[][][] rgbPixels = extractRGBPixels(cropped);
-        
-        // 4. 缩放像素值 (0-255 -> 0-1)
-        float[][][] rescaled = rescalePixels(rgbPixels, 1.0f / 255.0f);
-        
-        // 5. 标准化 (mean=[0.5, 0.5, 0.5], std=[0.5, 0.5, 0.5])
-        float[] mean = {0.5f, 0.5f, 0.5f};
-        float[] std = {0.5f, 0.5f, 0.5f};
-        float[][][] normalized = normalizePixels(rescaled, mean, std);
-        
-        // 6. 转换为NCHW格式
-        float[][][][] nchw = convertToNCHW(normalized);
-        
-        // 7. 展平为一维数组
-        return flattenNCHW(nchw);
+        // 3~7. 单遍完成像素提取、缩放 (0-255 -> 0-1)、标准化 (mean=[0.5, 0.5, 0.5], std=[0.5, 0.5, 0.5])
+        // 以及NCHW展平，结果与逐步调用上述方法逐位相同，但不产生中间数组
+        float[] nchw = new float[3 * cropped.getWidth() * cropped.getHeight()];
+        ImagePreprocessors.writeCHW(cropped, DEFAULT_PIXEL_TRANSFORM, nchw, 0);
+        return nchw;
+    }
+
+    /**
+     * 完整的预处理流程，结果直接写入调用方提供的缓冲区（如张量背后的直接内存），避免再拷贝一次
+     * @param imagePath 图像文件路径
+     * @param dst 目标缓冲区（绝对位置写入，不改变其 position）
+     * @param offset 写入的起始位置（以 float 计）
+     * @return 写入的 float 个数 (3 * 224 * 224)
+     */
+    public static int preprocessImage(String imagePath, FloatBuffer dst, int offset) throws IOException {
+        BufferedImage image = loadImage(imagePath);
+        int[] size = ImageResampler.shortestEdgeSize(image.getWidth(), image.getHeight(), 256);
+        BufferedImage cropped = ImageResampler.resizeAndCenterCrop(image, size[0], size[1], 224, 224, 2);
+        ImagePreprocessors.writeCHW(cropped, DEFAULT_PIXEL_TRANSFORM, dst, offset);
+        return 3 * 224 * 224;
     }
 }
\ No newline at end of file
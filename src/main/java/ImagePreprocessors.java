@@ -1,8 +1,10 @@
-import java.awt.*;
+import com.keevol.ai.djl.playground.systemd.StageMetrics;
+
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
 
 /**
  * 图像预处理工具类（重构版本）
@@ -10,6 +12,9 @@ import javax.imageio.ImageIO;
  * 该类将预处理的逻辑与配置分离。所有的处理步骤均由一个
  * {@link ImageProcessorConfig} 对象来驱动，从而实现灵活可配的预处理流程。
  * <p>
+ * 解码与预处理由配置选定的 {@link ImageBackend} 完成（见 {@link ImageProcessorConfig#getBackend()}），
+ * 本类中的缩放、裁剪与 CHW 内核即 java2d 后端的实现。
+ * <p>
  * 所有方法均为静态方法，方便直接调用。
  */
 public final class ImagePreprocessors {
@@ -25,6 +30,26 @@ public final class ImagePreprocessors {
      * @return 预处理后的一维 float 数组，可直接用于创建 NDArray/Tensor。
      */
     public static float[] preprocessImage(BufferedImage image, ImageProcessorConfig config) {
+        return backendOf(image, config).preprocess(image, config);
+    }
+
+    /**
+     * 根据指定的配置对图像进行完整的预处理，结果直接写入调用方提供的缓冲区。
+     * <p>
+     * 配合 {@link InputTensorPool} 使用时，{@code dst} 为张量背后的直接内存，预处理结果无需再拷贝即可用于推理；
+     * 通过 {@code offset} 可以把多张图像依次写入同一个批量输入中。
+     *
+     * @param image  待处理的 {@link BufferedImage} 对象。
+     * @param config 包含所有预处理参数的 {@link ImageProcessorConfig} 对象。
+     * @param dst    目标缓冲区（绝对位置写入，不改变其 position）。
+     * @param offset 写入的起始位置（以 float 计）。
+     * @return 写入的 float 个数，即 {@code 3 * height * width}。
+     */
+    public static int preprocessImage(BufferedImage image, ImageProcessorConfig config, FloatBuffer dst, int offset) {
+        return backendOf(image, config).preprocess(image, config, dst, offset);
+    }
+
+    private static ImageBackend backendOf(BufferedImage image, ImageProcessorConfig config) {
         // 确保输入不为空
         if (image == null) {
             throw new IllegalArgumentException("输入图像不能为 null");
@@ -32,47 +57,101 @@ public final class ImagePreprocessors {
         if (config == null) {
             throw new IllegalArgumentException("配置对象不能为 null");
         }
+        return config.getImageBackend();
+    }
+
+    /**
+     * 以配置选定的后端解码图像文件，只解码预处理需要的分辨率与区域。
+     * 结果只适用于以同一份配置调用 {@link #preprocessImage}。
+     *
+     * @param file   图像文件
+     * @param config 之后用于预处理的配置
+     * @return 解码结果；格式不受支持时为 null
+     * @throws IOException 读取或解码失败
+     */
+    public static BufferedImage decodeImage(File file, ImageProcessorConfig config) throws IOException {
+        return config.getImageBackend().decode(file, config);
+    }
 
-        // 1. 调整尺寸 (Resize)
+    /**
+     * {@link #decodeImage(File, ImageProcessorConfig)} 的输入流版本。
+     *
+     * @param stream 图像文件内容，不会被关闭
+     * @param config 之后用于预处理的配置
+     * @return 解码结果；格式不受支持时为 null
+     * @throws IOException 读取或解码失败
+     */
+    public static BufferedImage decodeImage(InputStream stream, ImageProcessorConfig config) throws IOException {
+        return config.getImageBackend().decode(stream, config);
+    }
+
+    /**
+     * 预处理的前两步：调整尺寸与中心裁剪（java2d 后端）。
+     */
+    static BufferedImage resizeAndCrop(BufferedImage image, ImageProcessorConfig config) {
+        // 1. 调整尺寸 (Resize) 与 2. 中心裁剪 (Center Crop)
+        // 两者都开启时由 ImageResampler 一次完成，只计算裁剪窗口内的像素
+        // 两者一起完成时耗时全部计入 RESIZE
+        if (image instanceof ImageDecoder.ReducedImage reduced) {
+            return resizeAndCrop(reduced, config);
+        }
         BufferedImage currentImage = image;
         if (config.isDo_resize()) {
-            currentImage = resizeByShortestEdge(currentImage, config.getShortest_edge(), config.getResample());
-        }
-
-        // 2. 中心裁剪 (Center Crop)
-        if (config.isDo_center_crop()) {
+            long start = StageMetrics.start();
+            int[] size = ImageResampler.shortestEdgeSize(image.getWidth(), image.getHeight(), config.getShortest_edge());
+            if (config.isDo_center_crop()) {
+                currentImage = ImageResampler.resizeAndCenterCrop(currentImage, size[0], size[1],
+                        config.getCrop_width(), config.getCrop_height(), config.getResample());
+            } else {
+                currentImage = ImageResampler.resize(currentImage, size[0], size[1], config.getResample());
+            }
+            StageMetrics.Stage.RESIZE.record(start);
+        } else if (config.isDo_center_crop()) {
+            long start = StageMetrics.start();
             currentImage = centerCrop(currentImage, config.getCrop_width(), config.getCrop_height());
+            StageMetrics.Stage.CROP.record(start);
         }
+        return currentImage;
+    }
 
-        // 3. 提取RGB像素
-        int[][][] rgbPixels = extractRGBPixels(currentImage);
-
-        // 4. 像素值重缩放 (Rescale)
-        float[][][] rescaled = new float[rgbPixels.length][rgbPixels[0].length][3];
-        if (config.isDo_rescale()) {
-            rescaled = rescalePixels(rgbPixels, config.getRescale_factor());
-        } else {
-            // 如果不进行rescale，也需要将int转换为float
-            for (int y = 0; y < rgbPixels.length; y++) {
-                for (int x = 0; x < rgbPixels[0].length; x++) {
-                    for (int c = 0; c < 3; c++) {
-                        rescaled[y][x][c] = rgbPixels[y][x][c];
-                    }
+    /**
+     * {@link ImageDecoder} 按缩减的分辨率或区域解码出的图像：缩放尺寸与裁剪窗口按完整源图计算，
+     * 重采样以降采样网格为源、从图像所在的位置读取像素。
+     */
+    private static BufferedImage resizeAndCrop(ImageDecoder.ReducedImage image, ImageProcessorConfig config) {
+        int width = image.getSourceWidth();
+        int height = image.getSourceHeight();
+        if (config.isDo_resize()) {
+            long start = StageMetrics.start();
+            int[] size = ImageResampler.shortestEdgeSize(width, height, config.getShortest_edge());
+            int cropWidth = size[0];
+            int cropHeight = size[1];
+            if (config.isDo_center_crop()) {
+                cropWidth = config.getCrop_width();
+                cropHeight = config.getCrop_height();
+                if (size[0] < cropWidth || size[1] < cropHeight) {
+                    throw new IllegalArgumentException(String.format("输入图像尺寸 (%d, %d) 小于裁剪尺寸 (%d, %d)，无法裁剪",
+                            size[0], size[1], cropWidth, cropHeight));
                 }
             }
+            BufferedImage resized = ImageResampler.resizeAndCrop(image, image.getGridX(), image.getGridY(),
+                    image.getGridWidth(), image.getGridHeight(), size[0], size[1],
+                    (size[0] - cropWidth) / 2, (size[1] - cropHeight) / 2, cropWidth, cropHeight, config.getResample());
+            StageMetrics.Stage.RESIZE.record(start);
+            return resized;
         }
-
-        // 5. 标准化 (Normalize)
-        float[][][] normalized = rescaled;
-        if (config.isDo_normalize()) {
-            normalized = normalizePixels(rescaled, config.getImage_mean(), config.getImage_std());
+        if (image.getSubsampling() != 1) {
+            throw new IllegalArgumentException("降采样解码的图像只能以相同的配置预处理");
         }
-
-        // 6. 转换为NCHW格式
-        float[][][][] nchw = convertToNCHW(normalized);
-
-        // 7. 展平为一维数组
-        return flattenNCHW(nchw);
+        if (!config.isDo_center_crop()) {
+            throw new IllegalArgumentException("区域解码的图像只能以相同的配置预处理");
+        }
+        long start = StageMetrics.start();
+        int startX = (width - config.getCrop_width()) / 2 - image.getGridX();
+        int startY = (height - config.getCrop_height()) / 2 - image.getGridY();
+        BufferedImage cropped = image.getSubimage(startX, startY, config.getCrop_width(), config.getCrop_height());
+        StageMetrics.Stage.CROP.record(start);
+        return cropped;
     }
 
     /**
@@ -84,48 +163,15 @@ public final class ImagePreprocessors {
      * @throws IOException 如果图像文件读取失败。
      */
     public static float[] preprocessImage(String imagePath, ImageProcessorConfig config) throws IOException {
-        BufferedImage image = loadImage(imagePath);
+        BufferedImage image = loadImage(imagePath, config);
         return preprocessImage(image, config);
     }
 
     // --- 以下为私有的辅助方法，逻辑与原 ImagePreprocessingUtils 保持一致 ---
 
-    private static BufferedImage loadImage(String imagePath) throws IOException {
-        File f = new File(imagePath);
-        if (!f.exists()) {
-            throw new IOException("图像文件不存在: " + imagePath);
-        }
-        return ImageIO.read(f);
-    }
-
-    private static BufferedImage resizeByShortestEdge(BufferedImage image, int shortestEdge, int resample) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-
-        float scale = (height < width) ? (float) shortestEdge / height : (float) shortestEdge / width;
-        int newWidth = Math.round(width * scale);
-        int newHeight = Math.round(height * scale);
-
-        Object interpolation;
-        switch (resample) {
-            case 3:
-                interpolation = RenderingHints.VALUE_INTERPOLATION_BICUBIC;
-                break;
-            case 0:
-                interpolation = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
-                break;
-            case 2:
-            default: // 默认为双线性插值
-                interpolation = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
-                break;
-        }
-
-        BufferedImage resized = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = resized.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
-        g2d.drawImage(image, 0, 0, newWidth, newHeight, null);
-        g2d.dispose();
-        return resized;
+    private static BufferedImage loadImage(String imagePath, ImageProcessorConfig config) throws IOException {
+        // 只解码预处理需要的分辨率与区域，见 ImageDecoder 与 OpenCvImageBackend
+        return decodeImage(new File(imagePath), config);
     }
 
     private static BufferedImage centerCrop(BufferedImage image, int cropWidth, int cropHeight) {
@@ -141,79 +187,89 @@ public final class ImagePreprocessors {
         return image.getSubimage(startX, startY, cropWidth, cropHeight);
     }
 
-    private static int[][][] extractRGBPixels(BufferedImage image) {
+    /**
+     * 融合的单遍预处理内核。
+     * <p>
+     * 像素经由 {@link ImagePixelReader} 按行直接从底层栅格读取，每个像素只读取一次，
+     * 由 {@link NumericKernels} 在同一遍中完成 rescale、normalize 以及 HWC 到 CHW 的去交错，
+     * 结果直接写入 {@code dst} 中从 {@code offset} 开始的 {@code 3 * height * width} 个位置，
+     * 不再分配任何中间数组。标量内核使用查找表（见 {@link ImageProcessorConfig#getPixelLut()}），
+     * 向量化内核逐通道做相同的 float 运算，两者的输出都与原先的分步流水线逐位相同。
+     * <p>
+     * 启用 {@link StageMetrics} 时逐行累计读取像素与变换的耗时，分别计入 PIXEL_READ 与 NORMALIZE。
+     *
+     * @param image     已经过 resize / crop 的图像
+     * @param transform rescale / normalize 参数及查找表
+     * @param dst       目标数组
+     * @param offset    写入的起始位置
+     */
+    static void writeCHW(BufferedImage image, ImageProcessorConfig.PixelTransform transform, float[] dst, int offset) {
         int width = image.getWidth();
         int height = image.getHeight();
-        int[][][] pixels = new int[height][width][3];
+        int plane = width * height;
+        NumericKernels kernels = NumericKernels.get();
+        ImagePixelReader reader = ImagePixelReader.of(image);
+        int[] row = new int[width];
+        boolean timed = StageMetrics.isEnabled();
+        long readNanos = 0;
+        long normalizeNanos = 0;
+        long t0 = timed ? System.nanoTime() : 0;
         for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
-                pixels[y][x][0] = (rgb >> 16) & 0xFF; // Red
-                pixels[y][x][1] = (rgb >> 8) & 0xFF;  // Green
-                pixels[y][x][2] = rgb & 0xFF;         // Blue
+            reader.readRow(y, row);
+            long t1 = timed ? System.nanoTime() : 0;
+            kernels.rowToCHW(row, width, transform, dst, offset + y * width, plane);
+            if (timed) {
+                long t2 = System.nanoTime();
+                readNanos += t1 - t0;
+                normalizeNanos += t2 - t1;
+                t0 = t2;
             }
         }
-        return pixels;
-    }
-
-    private static float[][][] rescalePixels(int[][][] pixels, float rescaleFactor) {
-        int height = pixels.length;
-        int width = pixels[0].length;
-        float[][][] rescaled = new float[height][width][3];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                for (int c = 0; c < 3; c++) {
-                    rescaled[y][x][c] = pixels[y][x][c] * rescaleFactor;
-                }
-            }
+        if (timed) {
+            StageMetrics.Stage.PIXEL_READ.recordNanos(readNanos, 1);
+            StageMetrics.Stage.NORMALIZE.recordNanos(normalizeNanos, 1);
         }
-        return rescaled;
     }
 
-    private static float[][][] normalizePixels(float[][][] pixels, float[] mean, float[] std) {
-        int height = pixels.length;
-        int width = pixels[0].length;
-        float[][][] normalized = new float[height][width][3];
+    /**
+     * {@link #writeCHW(BufferedImage, ImageProcessorConfig.PixelTransform, float[], int)} 的缓冲区版本：
+     * 每行先在一个 {@code 3 * width} 的小数组中完成变换，再按通道批量写入 {@code dst}（绝对位置写入）。
+     *
+     * @param image     已经过 resize / crop 的图像
+     * @param transform rescale / normalize 参数及查找表
+     * @param dst       目标缓冲区，通常为张量背后的直接内存
+     * @param offset    写入的起始位置
+     */
+    static void writeCHW(BufferedImage image, ImageProcessorConfig.PixelTransform transform, FloatBuffer dst, int offset) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int plane = width * height;
+        NumericKernels kernels = NumericKernels.get();
+        ImagePixelReader reader = ImagePixelReader.of(image);
+        int[] row = new int[width];
+        float[] chwRow = new float[3 * width];
+        boolean timed = StageMetrics.isEnabled();
+        long readNanos = 0;
+        long normalizeNanos = 0;
+        long t0 = timed ? System.nanoTime() : 0;
         for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                for (int c = 0; c < 3; c++) {
-                    normalized[y][x][c] = (pixels[y][x][c] - mean[c]) / std[c];
-                }
-            }
-        }
-        return normalized;
-    }
-
-    private static float[][][][] convertToNCHW(float[][][] pixels) {
-        int height = pixels.length;
-        int width = pixels[0].length;
-        float[][][][] nchw = new float[1][3][height][width];
-        for (int c = 0; c < 3; c++) {
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    nchw[0][c][y][x] = pixels[y][x][c];
-                }
+            reader.readRow(y, row);
+            long t1 = timed ? System.nanoTime() : 0;
+            kernels.rowToCHW(row, width, transform, chwRow, 0, width);
+            int index = offset + y * width;
+            dst.put(index, chwRow, 0, width);
+            dst.put(index + plane, chwRow, width, width);
+            dst.put(index + 2 * plane, chwRow, 2 * width, width);
+            if (timed) {
+                long t2 = System.nanoTime();
+                readNanos += t1 - t0;
+                normalizeNanos += t2 - t1;
+                t0 = t2;
             }
         }
-        return nchw;
-    }
-
-    private static float[] flattenNCHW(float[][][][] nchw) {
-        int batch = nchw.length;
-        int channels = nchw[0].length;
-        int height = nchw[0][0].length;
-        int width = nchw[0][0][0].length;
-        float[] flattened = new float[batch * channels * height * width];
-        int index = 0;
-        for (int b = 0; b < batch; b++) {
-            for (int c = 0; c < channels; c++) {
-                for (int h = 0; h < height; h++) {
-                    for (int w = 0; w < width; w++) {
-                        flattened[index++] = nchw[b][c][h][w];
-                    }
-                }
-            }
+        if (timed) {
+            StageMetrics.Stage.PIXEL_READ.recordNanos(readNanos, 1);
+            StageMetrics.Stage.NORMALIZE.recordNanos(normalizeNanos, 1);
         }
-        return flattened;
     }
 }
\ No newline at end of file
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 /**
  * 图像预处理的配置类 (扁平化版本)
  * <p>
@@ -29,6 +31,24 @@ public class ImageProcessorConfig {
     private float[] image_mean = {0.5f, 0.5f, 0.5f};
     private float[] image_std = {0.5f, 0.5f, 0.5f};
 
+    /**
+     * 解码与预处理的后端，见 {@link ImageBackend}：java2d 或 opencv，
+     * 默认取系统属性 {@code embedding.image.backend}，未设置时为 java2d
+     */
+    private String backend = System.getProperty("embedding.image.backend", ImageBackend.JAVA2D);
+
+    /**
+     * 解码时降采样的余量，见 {@link ImageDecoder}：降采样后的最短边至少为目标最短边的这个倍数，常用 2 ~ 4；
+     * 为 0 时不降采样，只做与完整解码逐像素相同的区域读取，解码占用的内存随源图尺寸增长、没有上界。
+     * 默认取系统属性 {@code embedding.decode.oversampling}，未设置时为 0（HTTP 服务默认为 4）
+     */
+    private int decode_oversampling = Integer.getInteger("embedding.decode.oversampling", 0);
+
+    /**
+     * 由 rescale / normalize 参数编译出的像素变换（含查找表）缓存，参数变化后在下次访问时重建。
+     */
+    private volatile PixelTransform pixelTransform;
+
     // --- Getters and Setters ---
 
     public boolean isDo_resize() {
@@ -128,4 +148,129 @@ public class ImageProcessorConfig {
     public void setImage_std(float[] image_std) {
         this.image_std = image_std;
     }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    public int getDecode_oversampling() {
+        return decode_oversampling;
+    }
+
+    public void setDecode_oversampling(int decode_oversampling) {
+        this.decode_oversampling = decode_oversampling;
+    }
+
+    /**
+     * @return {@link #getBackend()} 对应的后端
+     * @throws IllegalArgumentException 未知的后端
+     */
+    public ImageBackend getImageBackend() {
+        return ImageBackend.of(backend);
+    }
+
+    /**
+     * 获取当前预处理配置的标识：所有影响预处理输出的参数拼接成的字符串。
+     * 两个配置的标识相同，则对同一图像的预处理结果相同，可用作 embedding 缓存键的一部分。
+     *
+     * @return 配置标识
+     */
+    public String getIdentity() {
+        return "resize=" + do_resize + "," + shortest_edge + "," + resample
+                + ";crop=" + do_center_crop + "," + crop_height + "x" + crop_width
+                + ";rescale=" + do_rescale + "," + rescale_factor
+                + ";normalize=" + do_normalize + "," + Arrays.toString(image_mean) + "," + Arrays.toString(image_std)
+                // 不同后端的输出不完全相同；默认后端不出现在标识中，已有的缓存键保持不变
+                + (ImageBackend.JAVA2D.equals(backend) ? "" : ";backend=" + backend)
+                // 降采样是有损的；默认不降采样，同样不出现在标识中
+                + (decode_oversampling > 0 ? ";oversampling=" + decode_oversampling : "");
+    }
+
+    /**
+     * 获取由当前 rescale / normalize 配置编译出的像素查找表。
+     * <p>
+     * 输入像素只可能是 0-255 的字节，因此每个通道只有 256 种取值。查找表为长度 {@code 3 * 256}
+     * 的一维数组，通道 c 的像素值 v 对应的输出位于下标 {@code c * 256 + v}，
+     * 其值与逐像素计算 {@code (v * rescale_factor - mean[c]) / std[c]} 逐位相同，
+     * 并同样覆盖 do_rescale=false 与 do_normalize=false 的情况。
+     * <p>
+     * 查找表按配置只构建一次并在之后的调用中复用；相关参数（包括 mean/std 数组内容）
+     * 发生变化时会自动重建。调用方不应修改返回的数组。
+     *
+     * @return 长度为 {@code 3 * 256} 的查找表
+     */
+    public float[] getPixelLut() {
+        return getPixelTransform().table;
+    }
+
+    /**
+     * 获取当前 rescale / normalize 配置对应的像素变换，供预处理内核使用。
+     * 标量内核使用其中的查找表，向量化内核直接使用其中的参数做逐通道运算。
+     *
+     * @return 像素变换
+     */
+    PixelTransform getPixelTransform() {
+        PixelTransform transform = pixelTransform;
+        if (transform == null || !transform.matches(do_rescale, rescale_factor, do_normalize, image_mean, image_std)) {
+            transform = new PixelTransform(do_rescale, rescale_factor, do_normalize, image_mean, image_std);
+            pixelTransform = transform;
+        }
+        return transform;
+    }
+
+    /**
+     * 根据给定参数构建像素查找表，布局同 {@link #getPixelLut()}。
+     *
+     * @param doRescale     是否进行 rescale
+     * @param rescaleFactor 缩放因子
+     * @param doNormalize   是否进行 normalize
+     * @param mean          均值数组 [R, G, B]
+     * @param std           标准差数组 [R, G, B]
+     * @return 长度为 {@code 3 * 256} 的查找表
+     */
+    public static float[] buildPixelLut(boolean doRescale, float rescaleFactor,
+                                        boolean doNormalize, float[] mean, float[] std) {
+        float[] table = new float[3 * 256];
+        for (int c = 0; c < 3; c++) {
+            for (int v = 0; v < 256; v++) {
+                // 与原分步流水线相同的运算顺序：先以 float 缩放，再减均值除以标准差
+                float value = doRescale ? v * rescaleFactor : v;
+                table[c * 256 + v] = doNormalize ? (value - mean[c]) / std[c] : value;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 像素变换：rescale / normalize 参数的快照及由其构建的查找表，创建后不可变。
+     */
+    static final class PixelTransform {
+        final boolean doRescale;
+        final float rescaleFactor;
+        final boolean doNormalize;
+        final float[] mean;
+        final float[] std;
+        final float[] table;
+
+        PixelTransform(boolean doRescale, float rescaleFactor, boolean doNormalize, float[] mean, float[] std) {
+            this.doRescale = doRescale;
+            this.rescaleFactor = rescaleFactor;
+            this.doNormalize = doNormalize;
+            this.mean = mean.clone();
+            this.std = std.clone();
+            this.table = buildPixelLut(doRescale, rescaleFactor, doNormalize, this.mean, this.std);
+        }
+
+        boolean matches(boolean doRescale, float rescaleFactor, boolean doNormalize, float[] mean, float[] std) {
+            return this.doRescale == doRescale
+                    && Float.compare(this.rescaleFactor, rescaleFactor) == 0
+                    && this.doNormalize == doNormalize
+                    && Arrays.equals(this.mean, mean)
+                    && Arrays.equals(this.std, std);
+        }
+    }
 }
\ No newline at end of file
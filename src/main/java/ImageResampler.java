@@ -0,0 +1,385 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 纯 Java 实现的可分离图像重采样器，算法与 Pillow (PIL) 的 {@code Image.resize} 保持一致。
+ * <p>
+ * HuggingFace 的图像处理器在 resize 时调用 PIL，preprocessor_config.json 中的 {@code resample}
+ * 就是 PIL 的重采样编码：
+ * <ul>
+ *     <li>0 -> NEAREST：与 PIL 的仿射缩放取相同的采样位置</li>
+ *     <li>2 -> BILINEAR（其他未支持的取值也按双线性处理）</li>
+ *     <li>3 -> BICUBIC（a = -0.5）</li>
+ * </ul>
+ * 双线性与立方插值按 PIL 的方式实现：先水平后垂直两遍卷积；缩小时按缩放比例扩展滤波器的支撑区间（抗锯齿）；
+ * 权重量化为 22 位定点整数，两遍之间的中间结果舍入为 8 位。
+ * <p>
+ * 容差：对 8 位 RGB 输入，输出在设计上与 PIL 逐像素相同；考虑到不同 Pillow 版本之间的实现差异，
+ * 约定每个通道允许 ±1 的误差（rescale 之后即不超过 1/255）。Java2D 的 drawImage 在缩小时不做抗锯齿，
+ * 与 PIL 的差异要大得多。
+ * <p>
+ * {@link #resizeAndCrop} 只计算最终裁剪窗口内的输出像素，并且只读取这些像素实际依赖的源图行列，
+ * 结果与"先完整缩放再裁剪"逐像素相同。水平与垂直方向的权重表按 (滤波器, 源尺寸, 目标尺寸) 缓存复用。
+ * 由于只读取依赖的行列，输入也可以只是源图的一部分（见 {@link #sourceRange} 与 {@link ImageDecoder}），
+ * 只要它覆盖了裁剪窗口依赖的区域。
+ */
+public final class ImageResampler {
+
+    /**
+     * PIL 的定点精度：32 - 8 - 2
+     */
+    private static final int PRECISION_BITS = 22;
+
+    private static final int NEAREST = 0;
+    private static final int BILINEAR = 2;
+    private static final int BICUBIC = 3;
+
+    /**
+     * 权重表缓存的最大条目数，超出后按 LRU 淘汰
+     */
+    private static final int MAX_CACHED_COEFFICIENTS = 256;
+
+    private static final Map<Long, Coefficients> COEFFICIENTS_CACHE =
+            new LinkedHashMap<Long, Coefficients>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Coefficients> eldest) {
+                    return size() > MAX_CACHED_COEFFICIENTS;
+                }
+            };
+
+    // 私有构造函数，防止实例化
+    private ImageResampler() {}
+
+    /**
+     * 按最短边计算缩放后的尺寸，与 HuggingFace 的 {@code get_resize_output_image_size} 一致：
+     * 最短边取 {@code shortestEdge}，长边取 {@code int(shortestEdge * long / short)}（向下取整）。
+     *
+     * @param width        原始宽度
+     * @param height       原始高度
+     * @param shortestEdge 最短边目标尺寸
+     * @return {@code {newWidth, newHeight}}
+     */
+    public static int[] shortestEdgeSize(int width, int height, int shortestEdge) {
+        if (width <= height) {
+            return new int[]{shortestEdge, (int) ((double) ((long) shortestEdge * height) / width)};
+        }
+        return new int[]{(int) ((double) ((long) shortestEdge * width) / height), shortestEdge};
+    }
+
+    /**
+     * 将整幅图像缩放到指定尺寸。
+     *
+     * @param image     输入图像
+     * @param newWidth  目标宽度
+     * @param newHeight 目标高度
+     * @param resample  PIL 重采样编码 (0/2/3)
+     * @return TYPE_INT_RGB 格式的缩放结果
+     */
+    public static BufferedImage resize(BufferedImage image, int newWidth, int newHeight, int resample) {
+        return resizeAndCrop(image, newWidth, newHeight, 0, 0, newWidth, newHeight, resample);
+    }
+
+    /**
+     * 缩放到指定尺寸后做中心裁剪，只计算裁剪窗口内的像素。
+     *
+     * @param image      输入图像
+     * @param newWidth   缩放后的宽度
+     * @param newHeight  缩放后的高度
+     * @param cropWidth  裁剪宽度
+     * @param cropHeight 裁剪高度
+     * @param resample   PIL 重采样编码 (0/2/3)
+     * @return TYPE_INT_RGB 格式、尺寸为 cropWidth x cropHeight 的结果
+     * @throws IllegalArgumentException 如果缩放后的尺寸小于裁剪尺寸
+     */
+    public static BufferedImage resizeAndCenterCrop(BufferedImage image, int newWidth, int newHeight,
+                                                    int cropWidth, int cropHeight, int resample) {
+        if (newWidth < cropWidth || newHeight < cropHeight) {
+            throw new IllegalArgumentException(
+                String.format("输入图像尺寸 (%d, %d) 小于裁剪尺寸 (%d, %d)，无法裁剪", newWidth, newHeight, cropWidth, cropHeight)
+            );
+        }
+        int cropX = (newWidth - cropWidth) / 2;
+        int cropY = (newHeight - cropHeight) / 2;
+        return resizeAndCrop(image, newWidth, newHeight, cropX, cropY, cropWidth, cropHeight, resample);
+    }
+
+    /**
+     * 缩放到指定尺寸，并只输出缩放结果中 (cropX, cropY, cropWidth, cropHeight) 窗口内的像素。
+     *
+     * @param image      输入图像
+     * @param newWidth   缩放后的宽度
+     * @param newHeight  缩放后的高度
+     * @param cropX      裁剪窗口在缩放结果中的起始列
+     * @param cropY      裁剪窗口在缩放结果中的起始行
+     * @param cropWidth  裁剪宽度
+     * @param cropHeight 裁剪高度
+     * @param resample   PIL 重采样编码 (0/2/3)
+     * @return TYPE_INT_RGB 格式、尺寸为 cropWidth x cropHeight 的结果
+     */
+    public static BufferedImage resizeAndCrop(BufferedImage image, int newWidth, int newHeight,
+                                              int cropX, int cropY, int cropWidth, int cropHeight, int resample) {
+        return resizeAndCrop(image, 0, 0, image.getWidth(), image.getHeight(),
+                newWidth, newHeight, cropX, cropY, cropWidth, cropHeight, resample);
+    }
+
+    /**
+     * 与 {@link #resizeAndCrop(BufferedImage, int, int, int, int, int, int, int)} 相同，但 image 只是一幅
+     * sourceWidth x sourceHeight 源图中从 (sourceX, sourceY) 开始的一块区域。权重按完整源图的尺寸计算，
+     * 区域必须覆盖 {@link #sourceRange} 给出的行列范围，结果与对完整源图缩放裁剪逐像素相同。
+     *
+     * @param image        源图的一块区域
+     * @param sourceX      区域在源图中的起始列
+     * @param sourceY      区域在源图中的起始行
+     * @param sourceWidth  完整源图的宽度
+     * @param sourceHeight 完整源图的高度
+     * @param newWidth     缩放后的宽度
+     * @param newHeight    缩放后的高度
+     * @param cropX        裁剪窗口在缩放结果中的起始列
+     * @param cropY        裁剪窗口在缩放结果中的起始行
+     * @param cropWidth    裁剪宽度
+     * @param cropHeight   裁剪高度
+     * @param resample     PIL 重采样编码 (0/2/3)
+     * @return TYPE_INT_RGB 格式、尺寸为 cropWidth x cropHeight 的结果
+     * @throws IllegalArgumentException 如果区域没有覆盖裁剪窗口依赖的源图范围
+     */
+    public static BufferedImage resizeAndCrop(BufferedImage image, int sourceX, int sourceY, int sourceWidth, int sourceHeight,
+                                              int newWidth, int newHeight,
+                                              int cropX, int cropY, int cropWidth, int cropHeight, int resample) {
+        if (cropX < 0 || cropY < 0 || cropWidth <= 0 || cropHeight <= 0
+                || cropX + cropWidth > newWidth || cropY + cropHeight > newHeight) {
+            throw new IllegalArgumentException(String.format("裁剪窗口 (%d, %d, %d, %d) 超出缩放后的图像尺寸 (%d, %d)",
+                    cropX, cropY, cropWidth, cropHeight, newWidth, newHeight));
+        }
+        int filter = filterOf(resample);
+        Coefficients horiz = coefficients(filter, sourceWidth, newWidth);
+        Coefficients vert = coefficients(filter, sourceHeight, newHeight);
+
+        // 裁剪窗口实际依赖的源图行列范围
+        int xFirst = horiz.first(cropX);
+        int xLast = horiz.last(cropX + cropWidth - 1);
+        int yFirst = vert.first(cropY);
+        int yLast = vert.last(cropY + cropHeight - 1);
+        if (xFirst < sourceX || yFirst < sourceY
+                || xLast > sourceX + image.getWidth() || yLast > sourceY + image.getHeight()) {
+            throw new IllegalArgumentException(String.format("区域 (%d, %d, %d, %d) 没有覆盖所需的源图范围 [%d, %d) x [%d, %d)",
+                    sourceX, sourceY, image.getWidth(), image.getHeight(), xFirst, xLast, yFirst, yLast));
+        }
+
+        // 1. 水平方向：只处理需要的源图行，只计算裁剪窗口内的列，中间结果舍入为 8 位
+        ImagePixelReader reader = ImagePixelReader.of(image);
+        int rowWidth = xLast - xFirst;
+        int[] row = new int[rowWidth];
+        int[] rowR = new int[rowWidth];
+        int[] rowG = new int[rowWidth];
+        int[] rowB = new int[rowWidth];
+        int[] temp = new int[(yLast - yFirst) * cropWidth];
+        for (int y = yFirst; y < yLast; y++) {
+            reader.readRow(y - sourceY, xFirst - sourceX, rowWidth, row);
+            for (int x = 0; x < rowWidth; x++) {
+                int rgb = row[x];
+                rowR[x] = (rgb >> 16) & 0xFF;
+                rowG[x] = (rgb >> 8) & 0xFF;
+                rowB[x] = rgb & 0xFF;
+            }
+            int t = (y - yFirst) * cropWidth;
+            for (int j = 0; j < cropWidth; j++) {
+                int xx = cropX + j;
+                int xmin = horiz.bounds[xx * 2] - xFirst;
+                int xcount = horiz.bounds[xx * 2 + 1];
+                int k = xx * horiz.ksize;
+                int r = 1 << (PRECISION_BITS - 1);
+                int g = r;
+                int b = r;
+                for (int x = 0; x < xcount; x++) {
+                    int w = horiz.kk[k + x];
+                    r += rowR[xmin + x] * w;
+                    g += rowG[xmin + x] * w;
+                    b += rowB[xmin + x] * w;
+                }
+                temp[t + j] = clip8(r) << 16 | clip8(g) << 8 | clip8(b);
+            }
+        }
+
+        // 2. 垂直方向：按行累加，写入输出图像
+        BufferedImage output = new BufferedImage(cropWidth, cropHeight, BufferedImage.TYPE_INT_RGB);
+        int[] out = ((DataBufferInt) output.getRaster().getDataBuffer()).getData();
+        int[] sumR = new int[cropWidth];
+        int[] sumG = new int[cropWidth];
+        int[] sumB = new int[cropWidth];
+        for (int i = 0; i < cropHeight; i++) {
+            int yy = cropY + i;
+            int ymin = vert.bounds[yy * 2] - yFirst;
+            int ycount = vert.bounds[yy * 2 + 1];
+            int k = yy * vert.ksize;
+            Arrays.fill(sumR, 1 << (PRECISION_BITS - 1));
+            Arrays.fill(sumG, 1 << (PRECISION_BITS - 1));
+            Arrays.fill(sumB, 1 << (PRECISION_BITS - 1));
+            for (int y = 0; y < ycount; y++) {
+                int w = vert.kk[k + y];
+                int t = (ymin + y) * cropWidth;
+                for (int j = 0; j < cropWidth; j++) {
+                    int rgb = temp[t + j];
+                    sumR[j] += ((rgb >> 16) & 0xFF) * w;
+                    sumG[j] += ((rgb >> 8) & 0xFF) * w;
+                    sumB[j] += (rgb & 0xFF) * w;
+                }
+            }
+            int o = i * cropWidth;
+            for (int j = 0; j < cropWidth; j++) {
+                out[o + j] = clip8(sumR[j]) << 16 | clip8(sumG[j]) << 8 | clip8(sumB[j]);
+            }
+        }
+        return output;
+    }
+
+    /**
+     * 一个方向上，缩放结果中 [from, from + count) 区间依赖的源图范围。
+     *
+     * @param inSize   源图在该方向上的尺寸
+     * @param outSize  缩放后的尺寸
+     * @param from     缩放结果中的起始位置
+     * @param count    缩放结果中的像素数
+     * @param resample PIL 重采样编码 (0/2/3)
+     * @return {@code {first, last}}，依赖的源图范围为 [first, last)
+     */
+    public static int[] sourceRange(int inSize, int outSize, int from, int count, int resample) {
+        if (from < 0 || count <= 0 || from + count > outSize) {
+            throw new IllegalArgumentException(String.format("区间 [%d, %d) 超出缩放后的尺寸 %d", from, from + count, outSize));
+        }
+        Coefficients c = coefficients(filterOf(resample), inSize, outSize);
+        return new int[]{c.first(from), c.last(from + count - 1)};
+    }
+
+    private static int clip8(int value) {
+        int v = value >> PRECISION_BITS;
+        return v < 0 ? 0 : Math.min(v, 255);
+    }
+
+    private static int filterOf(int resample) {
+        switch (resample) {
+            case 0:
+                return NEAREST;
+            case 3:
+                return BICUBIC;
+            case 2:
+            default: // 默认为双线性插值
+                return BILINEAR;
+        }
+    }
+
+    private static Coefficients coefficients(int filter, int inSize, int outSize) {
+        long key = ((long) filter << 56) | ((long) inSize << 28) | outSize;
+        synchronized (COEFFICIENTS_CACHE) {
+            Coefficients c = COEFFICIENTS_CACHE.get(key);
+            if (c != null) {
+                return c;
+            }
+        }
+        Coefficients c = filter == NEAREST ? nearestCoefficients(inSize, outSize) : convolutionCoefficients(filter, inSize, outSize);
+        synchronized (COEFFICIENTS_CACHE) {
+            COEFFICIENTS_CACHE.put(key, c);
+        }
+        return c;
+    }
+
+    /**
+     * 对应 PIL Resample.c 中的 precompute_coeffs 与 normalize_coeffs_8bpc。
+     */
+    private static Coefficients convolutionCoefficients(int filter, int inSize, int outSize) {
+        double filterSupport = filter == BICUBIC ? 2.0 : 1.0;
+        double scale = (double) inSize / outSize;
+        double filterScale = Math.max(scale, 1.0);
+        double support = filterSupport * filterScale;
+        int ksize = (int) Math.ceil(support) * 2 + 1;
+
+        int[] bounds = new int[outSize * 2];
+        int[] kk = new int[outSize * ksize];
+        double[] weights = new double[ksize];
+        double ss = 1.0 / filterScale;
+        for (int xx = 0; xx < outSize; xx++) {
+            double center = (xx + 0.5) * scale;
+            int xmin = Math.max((int) (center - support + 0.5), 0);
+            int xmax = Math.min((int) (center + support + 0.5), inSize) - xmin;
+            double ww = 0.0;
+            for (int x = 0; x < xmax; x++) {
+                double w = filter == BICUBIC ? bicubic((x + xmin - center + 0.5) * ss) : bilinear((x + xmin - center + 0.5) * ss);
+                weights[x] = w;
+                ww += w;
+            }
+            for (int x = 0; x < xmax; x++) {
+                double w = ww != 0.0 ? weights[x] / ww : weights[x];
+                kk[xx * ksize + x] = w < 0
+                        ? (int) (-0.5 + w * (1 << PRECISION_BITS))
+                        : (int) (0.5 + w * (1 << PRECISION_BITS));
+            }
+            bounds[xx * 2] = xmin;
+            bounds[xx * 2 + 1] = xmax;
+        }
+        return new Coefficients(ksize, bounds, kk);
+    }
+
+    /**
+     * 最近邻：与 PIL 的 ImagingScaleAffine 相同，采样位置为 {@code (x + 0.5) * scale}，以累加方式逐个计算。
+     */
+    private static Coefficients nearestCoefficients(int inSize, int outSize) {
+        double a = (double) inSize / outSize;
+        double xo = a * 0.5;
+        int[] bounds = new int[outSize * 2];
+        int[] kk = new int[outSize];
+        for (int xx = 0; xx < outSize; xx++) {
+            bounds[xx * 2] = Math.min(Math.max((int) xo, 0), inSize - 1);
+            bounds[xx * 2 + 1] = 1;
+            kk[xx] = 1 << PRECISION_BITS;
+            xo += a;
+        }
+        return new Coefficients(1, bounds, kk);
+    }
+
+    private static double bilinear(double x) {
+        if (x < 0.0) {
+            x = -x;
+        }
+        return x < 1.0 ? 1.0 - x : 0.0;
+    }
+
+    private static double bicubic(double x) {
+        final double a = -0.5;
+        if (x < 0.0) {
+            x = -x;
+        }
+        if (x < 1.0) {
+            return ((a + 2.0) * x - (a + 3.0)) * x * x + 1;
+        }
+        if (x < 2.0) {
+            return (((x - 5) * x + 8) * x - 4) * a;
+        }
+        return 0.0;
+    }
+
+    /**
+     * 一个方向上的权重表：第 i 个输出像素依赖源图 [bounds[2i], bounds[2i] + bounds[2i+1]) 区间，
+     * 定点权重存放在 kk[i * ksize] 开始的位置。
+     */
+    private static final class Coefficients {
+        private final int ksize;
+        private final int[] bounds;
+        private final int[] kk;
+
+        Coefficients(int ksize, int[] bounds, int[] kk) {
+            this.ksize = ksize;
+            this.bounds = bounds;
+            this.kk = kk;
+        }
+
+        int first(int out) {
+            return bounds[out * 2];
+        }
+
+        int last(int out) {
+            return bounds[out * 2] + bounds[out * 2 + 1];
+        }
+    }
+}
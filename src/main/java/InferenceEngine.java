@@ -0,0 +1,179 @@
+import ai.onnxruntime.NodeInfo;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 推理引擎：按 {@link InferenceEngineConfig} 创建并持有一个或多个 {@link OrtSession}，供任意多个线程并发使用。
+ * <p>
+ * 会话个数为 1 时所有调用方共享同一个会话，ORT 保证 {@code run} 的线程安全，单次推理由 intra-op 线程池在内部并行；
+ * 会话个数为 N 时构成会话池，调用方通过 {@link #withSession(SessionFunction)} 独占借用一个会话，
+ * 没有空闲会话时阻塞等待，N 个请求分别在 N 个会话上并行，适合按核数扩展吞吐。
+ * <p>
+ * 推理结果 {@link OrtSession.Result} 需在借用期间处理并关闭，例如：
+ * <pre>
+ * float[] embedding = engine.withSession(session -> {
+ *     try (OrtSession.Result result = session.run(inputs)) {
+ *         return ImageEmbeddingExtractor.extractWithGlobalAvgPooling(result);
+ *     }
+ * });
+ * </pre>
+ */
+public final class InferenceEngine implements AutoCloseable {
+
+    /**
+     * 在借用的会话上执行的操作。
+     */
+    @FunctionalInterface
+    public interface SessionFunction<T> {
+        T apply(OrtSession session) throws OrtException;
+    }
+
+    private final OrtEnvironment environment;
+    private final InferenceEngineConfig config;
+    private final List<OrtSession> sessions;
+    /**
+     * 会话池模式下的空闲会话；共享模式下为 null
+     */
+    private final ArrayBlockingQueue<OrtSession> idle;
+
+    /**
+     * 使用默认配置创建推理引擎（单个共享会话）。
+     *
+     * @param modelPath ONNX 模型文件路径
+     * @throws OrtException 创建会话失败时抛出
+     */
+    public InferenceEngine(String modelPath) throws OrtException {
+        this(modelPath, new InferenceEngineConfig());
+    }
+
+    /**
+     * @param modelPath ONNX 模型文件路径
+     * @param config    引擎配置
+     * @throws OrtException 创建会话失败时抛出
+     */
+    public InferenceEngine(String modelPath, InferenceEngineConfig config) throws OrtException {
+        if (config == null) {
+            throw new IllegalArgumentException("配置对象不能为 null");
+        }
+        this.environment = OrtEnvironment.getEnvironment();
+        this.config = config;
+        int count = config.getSession_count();
+        this.sessions = new ArrayList<>(count);
+        try (OrtSession.SessionOptions options = config.createSessionOptions()) {
+            for (int i = 0; i < count; i++) {
+                sessions.add(environment.createSession(modelPath, options));
+            }
+        } catch (OrtException | RuntimeException e) {
+            closeSessions();
+            throw e;
+        }
+        this.idle = count == 1 ? null : new ArrayBlockingQueue<>(count, false, sessions);
+    }
+
+    /**
+     * @return ONNX Runtime 环境
+     */
+    public OrtEnvironment getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * @return 引擎配置
+     */
+    public InferenceEngineConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return 会话个数，即最多同时进行的推理数（共享模式下为 1，但该会话可被并发调用）
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return 模型的输入名称
+     */
+    public Set<String> getInputNames() {
+        return sessions.get(0).getInputNames();
+    }
+
+    /**
+     * @return 模型的输出名称
+     */
+    public Set<String> getOutputNames() {
+        return sessions.get(0).getOutputNames();
+    }
+
+    /**
+     * @return 模型的输入信息
+     * @throws OrtException 读取模型信息失败时抛出
+     */
+    public Map<String, NodeInfo> getInputInfo() throws OrtException {
+        return sessions.get(0).getInputInfo();
+    }
+
+    /**
+     * 借用一个会话执行 {@code function}：共享模式下直接使用共享会话；会话池模式下独占一个会话，
+     * 没有空闲会话时阻塞等待，执行完毕后归还。
+     *
+     * @param function 在会话上执行的操作，其中创建的推理结果应在返回前关闭
+     * @return function 的返回值
+     * @throws OrtException 推理失败时抛出
+     */
+    public <T> T withSession(SessionFunction<T> function) throws OrtException {
+        if (idle == null) {
+            return function.apply(sessions.get(0));
+        }
+        OrtSession session;
+        try {
+            session = idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待空闲会话时被中断", e);
+        }
+        try {
+            return function.apply(session);
+        } finally {
+            idle.offer(session);
+        }
+    }
+
+    /**
+     * 在借用的会话上执行一次推理。结果须由调用方关闭；会话池模式下结果在会话归还后依然有效。
+     *
+     * @param inputs 模型输入
+     * @return 推理结果
+     * @throws OrtException 推理失败时抛出
+     */
+    public OrtSession.Result run(Map<String, OnnxTensor> inputs) throws OrtException {
+        return withSession(session -> session.run(inputs));
+    }
+
+    private void closeSessions() {
+        for (OrtSession session : sessions) {
+            try {
+                session.close();
+            } catch (OrtException e) {
+                System.err.println("关闭会话失败: " + e.getMessage());
+            }
+        }
+        sessions.clear();
+    }
+
+    /**
+     * 关闭所有会话；调用前应确保没有正在进行的推理。
+     */
+    @Override
+    public void close() {
+        closeSessions();
+    }
+}
@@ -0,0 +1,192 @@
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * 推理引擎 {@link InferenceEngine} 的配置类
+ * <p>
+ * 与 {@link ImageProcessorConfig} 一样，所有配置项均为类的直接字段，
+ * 决定会话的线程数、执行模式、图优化级别、内存分配策略，以及会话在多线程间的共享方式。
+ * 各项也可以通过 {@code -Dembedding.ort.<字段名>=...} 系统属性指定，见 {@link #fromSystemProperties()}。
+ */
+public class InferenceEngineConfig {
+
+    /**
+     * 会话个数
+     * 1 -> 所有调用方共享同一个会话（ORT 的 run 是线程安全的），由 intra-op 线程池在单次推理内部并行
+     * N -> 会话池，每个会话同一时刻只被一个调用方使用，多个请求在不同会话上并行
+     */
+    private int session_count = 1;
+
+    /**
+     * 单个算子内部的并行线程数，0 表示由 ORT 决定（通常为物理核数）。
+     * 会话池模式下为 0 时按 {@code 可用核数 / session_count} 分配，避免线程超额订阅。
+     */
+    private int intra_op_num_threads = 0;
+
+    /**
+     * 算子之间的并行线程数，仅在 PARALLEL 执行模式下生效，0 表示由 ORT 决定
+     */
+    private int inter_op_num_threads = 0;
+
+    private OrtSession.SessionOptions.ExecutionMode execution_mode = OrtSession.SessionOptions.ExecutionMode.SEQUENTIAL;
+    private OrtSession.SessionOptions.OptLevel optimization_level = OrtSession.SessionOptions.OptLevel.ALL_OPT;
+
+    /**
+     * 是否启用 CPU 内存池（arena），关闭后每次推理的中间结果都直接向系统申请和释放内存
+     */
+    private boolean memory_arena = true;
+
+    /**
+     * 是否启用内存规划（memory pattern），输入形状固定时可以预先规划中间结果的内存
+     */
+    private boolean memory_pattern = true;
+
+    /**
+     * 从系统属性读取配置，未指定的项保持默认值，例如：
+     * <pre>
+     * -Dembedding.ort.session_count=4 -Dembedding.ort.execution_mode=PARALLEL -Dembedding.ort.optimization_level=EXTENDED_OPT
+     * </pre>
+     *
+     * @return 配置对象
+     */
+    public static InferenceEngineConfig fromSystemProperties() {
+        InferenceEngineConfig config = new InferenceEngineConfig();
+        config.setSession_count(Integer.getInteger("embedding.ort.session_count", config.session_count));
+        config.setIntra_op_num_threads(Integer.getInteger("embedding.ort.intra_op_num_threads", config.intra_op_num_threads));
+        config.setInter_op_num_threads(Integer.getInteger("embedding.ort.inter_op_num_threads", config.inter_op_num_threads));
+        String mode = System.getProperty("embedding.ort.execution_mode");
+        if (mode != null) {
+            config.setExecution_mode(OrtSession.SessionOptions.ExecutionMode.valueOf(mode.trim().toUpperCase()));
+        }
+        String level = System.getProperty("embedding.ort.optimization_level");
+        if (level != null) {
+            config.setOptimization_level(OrtSession.SessionOptions.OptLevel.valueOf(level.trim().toUpperCase()));
+        }
+        config.setMemory_arena(Boolean.parseBoolean(System.getProperty("embedding.ort.memory_arena", String.valueOf(config.memory_arena))));
+        config.setMemory_pattern(Boolean.parseBoolean(System.getProperty("embedding.ort.memory_pattern", String.valueOf(config.memory_pattern))));
+        return config;
+    }
+
+    /**
+     * 按当前配置创建一个会话选项对象，由调用方负责关闭。
+     *
+     * @return 会话选项
+     * @throws OrtException 设置选项失败时抛出
+     */
+    public OrtSession.SessionOptions createSessionOptions() throws OrtException {
+        OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+        try {
+            int intraThreads = getEffectiveIntra_op_num_threads();
+            if (intraThreads > 0) {
+                options.setIntraOpNumThreads(intraThreads);
+            }
+            if (inter_op_num_threads > 0) {
+                options.setInterOpNumThreads(inter_op_num_threads);
+            }
+            options.setExecutionMode(execution_mode);
+            options.setOptimizationLevel(optimization_level);
+            options.setCPUArenaAllocator(memory_arena);
+            options.setMemoryPatternOptimization(memory_pattern);
+            return options;
+        } catch (OrtException e) {
+            options.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return 实际使用的 intra-op 线程数，0 表示由 ORT 决定
+     */
+    public int getEffectiveIntra_op_num_threads() {
+        if (intra_op_num_threads > 0 || session_count == 1) {
+            return intra_op_num_threads;
+        }
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / session_count);
+    }
+
+    // --- Getters and Setters ---
+
+    public int getSession_count() {
+        return session_count;
+    }
+
+    public void setSession_count(int session_count) {
+        if (session_count <= 0) {
+            throw new IllegalArgumentException("session_count 必须大于 0");
+        }
+        this.session_count = session_count;
+    }
+
+    public int getIntra_op_num_threads() {
+        return intra_op_num_threads;
+    }
+
+    public void setIntra_op_num_threads(int intra_op_num_threads) {
+        if (intra_op_num_threads < 0) {
+            throw new IllegalArgumentException("intra_op_num_threads 不能为负数");
+        }
+        this.intra_op_num_threads = intra_op_num_threads;
+    }
+
+    public int getInter_op_num_threads() {
+        return inter_op_num_threads;
+    }
+
+    public void setInter_op_num_threads(int inter_op_num_threads) {
+        if (inter_op_num_threads < 0) {
+            throw new IllegalArgumentException("inter_op_num_threads 不能为负数");
+        }
+        this.inter_op_num_threads = inter_op_num_threads;
+    }
+
+    public OrtSession.SessionOptions.ExecutionMode getExecution_mode() {
+        return execution_mode;
+    }
+
+    public void setExecution_mode(OrtSession.SessionOptions.ExecutionMode execution_mode) {
+        if (execution_mode == null) {
+            throw new IllegalArgumentException("execution_mode 不能为 null");
+        }
+        this.execution_mode = execution_mode;
+    }
+
+    public OrtSession.SessionOptions.OptLevel getOptimization_level() {
+        return optimization_level;
+    }
+
+    public void setOptimization_level(OrtSession.SessionOptions.OptLevel optimization_level) {
+        if (optimization_level == null) {
+            throw new IllegalArgumentException("optimization_level 不能为 null");
+        }
+        this.optimization_level = optimization_level;
+    }
+
+    public boolean isMemory_arena() {
+        return memory_arena;
+    }
+
+    public void setMemory_arena(boolean memory_arena) {
+        this.memory_arena = memory_arena;
+    }
+
+    public boolean isMemory_pattern() {
+        return memory_pattern;
+    }
+
+    public void setMemory_pattern(boolean memory_pattern) {
+        this.memory_pattern = memory_pattern;
+    }
+
+    @Override
+    public String toString() {
+        return "InferenceEngineConfig{" +
+                "session_count=" + session_count +
+                ", intra_op_num_threads=" + intra_op_num_threads +
+                ", inter_op_num_threads=" + inter_op_num_threads +
+                ", execution_mode=" + execution_mode +
+                ", optimization_level=" + optimization_level +
+                ", memory_arena=" + memory_arena +
+                ", memory_pattern=" + memory_pattern +
+                '}';
+    }
+}
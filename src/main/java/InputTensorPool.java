@@ -0,0 +1,200 @@
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 模型输入张量池。
+ * <p>
+ * 每个池化的输入都是一块按本机字节序分配的直接内存 {@link FloatBuffer}，以及在其之上创建的 {@link OnnxTensor}。
+ * 形状的第 0 维为批量容量：同一块缓冲区可以通过 {@link Lease#tensor(int)} 以任意不超过容量的批量大小使用，
+ * 对应的张量建立在缓冲区前 n 个样本之上，按批量大小懒创建并随该输入一起复用。
+ * 对于直接内存，ONNX Runtime 不会再拷贝一份数据，张量与缓冲区共享同一块内存，因此预处理结果写入缓冲区后即可直接推理，
+ * 之后张量和缓冲区一起归还到池中重复使用。
+ * <p>
+ * {@link #acquire()} 不会阻塞：池中没有空闲输入时新建一个；归还时超出 {@code maxIdle} 的部分会被立即关闭，
+ * 池关闭时所有空闲张量一并释放，不会泄漏 native 内存。
+ * <p>
+ * 典型用法：
+ * <pre>
+ * try (InputTensorPool.Lease input = pool.acquire()) {
+ *     ImagePreprocessors.preprocessImage(image, config, input.buffer(), 0);
+ *     try (OrtSession.Result result = session.run(Collections.singletonMap("pixel_values", input.tensor()))) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public final class InputTensorPool implements AutoCloseable {
+
+    private final OrtEnvironment environment;
+    private final long[] shape;
+    private final int elementCount;
+    private final int itemSize;
+    private final ArrayBlockingQueue<Lease> idle;
+    private volatile boolean closed;
+
+    /**
+     * @param environment ONNX Runtime 环境
+     * @param shape       输入张量的形状，如 {@code {1, 3, 224, 224}}，第 0 维为批量容量
+     * @param maxIdle     池中最多保留的空闲输入个数
+     */
+    public InputTensorPool(OrtEnvironment environment, long[] shape, int maxIdle) {
+        if (maxIdle <= 0) {
+            throw new IllegalArgumentException("maxIdle 必须大于 0");
+        }
+        long count = 1;
+        for (long d : shape) {
+            if (d <= 0) {
+                throw new IllegalArgumentException("输入张量的形状必须是确定的正数: " + Arrays.toString(shape));
+            }
+            count *= d;
+        }
+        if (count > Integer.MAX_VALUE / Float.BYTES) {
+            throw new IllegalArgumentException("输入张量过大: " + Arrays.toString(shape));
+        }
+        this.environment = environment;
+        this.shape = shape.clone();
+        this.elementCount = (int) count;
+        this.itemSize = (int) (count / shape[0]);
+        this.idle = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    /**
+     * @return 输入张量的形状
+     */
+    public long[] getShape() {
+        return shape.clone();
+    }
+
+    /**
+     * @return 批量容量，即形状的第 0 维
+     */
+    public int getCapacity() {
+        return (int) shape[0];
+    }
+
+    /**
+     * @return 单个样本的 float 个数，如 {@code 3 * 224 * 224}
+     */
+    public int getItemSize() {
+        return itemSize;
+    }
+
+    /**
+     * 借出一个输入张量，用完后调用 {@link Lease#close()} 归还。
+     *
+     * @return 输入张量及其直接内存缓冲区
+     * @throws OrtException 创建新张量失败时抛出
+     */
+    public Lease acquire() throws OrtException {
+        if (closed) {
+            throw new IllegalStateException("InputTensorPool 已关闭");
+        }
+        Lease lease = idle.poll();
+        if (lease == null) {
+            FloatBuffer buffer = ByteBuffer.allocateDirect(elementCount * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            lease = new Lease(buffer);
+        }
+        lease.buffer.clear();
+        lease.leased = true;
+        return lease;
+    }
+
+    private void release(Lease lease) {
+        if (closed || !idle.offer(lease)) {
+            lease.destroy();
+            return;
+        }
+        // close() 与 offer 并发时，确保不会留下未释放的张量
+        if (closed && idle.remove(lease)) {
+            lease.destroy();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Lease lease;
+        while ((lease = idle.poll()) != null) {
+            lease.destroy();
+        }
+    }
+
+    /**
+     * 借出的输入：直接内存缓冲区及共享该内存的张量。
+     */
+    public final class Lease implements AutoCloseable {
+        private final FloatBuffer buffer;
+        /**
+         * 下标为批量大小 n 的张量建立在缓冲区前 n 个样本之上
+         */
+        private final OnnxTensor[] tensors;
+        private boolean leased;
+
+        private Lease(FloatBuffer buffer) {
+            this.buffer = buffer;
+            this.tensors = new OnnxTensor[getCapacity() + 1];
+        }
+
+        /**
+         * @return 张量背后的直接内存缓冲区，写入的数据即为下一次推理的输入
+         */
+        public FloatBuffer buffer() {
+            return buffer;
+        }
+
+        /**
+         * @return 与缓冲区共享内存、批量大小为容量的输入张量
+         * @throws OrtException 创建张量失败时抛出
+         */
+        public OnnxTensor tensor() throws OrtException {
+            return tensor(getCapacity());
+        }
+
+        /**
+         * @param batch 批量大小，范围 [1, 容量]
+         * @return 建立在缓冲区前 batch 个样本之上的输入张量，形状为 {@code {batch, ...}}
+         * @throws OrtException 创建张量失败时抛出
+         */
+        public OnnxTensor tensor(int batch) throws OrtException {
+            if (batch < 1 || batch > getCapacity()) {
+                throw new IllegalArgumentException("批量大小 " + batch + " 超出范围 [1, " + getCapacity() + "]");
+            }
+            OnnxTensor tensor = tensors[batch];
+            if (tensor == null) {
+                long[] batchShape = shape.clone();
+                batchShape[0] = batch;
+                tensor = OnnxTensor.createTensor(environment, buffer.slice(0, batch * itemSize), batchShape);
+                tensors[batch] = tensor;
+            }
+            return tensor;
+        }
+
+        private void destroy() {
+            for (OnnxTensor tensor : tensors) {
+                if (tensor != null) {
+                    tensor.close();
+                }
+            }
+        }
+
+        /**
+         * 归还到池中；必须在 session.run 返回之后调用。
+         */
+        @Override
+        public void close() {
+            if (leased) {
+                leased = false;
+                release(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+
+/**
+ * 纯 Java 的图像后端：{@link ImageDecoder} 按需要的分辨率解码，{@link ImageResampler} 缩放与裁剪，
+ * 再由 {@link ImagePreprocessors} 的融合内核写出 CHW。输出与 PIL 一致，见 {@link ImageResampler} 的容差说明。
+ */
+final class Java2DImageBackend implements ImageBackend {
+
+    static final Java2DImageBackend INSTANCE = new Java2DImageBackend();
+
+    private Java2DImageBackend() {}
+
+    @Override
+    public String getName() {
+        return JAVA2D;
+    }
+
+    @Override
+    public BufferedImage decode(File file, ImageProcessorConfig config) throws IOException {
+        return ImageDecoder.decode(file, config);
+    }
+
+    @Override
+    public BufferedImage decode(InputStream stream, ImageProcessorConfig config) throws IOException {
+        return ImageDecoder.decode(stream, config);
+    }
+
+    @Override
+    public float[] preprocess(BufferedImage image, ImageProcessorConfig config) {
+        BufferedImage currentImage = ImagePreprocessors.resizeAndCrop(image, config);
+        float[] chw = new float[3 * currentImage.getWidth() * currentImage.getHeight()];
+        ImagePreprocessors.writeCHW(currentImage, config.getPixelTransform(), chw, 0);
+        return chw;
+    }
+
+    @Override
+    public int preprocess(BufferedImage image, ImageProcessorConfig config, FloatBuffer dst, int offset) {
+        BufferedImage currentImage = ImagePreprocessors.resizeAndCrop(image, config);
+        ImagePreprocessors.writeCHW(currentImage, config.getPixelTransform(), dst, offset);
+        return 3 * currentImage.getWidth() * currentImage.getHeight();
+    }
+}
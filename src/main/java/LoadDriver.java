@@ -0,0 +1,361 @@
+import com.keevol.ai.djl.playground.systemd.EmbeddingBackend;
+import com.keevol.ai.djl.playground.systemd.LatencyHistogram;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * 以 {@link CreateTestImage} 生成的语料库压测 embedding，报告延迟分位数与吞吐，用于容量规划。
+ * <p>
+ * 目标：
+ * <ul>
+ *     <li>{@code inproc:<model.onnx>}：进程内的 {@link EmbeddingServiceBackend}（与 HTTP 服务相同的微批调度），
+ *     其余配置项可以用 {@code -Dembedding.*} 系统属性指定；</li>
+ *     <li>{@code http://host:port/embed}：运行中的 HTTP 服务。</li>
+ * </ul>
+ * 模式：
+ * <ul>
+ *     <li>{@code closed}：闭环，{@code --concurrency} 个客户端各自发出请求、等到响应后再发下一个，
+ *     测得的是给定并发下的吞吐与延迟；</li>
+ *     <li>{@code open}：开环，按 {@code --rate} 的固定到达率发出请求，不管之前的请求是否完成。
+ *     延迟从计划的发出时刻算起，发送端落后时的排队时间也计入延迟（避免 coordinated omission）；
+ *     未完成请求超过 {@code --max-outstanding} 时新请求记为丢弃。</li>
+ * </ul>
+ * 语料库中的图像按文件名顺序循环使用，启动时全部读入内存。前 {@code --warmup} 秒发出的请求不计入统计。
+ * 用法：
+ * <pre>
+ * LoadDriver &lt;语料库目录&gt; &lt;目标&gt; [--mode closed|open] [--concurrency 16] [--rate 50]
+ *            [--duration 60] [--warmup 10] [--max-outstanding 10000]
+ * </pre>
+ */
+public final class LoadDriver {
+
+    /**
+     * 运行中输出进度的间隔（秒）
+     */
+    private static final int PROGRESS_SECONDS = 5;
+
+    private final List<byte[]> corpus;
+    private final Target target;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong next = new AtomicLong();
+    private volatile boolean measuring;
+
+    private LoadDriver(List<byte[]> corpus, Target target) {
+        this.corpus = corpus;
+        this.target = target;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("用法: LoadDriver <语料库目录> <inproc:model.onnx|http://host:port/embed> [--mode closed|open] "
+                    + "[--concurrency 16] [--rate 50] [--duration 60] [--warmup 10] [--max-outstanding 10000]");
+            System.exit(1);
+        }
+        String mode = "closed";
+        int concurrency = 16;
+        double rate = 50;
+        int duration = 60;
+        int warmup = 10;
+        int maxOutstanding = 10000;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--mode" -> mode = args[i + 1];
+                case "--concurrency" -> concurrency = Integer.parseInt(args[i + 1]);
+                case "--rate" -> rate = Double.parseDouble(args[i + 1]);
+                case "--duration" -> duration = Integer.parseInt(args[i + 1]);
+                case "--warmup" -> warmup = Integer.parseInt(args[i + 1]);
+                case "--max-outstanding" -> maxOutstanding = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("未知的参数: " + args[i]);
+            }
+        }
+
+        List<byte[]> corpus = loadCorpus(Paths.get(args[0]));
+        long bytes = corpus.stream().mapToLong(b -> b.length).sum();
+        System.out.printf("语料库: %d 张，%.1f MB%n", corpus.size(), bytes / 1048576.0);
+
+        try (Target target = Target.of(args[1])) {
+            LoadDriver driver = new LoadDriver(corpus, target);
+            switch (mode) {
+                case "closed" -> driver.runClosed(concurrency, warmup, duration);
+                case "open" -> driver.runOpen(rate, maxOutstanding, warmup, duration);
+                default -> throw new IllegalArgumentException("未知的模式: " + mode);
+            }
+        }
+    }
+
+    private static List<byte[]> loadCorpus(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(dir)) {
+            files = stream.filter(p -> {
+                String name = p.getFileName().toString().toLowerCase();
+                return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png");
+            }).sorted().toList();
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("目录中没有图像: " + dir);
+        }
+        List<byte[]> corpus = new ArrayList<>(files.size());
+        for (Path file : files) {
+            corpus.add(Files.readAllBytes(file));
+        }
+        return corpus;
+    }
+
+    private byte[] nextImage() {
+        return corpus.get((int) (next.getAndIncrement() % corpus.size()));
+    }
+
+    /**
+     * 闭环：concurrency 个平台线程各自串行地发出请求。
+     */
+    private void runClosed(int concurrency, int warmup, int duration) throws InterruptedException {
+        System.out.printf("闭环: 并发 %d，预热 %d s，测量 %d s%n", concurrency, warmup, duration);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup + duration);
+        List<Thread> clients = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Thread client = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    boolean counted = measuring;
+                    long start = System.nanoTime();
+                    try {
+                        target.embed(nextImage()).toCompletableFuture().join();
+                        complete(start, counted, null);
+                    } catch (RuntimeException e) {
+                        complete(start, counted, e);
+                    }
+                }
+            }, "load-client-" + i);
+            client.start();
+            clients.add(client);
+        }
+        measure(warmup, duration);
+        for (Thread client : clients) {
+            client.join();
+        }
+        report(duration);
+    }
+
+    /**
+     * 开环：按固定间隔在虚拟线程上发出请求，发送端本身从不等待响应。
+     */
+    private void runOpen(double rate, int maxOutstanding, int warmup, int duration) throws InterruptedException {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate 必须大于 0");
+        }
+        System.out.printf("开环: %.1f 请求/s，预热 %d s，测量 %d s%n", rate, warmup, duration);
+        Semaphore outstanding = new Semaphore(maxOutstanding);
+        long intervalNanos = (long) (1e9 / rate);
+        long begin = System.nanoTime();
+        long end = begin + TimeUnit.SECONDS.toNanos(warmup + duration);
+        Thread sender = new Thread(() -> {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (long i = 0; ; i++) {
+                    long scheduled = begin + i * intervalNanos;
+                    if (scheduled >= end) {
+                        break;
+                    }
+                    long wait = scheduled - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    boolean counted = measuring;
+                    if (!outstanding.tryAcquire()) {
+                        if (counted) {
+                            dropped.increment();
+                        }
+                        continue;
+                    }
+                    byte[] image = nextImage();
+                    executor.execute(() -> {
+                        try {
+                            target.embed(image).whenComplete((r, e) -> {
+                                outstanding.release();
+                                complete(scheduled, counted, e);
+                            });
+                        } catch (RuntimeException e) {
+                            outstanding.release();
+                            complete(scheduled, counted, e);
+                        }
+                    });
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "load-sender");
+        sender.start();
+        measure(warmup, duration);
+        sender.join();
+        // 等待已发出的请求完成
+        if (!outstanding.tryAcquire(maxOutstanding, 60, TimeUnit.SECONDS)) {
+            System.out.println("仍有 " + (maxOutstanding - outstanding.availablePermits()) + " 个请求未完成，不再等待");
+        }
+        report(duration);
+    }
+
+    /**
+     * 按请求发出时是否处于测量期决定是否计入，测量期末尾发出、之后才完成的慢请求同样计入。
+     */
+    private void complete(long start, boolean counted, Throwable failure) {
+        if (!counted) {
+            return;
+        }
+        if (failure == null) {
+            latency.record(System.nanoTime() - start);
+            ok.increment();
+            return;
+        }
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof RejectedExecutionException) {
+            rejected.increment();
+        } else {
+            failed.increment();
+        }
+    }
+
+    /**
+     * 预热结束后开始计数，测量期间每隔 {@link #PROGRESS_SECONDS} 秒输出一次区间内的吞吐与延迟。
+     */
+    private void measure(int warmup, int duration) throws InterruptedException {
+        TimeUnit.SECONDS.sleep(warmup);
+        measuring = true;
+        LatencyHistogram.Snapshot previous = latency.snapshot();
+        long previousOk = 0;
+        for (int elapsed = 0; elapsed < duration; elapsed += PROGRESS_SECONDS) {
+            int step = Math.min(PROGRESS_SECONDS, duration - elapsed);
+            TimeUnit.SECONDS.sleep(step);
+            LatencyHistogram.Snapshot current = latency.snapshot();
+            LatencyHistogram.Snapshot interval = current.since(previous);
+            long currentOk = ok.sum();
+            System.out.printf("[%3d s] %.1f 请求/s, p50=%.1f ms, p99=%.1f ms%n", elapsed + step,
+                    (currentOk - previousOk) / (double) step,
+                    interval.getValueAtQuantile(0.5) / 1e6, interval.getValueAtQuantile(0.99) / 1e6);
+            previous = current;
+            previousOk = currentOk;
+        }
+        measuring = false;
+    }
+
+    private void report(int duration) {
+        LatencyHistogram.Snapshot s = latency.snapshot();
+        System.out.printf("成功 %d，拒绝 %d，失败 %d，丢弃 %d%n", ok.sum(), rejected.sum(), failed.sum(), dropped.sum());
+        System.out.printf("吞吐: %.1f 请求/s%n", ok.sum() / (double) duration);
+        System.out.printf("延迟: mean=%.1f ms, p50=%.1f ms, p90=%.1f ms, p99=%.1f ms, p999=%.1f ms, max=%.1f ms%n",
+                s.getMeanNanos() / 1e6, s.getValueAtQuantile(0.5) / 1e6, s.getValueAtQuantile(0.9) / 1e6,
+                s.getValueAtQuantile(0.99) / 1e6, s.getValueAtQuantile(0.999) / 1e6, s.getMaxNanos() / 1e6);
+    }
+
+    /**
+     * 被压测的对象；拒绝（过载）以 {@link RejectedExecutionException} 完成，与其他失败分开统计。
+     */
+    private interface Target extends AutoCloseable {
+
+        CompletionStage<?> embed(byte[] image);
+
+        @Override
+        void close();
+
+        static Target of(String spec) throws Exception {
+            if (spec.startsWith("http://") || spec.startsWith("https://")) {
+                return new HttpTarget(URI.create(spec));
+            }
+            if (spec.startsWith("inproc:")) {
+                Properties config = new Properties();
+                System.getProperties().stringPropertyNames().stream()
+                        .filter(name -> name.startsWith("embedding."))
+                        .forEach(name -> config.setProperty(name, System.getProperty(name)));
+                config.setProperty("embedding.model.path", spec.substring("inproc:".length()));
+                return new InProcessTarget(new EmbeddingServiceBackend(config));
+            }
+            throw new IllegalArgumentException("目标应为 inproc:<model.onnx> 或 http://host:port/embed: " + spec);
+        }
+    }
+
+    /**
+     * 进程内调用：解码在调用线程上进行，推理由后端的微批调度器异步完成，与 HTTP 服务中的路径相同。
+     */
+    private static final class InProcessTarget implements Target {
+        private final EmbeddingBackend backend;
+
+        InProcessTarget(EmbeddingBackend backend) {
+            this.backend = backend;
+        }
+
+        @Override
+        public CompletionStage<?> embed(byte[] image) {
+            try {
+                return backend.embed(new ByteArrayInputStream(image));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            System.out.println(backend.getStatistics());
+            backend.close();
+        }
+    }
+
+    /**
+     * 通过 HTTP 调用 {@code POST /embed}，503 与 429 视为拒绝。
+     */
+    private static final class HttpTarget implements Target {
+        private final URI uri;
+        private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        HttpTarget(URI uri) {
+            this.uri = uri;
+        }
+
+        @Override
+        public CompletionStage<?> embed(byte[] image) {
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .header("Content-Type", "application/octet-stream")
+                    // 分散到多个客户端标识，避免服务端的单客户端并发上限掩盖整体的饱和行为
+                    .header("X-Client-Id", "load-driver-" + Thread.currentThread().threadId() % 64)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(image))
+                    .build();
+            return client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenApply(response -> {
+                int status = response.statusCode();
+                if (status == 503 || status == 429) {
+                    throw new RejectedExecutionException("HTTP " + status);
+                }
+                if (status != 200) {
+                    throw new IllegalStateException("HTTP " + status);
+                }
+                return response;
+            });
+        }
+
+        @Override
+        public void close() {
+            client.close();
+        }
+    }
+}
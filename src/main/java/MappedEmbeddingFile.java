@@ -0,0 +1,651 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 可直接内存映射的扁平 embedding 文件，进程启动时无需反序列化即可检索。
+ * <p>
+ * 文件格式（小端序）：
+ * <pre>
+ * 0     int    魔数 "EMBF"
+ * 4     int    版本，当前为 1
+ * 8     int    数据类型，当前只支持 {@link #DTYPE_FLOAT32}
+ * 12    int    维度
+ * 16    long   向量个数
+ * 24    int    模型标识的字节数，其后是 UTF-8 编码的模型标识
+ * 4096  ...    按行连续存放的向量，每行 维度 x 4 字节，写入时已 L2 归一化
+ * </pre>
+ * 头部占满一页，使向量按页对齐。标识保存在同名的 {@code .ids} 旁路文件中，每行一条记录（int 长度加 UTF-8 字节）；
+ * {@code .ids.idx} 是定长的偏移表，第 i 个 long 为第 i 条标识记录在 {@code .ids} 中的起始位置。
+ * <p>
+ * 文件只追加写入（见 {@link Writer}）：先写入向量、标识与偏移并刷盘，再更新头部的个数，因此崩溃后文件仍然有效，
+ * 个数之后的残留数据会在下次追加时被截断。没有偏移表的旧文件在下次追加时补写。
+ * <p>
+ * 读取时（见 {@link #open(Path)}）向量区按行对齐切分为若干不超过 2GB 的 {@link MappedByteBuffer}，检索直接扫描映射的页面；
+ * 标识与偏移表同样只做映射，{@link #getId(int)} 为两次绝对位置读取，因此打开文件只需读取头部，与向量个数无关；
+ * 操作系统的页缓存可以被多个进程共享。打开后的实例是 {@link ReadOnlyVectorIndex}。映射在实例不可达后由 GC 解除。
+ */
+public final class MappedEmbeddingFile implements ReadOnlyVectorIndex, AutoCloseable {
+
+    /**
+     * 32 位小端 float
+     */
+    public static final int DTYPE_FLOAT32 = 1;
+
+    private static final int MAGIC = 0x464D4245; // "EMBF"，小端序
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4096;
+    private static final int COUNT_OFFSET = 16;
+    private static final int MIN_ROWS_PER_TASK = 4096;
+    /**
+     * 扫描时每次从映射区批量复制到线程本地数组的行数
+     */
+    private static final int BLOCK_ROWS = 64;
+
+    private final Path file;
+    private final String modelId;
+    private final int dimension;
+    private final int count;
+    private final int rowsPerSegment;
+    private final FloatBuffer[] segments;
+    private final ByteBuffer idData;
+    private final LongBuffer idOffsets;
+    private final ForkJoinPool pool;
+    private Map<String, Integer> rowsById;
+
+    private MappedEmbeddingFile(Path file, String modelId, int dimension, int count, int rowsPerSegment,
+                                FloatBuffer[] segments, ByteBuffer idData, LongBuffer idOffsets, ForkJoinPool pool) {
+        this.file = file;
+        this.modelId = modelId;
+        this.dimension = dimension;
+        this.count = count;
+        this.rowsPerSegment = rowsPerSegment;
+        this.segments = segments;
+        this.idData = idData;
+        this.idOffsets = idOffsets;
+        this.pool = pool;
+    }
+
+    /**
+     * 以只读方式映射文件，使用公共 ForkJoinPool 并行扫描。
+     *
+     * @param file 向量文件，同名的 {@code .ids} 文件必须存在，{@code .ids.idx} 偏移表不存在时遍历标识文件重建
+     * @return 只读索引
+     * @throws IOException 读取失败或文件格式不正确时抛出
+     */
+    public static MappedEmbeddingFile open(Path file) throws IOException {
+        return open(file, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param file 向量文件，同名的 {@code .ids} 文件必须存在
+     * @param pool 执行并行扫描的线程池
+     * @return 只读索引
+     * @throws IOException 读取失败或文件格式不正确时抛出
+     */
+    public static MappedEmbeddingFile open(Path file, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel idChannel = FileChannel.open(idsFile(file), StandardOpenOption.READ)) {
+            Header header = Header.read(channel, file);
+            long rowBytes = (long) header.dimension * Float.BYTES;
+            if (header.count > Integer.MAX_VALUE || channel.size() < HEADER_SIZE + header.count * rowBytes) {
+                throw new IOException("文件长度与头部记录的向量个数不一致: " + file);
+            }
+            int count = (int) header.count;
+            int rowsPerSegment = (int) Math.max(1, Integer.MAX_VALUE / rowBytes);
+            FloatBuffer[] segments = new FloatBuffer[(count + rowsPerSegment - 1) / rowsPerSegment];
+            for (int s = 0; s < segments.length; s++) {
+                long rows = Math.min(rowsPerSegment, count - (long) s * rowsPerSegment);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + (long) s * rowsPerSegment * rowBytes, rows * rowBytes);
+                segments[s] = mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+            if (idChannel.size() > Integer.MAX_VALUE) {
+                throw new IOException("标识文件超过 2GB: " + idsFile(file));
+            }
+            ByteBuffer idData = idChannel.map(FileChannel.MapMode.READ_ONLY, 0, idChannel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            LongBuffer idOffsets = mapOffsets(file, count);
+            if (idOffsets == null) {
+                // 没有偏移表的旧文件：遍历长度字段记录每条标识的位置
+                idOffsets = LongBuffer.wrap(scanOffsets(idData, count, file));
+            }
+            return new MappedEmbeddingFile(file, header.modelId, header.dimension, count, rowsPerSegment, segments, idData, idOffsets, pool);
+        }
+    }
+
+    /**
+     * @return 映射的偏移表；偏移表不存在或条目少于 count 时返回 null
+     */
+    private static LongBuffer mapOffsets(Path file, int count) throws IOException {
+        Path offsetsFile = offsetsFile(file);
+        if (!Files.exists(offsetsFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(offsetsFile, StandardOpenOption.READ)) {
+            if (channel.size() < (long) count * Long.BYTES) {
+                return null;
+            }
+            if (count == 0) {
+                return LongBuffer.allocate(0);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * Long.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        }
+    }
+
+    /**
+     * 只遍历长度字段，得到前 count 条标识记录的起始位置。
+     */
+    private static long[] scanOffsets(ByteBuffer idData, int count, Path file) throws IOException {
+        long[] offsets = new long[count];
+        int position = 0;
+        for (int row = 0; row < count; row++) {
+            if (position + Integer.BYTES > idData.limit()) {
+                throw new IOException("标识文件的记录数少于向量个数: " + idsFile(file));
+            }
+            offsets[row] = position;
+            position += Integer.BYTES + idData.getInt(position);
+        }
+        return offsets;
+    }
+
+    /**
+     * 打开文件用于追加，文件不存在时创建。
+     *
+     * @param file      向量文件
+     * @param dimension 向量维度，已存在的文件必须一致
+     * @param modelId   模型标识，已存在的文件必须一致
+     * @return 写入器
+     * @throws IOException 读写失败或与已有文件不一致时抛出
+     */
+    public static Writer append(Path file, int dimension, String modelId) throws IOException {
+        return new Writer(file, dimension, modelId);
+    }
+
+    static Path idsFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".ids");
+    }
+
+    static Path offsetsFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".ids.idx");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param row 行号
+     * @return 该行的标识
+     */
+    public String getId(int row) {
+        checkRow(row);
+        int position = (int) idOffsets.get(row);
+        byte[] bytes = new byte[idData.getInt(position)];
+        idData.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param row 行号
+     * @return 归一化向量的副本
+     */
+    public float[] get(int row) {
+        checkRow(row);
+        float[] vector = new float[dimension];
+        segments[row / rowsPerSegment].get((row % rowsPerSegment) * dimension, vector);
+        return vector;
+    }
+
+    /**
+     * 按标识查找行号。第一次调用时解码全部标识并建立映射。
+     *
+     * @param id 标识
+     * @return 行号，不存在时返回 -1；同一标识出现多次时返回最后一次
+     */
+    public synchronized int rowOf(String id) {
+        if (rowsById == null) {
+            Map<String, Integer> map = new HashMap<>(count * 2);
+            for (int row = 0; row < count; row++) {
+                map.put(getId(row), row);
+            }
+            rowsById = map;
+        }
+        return rowsById.getOrDefault(id, -1);
+    }
+
+    @Override
+    public List<Hit> search(float[] query, int k) {
+        if (query == null || query.length != dimension) {
+            throw new IllegalArgumentException("向量维度 " + (query == null ? "null" : query.length) + " 与索引维度 " + dimension + " 不一致");
+        }
+        if (k <= 0) {
+            throw new IllegalArgumentException("k 必须大于 0");
+        }
+        if (count == 0) {
+            return List.of();
+        }
+        float[] q = VectorIndex.normalize(query);
+        int rowsPerTask = Math.max(MIN_ROWS_PER_TASK, count / (pool.getParallelism() * 4) + 1);
+        TopK top = count <= rowsPerTask
+                ? new ScanTask(q, k, 0, count, rowsPerTask).compute()
+                : pool.invoke(new ScanTask(q, k, 0, count, rowsPerTask));
+        int[] rows = new int[top.size()];
+        float[] scores = new float[top.size()];
+        int n = top.drainDescending(rows, scores);
+        List<Hit> hits = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            hits.add(new Hit(getId(rows[i]), scores[i]));
+        }
+        return hits;
+    }
+
+    /**
+     * 对 [from, to) 行做扫描：每次把至多 {@link #BLOCK_ROWS} 行从映射区批量复制到数组中再求点积，
+     * 行数超过 rowsPerTask 时二分后并行执行。
+     */
+    private final class ScanTask extends RecursiveTask<TopK> {
+        private final float[] query;
+        private final int k;
+        private final int from;
+        private final int to;
+        private final int rowsPerTask;
+
+        ScanTask(float[] query, int k, int from, int to, int rowsPerTask) {
+            this.query = query;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+            this.rowsPerTask = rowsPerTask;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= rowsPerTask) {
+                NumericKernels kernels = NumericKernels.get();
+                TopK top = new TopK(k);
+                float[] block = new float[BLOCK_ROWS * dimension];
+                int row = from;
+                while (row < to) {
+                    int segment = row / rowsPerSegment;
+                    int rowInSegment = row % rowsPerSegment;
+                    int rows = Math.min(BLOCK_ROWS, Math.min(to - row, rowsPerSegment - rowInSegment));
+                    segments[segment].get(rowInSegment * dimension, block, 0, rows * dimension);
+                    for (int i = 0; i < rows; i++) {
+                        top.offer(row + i, kernels.dot(block, i * dimension, query, 0, dimension));
+                    }
+                    row += rows;
+                }
+                return top;
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(query, k, from, mid, rowsPerTask);
+            left.fork();
+            TopK right = new ScanTask(query, k, mid, to, rowsPerTask).compute();
+            TopK merged = left.join();
+            merged.addAll(right);
+            return merged;
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= count) {
+            throw new IndexOutOfBoundsException("行号 " + row + " 超出范围 [0, " + count + ")");
+        }
+    }
+
+    /**
+     * 通道在打开时已关闭，映射在实例不可达后由 GC 解除，这里不需要释放资源。
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * 文件头部。
+     */
+    private static final class Header {
+        private final int dimension;
+        private final long count;
+        private final String modelId;
+
+        private Header(int dimension, long count, String modelId) {
+            this.dimension = dimension;
+            this.count = count;
+            this.modelId = modelId;
+        }
+
+        static Header read(FileChannel channel, Path file) throws IOException {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("不是 embedding 文件: " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new IOException("读取文件头部失败: " + file);
+                }
+            }
+            buffer.flip();
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("不是 embedding 文件: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("不支持的 embedding 文件版本: " + buffer.getInt(4));
+            }
+            if (buffer.getInt(8) != DTYPE_FLOAT32) {
+                throw new IOException("不支持的数据类型: " + buffer.getInt(8));
+            }
+            int dimension = buffer.getInt(12);
+            long count = buffer.getLong(COUNT_OFFSET);
+            int modelIdLength = buffer.getInt(24);
+            if (dimension <= 0 || count < 0 || modelIdLength < 0 || modelIdLength > HEADER_SIZE - 28) {
+                throw new IOException("文件头部已损坏: " + file);
+            }
+            byte[] modelId = new byte[modelIdLength];
+            buffer.get(28, modelId);
+            return new Header(dimension, count, new String(modelId, StandardCharsets.UTF_8));
+        }
+
+        static ByteBuffer create(int dimension, String modelId) {
+            byte[] modelIdBytes = modelId.getBytes(StandardCharsets.UTF_8);
+            if (modelIdBytes.length > HEADER_SIZE - 28) {
+                throw new IllegalArgumentException("模型标识过长: " + modelId);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(DTYPE_FLOAT32).putInt(dimension).putLong(0)
+                    .putInt(modelIdBytes.length).put(modelIdBytes);
+            buffer.clear();
+            return buffer;
+        }
+    }
+
+    /**
+     * 追加写入器，非线程安全。写入的数据在 {@link #flush()} 或 {@link #close()} 后才对新打开的读取方可见。
+     */
+    public static final class Writer implements AutoCloseable {
+
+        private static final int BUFFER_SIZE = 1 << 20;
+
+        private final FileChannel channel;
+        private final FileChannel idChannel;
+        private final FileChannel offsetChannel;
+        private final int dimension;
+        private final ByteBuffer vectors;
+        private final ByteBuffer ids;
+        private final ByteBuffer offsets;
+        private long count;
+        /**
+         * 下一条标识记录在标识文件中的起始位置
+         */
+        private long idsLength;
+
+        private Writer(Path file, int dimension, String modelId) throws IOException {
+            if (dimension <= 0) {
+                throw new IllegalArgumentException("dimension 必须大于 0");
+            }
+            boolean exists = Files.exists(file);
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileChannel idChannel = null;
+            FileChannel offsetChannel = null;
+            try {
+                idChannel = FileChannel.open(idsFile(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                offsetChannel = FileChannel.open(offsetsFile(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                if (exists && channel.size() > 0) {
+                    Header header = Header.read(channel, file);
+                    if (header.dimension != dimension || !header.modelId.equals(modelId)) {
+                        throw new IOException("已有文件的维度 " + header.dimension + " 或模型标识 " + header.modelId + " 不一致");
+                    }
+                    count = header.count;
+                    if (offsetChannel.size() < count * Long.BYTES) {
+                        // 没有偏移表的旧文件，补写一次
+                        rebuildOffsets(idChannel, offsetChannel, count, file);
+                    }
+                    // 截断上次未完成的写入
+                    channel.truncate(HEADER_SIZE + count * dimension * Float.BYTES);
+                    idsLength = idsLength(idChannel, offsetChannel, count, file);
+                    idChannel.truncate(idsLength);
+                    offsetChannel.truncate(count * Long.BYTES);
+                } else {
+                    channel.write(Header.create(dimension, modelId), 0);
+                    channel.truncate(HEADER_SIZE);
+                    idChannel.truncate(0);
+                    offsetChannel.truncate(0);
+                }
+                channel.position(channel.size());
+                idChannel.position(idChannel.size());
+                offsetChannel.position(offsetChannel.size());
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                if (idChannel != null) {
+                    idChannel.close();
+                }
+                if (offsetChannel != null) {
+                    offsetChannel.close();
+                }
+                throw e;
+            }
+            this.channel = channel;
+            this.idChannel = idChannel;
+            this.offsetChannel = offsetChannel;
+            this.dimension = dimension;
+            this.vectors = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, dimension * Float.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+            this.ids = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            this.offsets = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * 前 count 条标识记录的总字节数：最后一条记录的偏移加上其长度。
+         */
+        private static long idsLength(FileChannel idChannel, FileChannel offsetChannel, long count, Path file) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(offsetChannel, buffer, (count - 1) * Long.BYTES, file);
+            long last = buffer.getLong(0);
+            buffer.clear().limit(Integer.BYTES);
+            readFully(idChannel, buffer, last, file);
+            return last + Integer.BYTES + buffer.getInt(0);
+        }
+
+        /**
+         * 遍历标识文件的长度字段，写出前 count 条记录的偏移表。
+         */
+        private static void rebuildOffsets(FileChannel idChannel, FileChannel offsetChannel, long count, Path file) throws IOException {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer table = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            offsetChannel.truncate(0);
+            offsetChannel.position(0);
+            long position = 0;
+            for (long row = 0; row < count; row++) {
+                length.clear();
+                readFully(idChannel, length, position, file);
+                if (!table.hasRemaining()) {
+                    drain(table, offsetChannel);
+                }
+                table.putLong(position);
+                position += Integer.BYTES + length.getInt(0);
+            }
+            drain(table, offsetChannel);
+            offsetChannel.force(false);
+        }
+
+        private static void readFully(FileChannel channel, ByteBuffer buffer, long position, Path file) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("标识文件的记录数少于向量个数: " + idsFile(file));
+                }
+            }
+        }
+
+        /**
+         * 追加一个向量，写入前做 L2 归一化。
+         *
+         * @param id     标识
+         * @param vector 向量
+         * @throws IOException 写入失败时抛出
+         */
+        public void append(String id, float[] vector) throws IOException {
+            if (vector.length != dimension) {
+                throw new IllegalArgumentException("向量维度 " + vector.length + " 与文件维度 " + dimension + " 不一致");
+            }
+            byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+            if (vectors.remaining() < dimension * Float.BYTES) {
+                drain(vectors, channel);
+            }
+            if (ids.remaining() < Integer.BYTES + idBytes.length) {
+                drain(ids, idChannel);
+            }
+            if (offsets.remaining() < Long.BYTES) {
+                drain(offsets, offsetChannel);
+            }
+            offsets.putLong(idsLength);
+            idsLength += Integer.BYTES + idBytes.length;
+            for (float value : VectorIndex.normalize(vector)) {
+                vectors.putFloat(value);
+            }
+            if (ids.remaining() < Integer.BYTES + idBytes.length) {
+                // 超长的标识直接写入
+                ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + idBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+                record.putInt(idBytes.length).put(idBytes).flip();
+                while (record.hasRemaining()) {
+                    idChannel.write(record);
+                }
+            } else {
+                ids.putInt(idBytes.length).put(idBytes);
+            }
+            count++;
+        }
+
+        private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * 写入缓冲区并刷盘，然后更新头部的向量个数。
+         *
+         * @throws IOException 写入失败时抛出
+         */
+        public void flush() throws IOException {
+            drain(vectors, channel);
+            drain(ids, idChannel);
+            drain(offsets, offsetChannel);
+            channel.force(false);
+            idChannel.force(false);
+            offsetChannel.force(false);
+            ByteBuffer countBuffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, count);
+            channel.write(countBuffer, COUNT_OFFSET);
+            channel.force(false);
+        }
+
+        /**
+         * @return 已追加的向量个数（包括尚未刷盘的）
+         */
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                try {
+                    channel.close();
+                } finally {
+                    try {
+                        idChannel.close();
+                    } finally {
+                        offsetChannel.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 把 {@link EmbeddingStore} 中某个模型的 embedding 导出为映射文件，并测量打开与检索耗时。
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("用法: MappedEmbeddingFile <embeddings.db> <模型标识> <输出文件>");
+            System.exit(1);
+        }
+        Path db = Paths.get(args[0]);
+        String modelId = args[1];
+        Path output = Paths.get(args[2]);
+        try (EmbeddingStore store = new EmbeddingStore(db, modelId)) {
+            Writer[] writer = new Writer[1];
+            IOException[] failure = new IOException[1];
+            long start = System.nanoTime();
+            store.forEach((hash, embedding) -> {
+                try {
+                    if (writer[0] == null) {
+                        writer[0] = append(output, embedding.length, modelId);
+                    }
+                    if (failure[0] == null) {
+                        writer[0].append(hash, embedding);
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (writer[0] != null) {
+                writer[0].close();
+            }
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            System.out.printf("导出 %d 个向量，耗时 %.1f ms%n", writer[0] == null ? 0 : writer[0].getCount(), (System.nanoTime() - start) / 1e6);
+
+            start = System.nanoTime();
+            MappedEmbeddingFile file = open(output);
+            System.out.printf("打开 %s: %d x %d，耗时 %.1f ms%n", output, file.size(), file.dimension(), (System.nanoTime() - start) / 1e6);
+            if (file.size() > 0) {
+                start = System.nanoTime();
+                List<Hit> hits = file.search(file.get(0), 5);
+                System.out.printf("检索耗时 %.1f ms: %s%n", (System.nanoTime() - start) / 1e6, hits);
+            }
+        } catch (SQLException e) {
+            System.err.println("读取 embedding 存储失败: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println("写入 embedding 文件失败: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
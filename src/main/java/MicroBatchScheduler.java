@@ -0,0 +1,341 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 动态微批调度器。
+ * <p>
+ * 并发调用方各自提交单张图像，调度器把它们排入队列，由一个调度线程攒批：
+ * 凑满 {@code maxBatchSize} 张，或者批中最早的请求已等待 {@code maxWait}，二者先到即发出一批，
+ * 整批一次推理后，每个调用方的 {@link CompletableFuture} 以输出中属于自己的那一行完成。
+ * 这样在线流量无需调用方自己组批，也能获得批量推理的吞吐。
+ * <p>
+ * 调度线程只负责攒批，批次交给 {@code concurrency} 个工作线程执行，最多同时计算 {@code concurrency} 批，
+ * 通常取 {@link InferenceEngine#getSessionCount()}，使每个会话都有批次可算。调度线程在有空闲的工作线程时才开始攒下一批，
+ * 工作线程全忙期间到达的请求留在队列中，等到有空闲时一起组成更大的批次。
+ * <p>
+ * 每个请求的结果都带有排队等待时间与计算时间，调度器同时累计全局统计，见 {@link #getStatistics()}。
+ * <p>
+ * 典型用法：
+ * <pre>
+ * try (ImageEmbeddingDemo embedder = new ImageEmbeddingDemo(modelPath);
+ *      MicroBatchScheduler scheduler = new MicroBatchScheduler(embedder, 5)) {
+ *     CompletableFuture&lt;MicroBatchScheduler.Embedding&gt; future = scheduler.submit(image);
+ *     float[] embedding = future.get().getEmbedding();
+ * }
+ * </pre>
+ */
+public final class MicroBatchScheduler implements AutoCloseable {
+
+    private static final int DEFAULT_MAX_QUEUE_SIZE = 1024;
+
+    /**
+     * 一次处理一批图像，返回与输入一一对应的 embedding。
+     */
+    @FunctionalInterface
+    public interface BatchFunction {
+        List<float[]> apply(List<BufferedImage> images) throws Exception;
+    }
+
+    private final BatchFunction batchFunction;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final LinkedBlockingQueue<Pending> queue;
+    private final Semaphore idleWorkers;
+    private final ExecutorService workers;
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder computeNanos = new LongAdder();
+
+    /**
+     * 以 {@link ImageEmbeddingDemo#embedImages(List)} 作为批处理函数，批量上限取模型允许的最大批量，
+     * 同时计算的批数取推理引擎的会话个数。
+     *
+     * @param embedder      embedding 模型
+     * @param maxWaitMillis 批中最早的请求最多等待的毫秒数
+     */
+    public MicroBatchScheduler(ImageEmbeddingDemo embedder, long maxWaitMillis) {
+        this(embedder::embedImages, embedder.getMaxBatchSize(), maxWaitMillis, TimeUnit.MILLISECONDS, DEFAULT_MAX_QUEUE_SIZE,
+                embedder.getSessionCount());
+    }
+
+    /**
+     * 一次只计算一批。
+     *
+     * @param batchFunction 批处理函数
+     * @param maxBatchSize  每批最多的请求数
+     * @param maxWait       批中最早的请求最多等待的时间，为 0 时不等待，队列中已有多少就发多少
+     * @param unit          maxWait 的时间单位
+     * @param maxQueueSize  排队请求数上限，超出时 {@link #submit(BufferedImage)} 立即以
+     *                      {@link RejectedExecutionException} 失败
+     */
+    public MicroBatchScheduler(BatchFunction batchFunction, int maxBatchSize, long maxWait, TimeUnit unit, int maxQueueSize) {
+        this(batchFunction, maxBatchSize, maxWait, unit, maxQueueSize, 1);
+    }
+
+    /**
+     * @param batchFunction 批处理函数，会被 {@code concurrency} 个线程并发调用
+     * @param maxBatchSize  每批最多的请求数
+     * @param maxWait       批中最早的请求最多等待的时间，为 0 时不等待，队列中已有多少就发多少
+     * @param unit          maxWait 的时间单位
+     * @param maxQueueSize  排队请求数上限，超出时 {@link #submit(BufferedImage)} 立即以
+     *                      {@link RejectedExecutionException} 失败
+     * @param concurrency   最多同时计算的批数，通常取推理引擎的会话个数
+     */
+    public MicroBatchScheduler(BatchFunction batchFunction, int maxBatchSize, long maxWait, TimeUnit unit, int maxQueueSize,
+                               int concurrency) {
+        if (batchFunction == null) {
+            throw new IllegalArgumentException("batchFunction 不能为 null");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize 必须大于 0");
+        }
+        if (maxWait < 0) {
+            throw new IllegalArgumentException("maxWait 不能为负数");
+        }
+        if (maxQueueSize <= 0) {
+            throw new IllegalArgumentException("maxQueueSize 必须大于 0");
+        }
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency 必须大于 0");
+        }
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.queue = new LinkedBlockingQueue<>(maxQueueSize);
+        this.idleWorkers = new Semaphore(concurrency);
+        AtomicInteger workerIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "micro-batch-worker-" + workerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatchLoop, "micro-batch-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * 提交一张图像，立即返回。
+     *
+     * @param image 已解码的图像
+     * @return 该图像的 embedding 及其耗时；调度器已关闭或队列已满时以异常完成
+     */
+    public CompletableFuture<Embedding> submit(BufferedImage image) {
+        if (image == null) {
+            throw new IllegalArgumentException("输入图像不能为 null");
+        }
+        Pending pending = new Pending(image);
+        if (closed) {
+            pending.future.completeExceptionally(new RejectedExecutionException("MicroBatchScheduler 已关闭"));
+        } else if (!queue.offer(pending)) {
+            pending.future.completeExceptionally(new RejectedExecutionException("请求队列已满: " + queue.size()));
+        } else if (closed && queue.remove(pending)) {
+            // close() 与 offer 并发时，确保请求不会滞留在队列中无人处理
+            pending.future.completeExceptionally(new RejectedExecutionException("MicroBatchScheduler 已关闭"));
+        }
+        return pending.future;
+    }
+
+    /**
+     * @return 当前排队中的请求数
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * @return 每批最多的请求数
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return 累计的请求数、批数、平均批量、平均排队等待与平均计算时间
+     */
+    public String getStatistics() {
+        long n = requests.sum();
+        long b = batches.sum();
+        return String.format("requests=%d, batches=%d, failures=%d, avgBatch=%.2f, avgQueueWait=%.3f ms, avgCompute=%.3f ms",
+                n, b, failures.sum(),
+                b == 0 ? 0.0 : (double) n / b,
+                n == 0 ? 0.0 : queueWaitNanos.sum() / 1e6 / n,
+                n == 0 ? 0.0 : computeNanos.sum() / 1e6 / n);
+    }
+
+    private void dispatchLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!closed) {
+                // 等到有空闲的工作线程才开始攒批，其间到达的请求留在队列中
+                idleWorkers.acquire();
+                Pending first;
+                try {
+                    first = queue.take();
+                } catch (InterruptedException e) {
+                    idleWorkers.release();
+                    throw e;
+                }
+                batch.add(first);
+                long deadline = first.enqueuedAt + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    // 先取走已经在队列中的请求，不足时再等到截止时间
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                List<Pending> ready = batch;
+                batch = new ArrayList<>(maxBatchSize);
+                workers.execute(() -> {
+                    try {
+                        runBatch(ready);
+                    } finally {
+                        idleWorkers.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            // close() 中断调度线程；攒了一半的批次已持有工作线程的许可，但不会再提交
+        }
+        for (Pending pending : batch) {
+            pending.future.completeExceptionally(new RejectedExecutionException("MicroBatchScheduler 已关闭"));
+        }
+    }
+
+    private void runBatch(List<Pending> batch) {
+        List<BufferedImage> images = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            images.add(pending.image);
+        }
+        long start = System.nanoTime();
+        List<float[]> embeddings;
+        try {
+            embeddings = batchFunction.apply(images);
+            if (embeddings.size() != batch.size()) {
+                throw new IllegalStateException("批处理结果个数 " + embeddings.size() + " 与输入个数 " + batch.size() + " 不一致");
+            }
+        } catch (Throwable e) {
+            failures.add(batch.size());
+            for (Pending pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+        long compute = System.nanoTime() - start;
+        batches.increment();
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            long wait = start - pending.enqueuedAt;
+            requests.increment();
+            queueWaitNanos.add(wait);
+            computeNanos.add(compute);
+            pending.future.complete(new Embedding(embeddings.get(i), batch.size(), wait, compute));
+        }
+    }
+
+    /**
+     * 停止接收新请求；已经发出的批次会先完成，仍在排队的请求以 {@link RejectedExecutionException} 失败。
+     */
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join();
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new RejectedExecutionException("MicroBatchScheduler 已关闭"));
+        }
+    }
+
+    private static final class Pending {
+        final BufferedImage image;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<Embedding> future = new CompletableFuture<>();
+
+        Pending(BufferedImage image) {
+            this.image = image;
+        }
+    }
+
+    /**
+     * 单个请求的结果。
+     */
+    public static final class Embedding {
+        private final float[] embedding;
+        private final int batchSize;
+        private final long queueWaitNanos;
+        private final long computeNanos;
+
+        Embedding(float[] embedding, int batchSize, long queueWaitNanos, long computeNanos) {
+            this.embedding = embedding;
+            this.batchSize = batchSize;
+            this.queueWaitNanos = queueWaitNanos;
+            this.computeNanos = computeNanos;
+        }
+
+        /**
+         * @return 该图像的 embedding
+         */
+        public float[] getEmbedding() {
+            return embedding;
+        }
+
+        /**
+         * @return 该请求所在批次的大小
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * @return 从提交到所在批次开始计算的等待时间（纳秒）
+         */
+        public long getQueueWaitNanos() {
+            return queueWaitNanos;
+        }
+
+        /**
+         * @return 所在批次的计算时间（纳秒），同一批的请求共享该时间
+         */
+        public long getComputeNanos() {
+            return computeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Embedding[dim=%d, batch=%d, queueWait=%.3f ms, compute=%.3f ms]",
+                    embedding.length, batchSize, queueWaitNanos / 1e6, computeNanos / 1e6);
+        }
+    }
+}
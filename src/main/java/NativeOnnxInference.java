@@ -1,4 +1,6 @@
 import ai.onnxruntime.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.Collections;
@@ -25,31 +27,41 @@ public class NativeOnnxInference {
             return;
         }
 
-        // 使用我们的工具类进行预处理
+        // 使用我们的工具类进行预处理，直接写入本机字节序的直接内存，创建张量时ONNX Runtime无需再拷贝
         System.out.println("开始图像预处理...");
-        float[] preprocessedData = ImagePreprocessingUtils.preprocessImage(imagePath);
-        System.out.println("预处理完成，数据长度: " + preprocessedData.length);
+        long[] inputShape = {1, 3, 224, 224};
+        FloatBuffer inputBuffer = ByteBuffer.allocateDirect(3 * 224 * 224 * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        int inputLength = ImagePreprocessingUtils.preprocessImage(imagePath, inputBuffer, 0);
+        System.out.println("预处理完成，数据长度: " + inputLength);
         
         // 检查预处理后的输入数据
         float inputMin = Float.MAX_VALUE;
         float inputMax = Float.MIN_VALUE;
         float inputSum = 0;
-        for (float value : preprocessedData) {
+        for (int i = 0; i < inputLength; i++) {
+            float value = inputBuffer.get(i);
             if (value < inputMin) inputMin = value;
             if (value > inputMax) inputMax = value;
             inputSum += value;
         }
-        float inputMean = inputSum / preprocessedData.length;
+        float inputMean = inputSum / inputLength;
         
         System.out.println("=== 输入数据统计 ===");
         System.out.println("输入最小值: " + inputMin);
         System.out.println("输入最大值: " + inputMax);
         System.out.println("输入平均值: " + inputMean);
-        System.out.println("前10个输入值: " + Arrays.toString(Arrays.copyOf(preprocessedData, Math.min(10, preprocessedData.length))));
+        float[] firstInputs = new float[Math.min(10, inputLength)];
+        inputBuffer.get(0, firstInputs);
+        System.out.println("前10个输入值: " + Arrays.toString(firstInputs));
 
         // 使用原生ONNX Runtime API
         try (OrtEnvironment env = OrtEnvironment.getEnvironment();
-             OrtSession session = env.createSession(modelPath, new OrtSession.SessionOptions())) {
+             OrtSession.SessionOptions sessionOptions = InferenceEngineConfig.fromSystemProperties().createSessionOptions();
+             OrtSession session = env.createSession(modelPath, sessionOptions);
+             // 创建输入张量：与 inputBuffer 共享内存，随 try 块一起释放
+             OnnxTensor inputTensor = OnnxTensor.createTensor(env, inputBuffer, inputShape)) {
 
             // 获取模型输入输出信息
             System.out.println("模型输入信息:");
@@ -66,10 +78,6 @@ public class NativeOnnxInference {
                 System.out.println("  输出类型: " + ((TensorInfo) outputInfo.getInfo()).type);
             }
 
-            // 创建输入张量
-            long[] inputShape = {1, 3, 224, 224};
-            OnnxTensor inputTensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(preprocessedData), inputShape);
-
             // 执行推理
             System.out.println("执行模型推理...");
             try (OrtSession.Result result = session.run(Collections.singletonMap("pixel_values", inputTensor))) {
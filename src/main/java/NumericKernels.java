@@ -0,0 +1,137 @@
+/**
+ * 预处理、池化与向量检索中的数值热点循环。
+ * <p>
+ * 本类本身即标量实现；当运行时存在 {@code jdk.incubator.vector} 模块
+ * （启动参数 {@code --add-modules jdk.incubator.vector}）时，{@link #get()} 返回基于
+ * Java Vector API 的 {@link VectorKernels}，否则退回标量实现。
+ * 可通过系统属性 {@code -Dembedding.kernels.scalar=true} 强制使用标量实现。
+ * <p>
+ * 两种实现的预处理输出逐位相同；池化与点积的向量化实现改变了求和顺序，结果只在浮点误差范围内一致。
+ */
+public class NumericKernels {
+
+    private static final NumericKernels INSTANCE = select();
+
+    NumericKernels() {}
+
+    /**
+     * @return 运行时选定的内核实现
+     */
+    public static NumericKernels get() {
+        return INSTANCE;
+    }
+
+    private static NumericKernels select() {
+        if (!Boolean.getBoolean("embedding.kernels.scalar")
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (NumericKernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Vector API 不可用，退回标量实现
+            }
+        }
+        return new NumericKernels();
+    }
+
+    /**
+     * @return 是否为向量化实现
+     */
+    public boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * HWC 到 CHW 的去交错与标准化：把一行 {@code 0xRRGGBB} 像素变换后分别写入三个通道平面。
+     *
+     * @param row       一行像素
+     * @param width     像素个数
+     * @param transform rescale / normalize 参数及查找表
+     * @param dst       目标数组
+     * @param index     R 通道在 dst 中的起始位置
+     * @param plane     通道平面的大小，G、B 通道分别位于 index + plane、index + 2 * plane
+     */
+    void rowToCHW(int[] row, int width, ImageProcessorConfig.PixelTransform transform, float[] dst, int index, int plane) {
+        rowToCHW(row, 0, width, transform.table, dst, index, plane);
+    }
+
+    /**
+     * 标量查表实现，处理 row 中 [from, to) 区间的像素。
+     */
+    static void rowToCHW(int[] row, int from, int to, float[] lut, float[] dst, int index, int plane) {
+        for (int x = from; x < to; x++) {
+            int rgb = row[x];
+            int i = index + x;
+            dst[i] = lut[(rgb >> 16) & 0xFF];
+            dst[i + plane] = lut[256 + ((rgb >> 8) & 0xFF)];
+            dst[i + 2 * plane] = lut[512 + (rgb & 0xFF)];
+        }
+    }
+
+    /**
+     * 求 a 中从 from 开始的 length 个元素之和，用于全局平均池化的通道归约。
+     *
+     * @param a      数据
+     * @param from   起始位置
+     * @param length 元素个数
+     * @return 和
+     */
+    float sum(float[] a, int from, int length) {
+        float sum = 0;
+        for (int i = from, end = from + length; i < end; i++) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 求 a 中从 aOffset 开始与 b 中从 bOffset 开始的 length 个元素的点积，用于向量检索。
+     *
+     * @param a       第一个向量所在数组
+     * @param aOffset 第一个向量的起始位置
+     * @param b       第二个向量所在数组
+     * @param bOffset 第二个向量的起始位置
+     * @param length  维度
+     * @return 点积
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        // 四路独立累加，打破加法的依赖链
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * 求 a 中从 aOffset 开始的 length 个元素与 codes 中从 offset 开始的 length 个无符号字节（0 ~ 255）的点积，
+     * 用于 int8 量化编码的打分。
+     *
+     * @param a       float 向量所在数组
+     * @param aOffset float 向量的起始位置
+     * @param codes   编码所在数组
+     * @param offset  编码的起始位置
+     * @param length  维度
+     * @return 点积
+     */
+    float dotUnsignedBytes(float[] a, int aOffset, byte[] codes, int offset, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            s0 += a[aOffset + i] * (codes[offset + i] & 0xFF);
+            s1 += a[aOffset + i + 1] * (codes[offset + i + 1] & 0xFF);
+            s2 += a[aOffset + i + 2] * (codes[offset + i + 2] & 0xFF);
+            s3 += a[aOffset + i + 3] * (codes[offset + i + 3] & 0xFF);
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * (codes[offset + i] & 0xFF);
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
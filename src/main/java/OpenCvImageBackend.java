@@ -0,0 +1,347 @@
+import com.keevol.ai.djl.playground.systemd.StageMetrics;
+import nu.pattern.OpenCV;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+/**
+ * 基于 OpenCV（{@code ai.djl.opencv} 带来的 {@code org.openpnp:opencv}）的图像后端：解码、缩放与中心裁剪都在本地代码中完成。
+ * <p>
+ * {@link #decode} 一次完成全部几何变换，返回的 {@link PreparedImage} 已经是最终尺寸（通常 224x224）的 BGR 字节图像，
+ * 之后在批量调度队列中等待的只有这一小块数据：
+ * <ul>
+ *     <li>解码：{@code imdecode} 到 8 位 BGR 的 Mat，忽略 EXIF 方向（与 ImageIO 一致）。JPEG 在缩放比例足够大时以
+ *     {@code IMREAD_REDUCED_COLOR_2/4/8} 在 DCT 域缩小解码，缩小倍数的选取与 {@link ImageDecoder} 相同，
+ *     保留 {@link ImageProcessorConfig#getDecode_oversampling()} 倍的余量（为 0 时完整解码）；
+ *     DCT 域缩小相当于块内平均，不像点采样那样产生混叠。8 位灰度图像按 ImageIO 给出的 ColorModel 查表转为 sRGB
+ *     （ImageIO 把灰度视为线性灰度，java2d 后端读取像素时同样经过这一转换），再参与缩放；</li>
+ *     <li>缩放：缩放尺寸按源图尺寸由 {@link ImageResampler#shortestEdgeSize} 计算，与 java2d 后端相同；
+ *     缩小时用 {@code INTER_AREA}，放大时双线性与立方插值分别用 {@code INTER_LINEAR} 与 {@code INTER_CUBIC}
+ *     （a = -0.75，PIL 为 -0.5），最近邻用与 PIL 取相同采样位置的 {@code INTER_NEAREST_EXACT}；</li>
+ *     <li>裁剪：缩放结果上的 ROI，只把裁剪窗口拷贝出来。</li>
+ * </ul>
+ * {@link #preprocess} 直接从 BGR 字节以 {@link ImageProcessorConfig#getPixelLut()} 查表写出 CHW，
+ * rescale / normalize 与 java2d 后端逐位相同。不是由本后端解码的 {@link BufferedImage} 没有原始编码数据可用，
+ * 按 java2d 后端处理。
+ * <p>
+ * 与 java2d 后端（即 PIL）的差异来自抗锯齿滤波器的不同（INTER_AREA 为区域平均，PIL 为按比例扩展的三角滤波器）
+ * 以及 JPEG 解码器的舍入，可用 {@link ImageBackendParity} 检查。
+ */
+final class OpenCvImageBackend implements ImageBackend {
+
+    static {
+        // 从 jar 中解出与平台匹配的本地库并加载
+        OpenCV.loadLocally();
+    }
+
+    static final OpenCvImageBackend INSTANCE = new OpenCvImageBackend();
+
+    private static final int DECODE_FLAGS = Imgcodecs.IMREAD_COLOR | Imgcodecs.IMREAD_IGNORE_ORIENTATION;
+
+    private OpenCvImageBackend() {}
+
+    @Override
+    public String getName() {
+        return OPENCV;
+    }
+
+    @Override
+    public BufferedImage decode(File file, ImageProcessorConfig config) throws IOException {
+        if (!file.exists()) {
+            throw new IOException("图像文件不存在: " + file);
+        }
+        return decode(Files.readAllBytes(file.toPath()), config);
+    }
+
+    @Override
+    public BufferedImage decode(InputStream stream, ImageProcessorConfig config) throws IOException {
+        return decode(stream.readAllBytes(), config);
+    }
+
+    /**
+     * @param encoded 图像文件内容
+     * @param config  之后用于预处理的配置
+     * @return 按配置缩放、裁剪后的图像；格式不受支持或数据已损坏时为 null
+     */
+    BufferedImage decode(byte[] encoded, ImageProcessorConfig config) throws IOException {
+        long start = StageMetrics.start();
+        Header header = readHeader(encoded);
+        int reduction = header != null && isJpeg(encoded) ? reductionOf(header.width, header.height, config) : 1;
+        MatOfByte buffer = new MatOfByte(encoded);
+        Mat decoded;
+        try {
+            decoded = Imgcodecs.imdecode(buffer, flagsOf(reduction));
+        } finally {
+            buffer.release();
+        }
+        try {
+            if (decoded.empty()) {
+                return null;
+            }
+            if (header != null && header.grayLut != null) {
+                Mat lut = new Mat(1, 256, CvType.CV_8UC1);
+                try {
+                    lut.put(0, 0, header.grayLut);
+                    Core.LUT(decoded, lut, decoded);
+                } finally {
+                    lut.release();
+                }
+            }
+            StageMetrics.Stage.DECODE.record(start);
+            // 读不出图像头（ImageIO 不支持的格式）时没有缩小解码，解码结果即源图尺寸
+            int width = header != null ? header.width : decoded.cols();
+            int height = header != null ? header.height : decoded.rows();
+            return prepare(decoded, width, height, config);
+        } finally {
+            decoded.release();
+        }
+    }
+
+    /**
+     * 缩放与中心裁剪，把结果拷贝为 {@link PreparedImage}。
+     *
+     * @param decoded 解码结果，可能已经缩小
+     * @param width   源图宽度
+     * @param height  源图高度
+     */
+    private static PreparedImage prepare(Mat decoded, int width, int height, ImageProcessorConfig config) {
+        Mat current = decoded;
+        Mat resized = null;
+        try {
+            if (config.isDo_resize()) {
+                long start = StageMetrics.start();
+                int[] size = ImageResampler.shortestEdgeSize(width, height, config.getShortest_edge());
+                boolean downscale = decoded.cols() > size[0] || decoded.rows() > size[1];
+                resized = new Mat();
+                Imgproc.resize(decoded, resized, new Size(size[0], size[1]), 0, 0,
+                        interpolationOf(config.getResample(), downscale));
+                StageMetrics.Stage.RESIZE.record(start);
+                current = resized;
+            }
+            int cropX = 0;
+            int cropY = 0;
+            int cropWidth = current.cols();
+            int cropHeight = current.rows();
+            if (config.isDo_center_crop()) {
+                cropWidth = config.getCrop_width();
+                cropHeight = config.getCrop_height();
+                if (current.cols() < cropWidth || current.rows() < cropHeight) {
+                    throw new IllegalArgumentException(String.format("输入图像尺寸 (%d, %d) 小于裁剪尺寸 (%d, %d)，无法裁剪",
+                            current.cols(), current.rows(), cropWidth, cropHeight));
+                }
+                cropX = (current.cols() - cropWidth) / 2;
+                cropY = (current.rows() - cropHeight) / 2;
+            }
+            long start = StageMetrics.start();
+            PreparedImage prepared = new PreparedImage(cropWidth, cropHeight, config.getIdentity());
+            Mat window = current.submat(cropY, cropY + cropHeight, cropX, cropX + cropWidth);
+            try {
+                window.get(0, 0, prepared.getBgr());
+            } finally {
+                window.release();
+            }
+            StageMetrics.Stage.PIXEL_READ.record(start);
+            return prepared;
+        } finally {
+            if (resized != null) {
+                resized.release();
+            }
+        }
+    }
+
+    @Override
+    public float[] preprocess(BufferedImage image, ImageProcessorConfig config) {
+        if (!(image instanceof PreparedImage prepared)) {
+            return Java2DImageBackend.INSTANCE.preprocess(image, config);
+        }
+        checkConfig(prepared, config);
+        long start = StageMetrics.start();
+        int plane = prepared.getWidth() * prepared.getHeight();
+        float[] chw = new float[3 * plane];
+        bgrToCHW(prepared.getBgr(), 0, plane, config.getPixelLut(), chw, 0, plane);
+        StageMetrics.Stage.NORMALIZE.record(start);
+        return chw;
+    }
+
+    @Override
+    public int preprocess(BufferedImage image, ImageProcessorConfig config, FloatBuffer dst, int offset) {
+        if (!(image instanceof PreparedImage prepared)) {
+            return Java2DImageBackend.INSTANCE.preprocess(image, config, dst, offset);
+        }
+        checkConfig(prepared, config);
+        long start = StageMetrics.start();
+        int width = prepared.getWidth();
+        int height = prepared.getHeight();
+        int plane = width * height;
+        byte[] bgr = prepared.getBgr();
+        float[] lut = config.getPixelLut();
+        float[] chwRow = new float[3 * width];
+        for (int y = 0; y < height; y++) {
+            bgrToCHW(bgr, y * width, (y + 1) * width, lut, chwRow, 0, width);
+            int index = offset + y * width;
+            dst.put(index, chwRow, 0, width);
+            dst.put(index + plane, chwRow, width, width);
+            dst.put(index + 2 * plane, chwRow, 2 * width, width);
+        }
+        StageMetrics.Stage.NORMALIZE.record(start);
+        return 3 * plane;
+    }
+
+    private static void checkConfig(PreparedImage image, ImageProcessorConfig config) {
+        if (!image.identity.equals(config.getIdentity())) {
+            throw new IllegalArgumentException("OpenCV 后端解码的图像只能以相同的配置预处理");
+        }
+    }
+
+    /**
+     * 把 bgr 中第 [from, to) 个像素查表后分别写入三个通道平面，R 通道从 dst[index] 开始。
+     */
+    static void bgrToCHW(byte[] bgr, int from, int to, float[] lut, float[] dst, int index, int plane) {
+        for (int x = from, p = 3 * from; x < to; x++, p += 3) {
+            int i = index + x - from;
+            dst[i] = lut[bgr[p + 2] & 0xFF];
+            dst[i + plane] = lut[256 + (bgr[p + 1] & 0xFF)];
+            dst[i + 2 * plane] = lut[512 + (bgr[p] & 0xFF)];
+        }
+    }
+
+    /**
+     * JPEG 在 DCT 域缩小的倍数（1/2/4/8）：缩小后的最短边仍不小于目标最短边的
+     * {@link ImageProcessorConfig#getDecode_oversampling()} 倍。
+     */
+    static int reductionOf(int width, int height, ImageProcessorConfig config) {
+        int oversampling = config.getDecode_oversampling();
+        if (!config.isDo_resize() || oversampling <= 0) {
+            return 1;
+        }
+        int[] size = ImageResampler.shortestEdgeSize(width, height, config.getShortest_edge());
+        double scale = Math.min((double) width / size[0], (double) height / size[1]);
+        int reduction = 1;
+        while (reduction < 8 && reduction * 2 <= scale / oversampling) {
+            reduction *= 2;
+        }
+        return reduction;
+    }
+
+    private static int flagsOf(int reduction) {
+        return switch (reduction) {
+            case 2 -> Imgcodecs.IMREAD_REDUCED_COLOR_2 | Imgcodecs.IMREAD_IGNORE_ORIENTATION;
+            case 4 -> Imgcodecs.IMREAD_REDUCED_COLOR_4 | Imgcodecs.IMREAD_IGNORE_ORIENTATION;
+            case 8 -> Imgcodecs.IMREAD_REDUCED_COLOR_8 | Imgcodecs.IMREAD_IGNORE_ORIENTATION;
+            default -> DECODE_FLAGS;
+        };
+    }
+
+    private static int interpolationOf(int resample, boolean downscale) {
+        if (resample == 0) {
+            return Imgproc.INTER_NEAREST_EXACT;
+        }
+        if (downscale) {
+            return Imgproc.INTER_AREA;
+        }
+        return resample == 3 ? Imgproc.INTER_CUBIC : Imgproc.INTER_LINEAR;
+    }
+
+    private static boolean isJpeg(byte[] encoded) {
+        return encoded.length > 2 && (encoded[0] & 0xFF) == 0xFF && (encoded[1] & 0xFF) == 0xD8;
+    }
+
+    /**
+     * 只读取图像头得到尺寸与解码后的颜色模型，ImageIO 不支持的格式返回 null。
+     */
+    private static Header readHeader(byte[] encoded) throws IOException {
+        // 与 ImageDecoder 相同，不经 ImageIO.createImageInputStream，避免缓存到临时文件
+        try (ImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(encoded))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+                byte[] grayLut = types.hasNext() ? grayLutOf(types.next().getColorModel()) : null;
+                return new Header(reader.getWidth(0), reader.getHeight(0), grayLut);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 8 位灰度经 ColorModel 转为 sRGB 后的值（R = G = B），与 {@link ImagePixelReader} 读取灰度图像时相同；
+     * 不是 8 位灰度或转换为恒等映射时返回 null。
+     */
+    static byte[] grayLutOf(ColorModel cm) {
+        if (cm == null || cm.getNumComponents() != 1 || cm.getTransferType() != DataBuffer.TYPE_BYTE
+                || cm.getColorSpace().getType() != ColorSpace.TYPE_GRAY) {
+            return null;
+        }
+        byte[] lut = new byte[256];
+        byte[] pixel = new byte[1];
+        boolean identity = true;
+        for (int v = 0; v < 256; v++) {
+            pixel[0] = (byte) v;
+            lut[v] = (byte) cm.getRGB(pixel);
+            identity &= (lut[v] & 0xFF) == v;
+        }
+        return identity ? null : lut;
+    }
+
+    /**
+     * 图像头中与解码结果有关的信息。
+     */
+    private static final class Header {
+        final int width;
+        final int height;
+        /**
+         * 灰度图像解码后需要的 sRGB 查找表，见 {@link #grayLutOf(ColorModel)}
+         */
+        final byte[] grayLut;
+
+        Header(int width, int height, byte[] grayLut) {
+            this.width = width;
+            this.height = height;
+            this.grayLut = grayLut;
+        }
+    }
+
+    /**
+     * 已按配置缩放、裁剪的 BGR 字节图像（{@link BufferedImage#TYPE_3BYTE_BGR}，与 OpenCV 的字节布局相同），
+     * 记录所用配置的标识，以免被其他配置预处理。
+     */
+    static final class PreparedImage extends BufferedImage {
+        private final String identity;
+
+        private PreparedImage(int width, int height, String identity) {
+            super(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            this.identity = identity;
+        }
+
+        byte[] getBgr() {
+            return ((DataBufferByte) getRaster().getDataBuffer()).getData();
+        }
+    }
+}
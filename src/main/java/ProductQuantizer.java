@@ -0,0 +1,189 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * 乘积量化（Product Quantization）：把向量切分为 {@code subspaces} 段，每段用 k-means 训练出 256 个中心，
+ * 每个向量编码为各段最近中心的编号，每段一个字节。
+ * <p>
+ * 例如 1280 维、80 段时每个向量 80 字节，是 float 的 1/64。打分采用非对称距离（ADC）：
+ * 对每个查询预先计算各段与 256 个中心的点积组成查找表，之后每个编码的打分只是 {@code subspaces} 次查表求和。
+ * <p>
+ * 维度不必整除段数，各段长度最多相差 1。
+ */
+public final class ProductQuantizer implements VectorCodec {
+
+    private static final int CENTROIDS = 256;
+
+    private final int dimension;
+    private final int[] starts;
+    /**
+     * codebooks[s] 为第 s 段的 256 个中心，按行连续存放
+     */
+    private final float[][] codebooks;
+    /**
+     * 各段中心的平方范数，编码时求最近中心用
+     */
+    private final float[][] norms;
+
+    private ProductQuantizer(int dimension, int[] starts, float[][] codebooks) {
+        this.dimension = dimension;
+        this.starts = starts;
+        this.codebooks = codebooks;
+        this.norms = new float[codebooks.length][];
+        for (int s = 0; s < codebooks.length; s++) {
+            norms[s] = squaredNorms(codebooks[s], starts[s + 1] - starts[s]);
+        }
+    }
+
+    /**
+     * 用 k-means 训练各段的中心，各段并行训练。样本会先被归一化。
+     *
+     * @param sample     训练样本，建议至少数千个，过多时可以先随机抽样
+     * @param subspaces  段数，即每个编码的字节数
+     * @param iterations k-means 迭代次数
+     * @param seed       随机种子，相同输入与种子得到相同的码本
+     * @return 量化器
+     */
+    public static ProductQuantizer train(List<float[]> sample, int subspaces, int iterations, long seed) {
+        if (sample.isEmpty()) {
+            throw new IllegalArgumentException("训练样本不能为空");
+        }
+        int dimension = sample.get(0).length;
+        if (subspaces <= 0 || subspaces > dimension) {
+            throw new IllegalArgumentException("段数必须在 1 与维度 " + dimension + " 之间: " + subspaces);
+        }
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("iterations 必须大于 0");
+        }
+        List<float[]> normalized = new ArrayList<>(sample.size());
+        for (float[] vector : sample) {
+            if (vector.length != dimension) {
+                throw new IllegalArgumentException("训练样本的维度不一致: " + vector.length + " != " + dimension);
+            }
+            normalized.add(VectorIndex.normalize(vector));
+        }
+        int[] starts = new int[subspaces + 1];
+        for (int s = 0; s <= subspaces; s++) {
+            starts[s] = (int) ((long) s * dimension / subspaces);
+        }
+        float[][] codebooks = new float[subspaces][];
+        IntStream.range(0, subspaces).parallel().forEach(s ->
+                codebooks[s] = kmeans(normalized, starts[s], starts[s + 1] - starts[s], iterations, new Random(seed + s)));
+        return new ProductQuantizer(dimension, starts, codebooks);
+    }
+
+    /**
+     * 对样本在 [start, start + length) 维上做 k-means，返回 256 个中心。
+     */
+    private static float[] kmeans(List<float[]> sample, int start, int length, int iterations, Random random) {
+        NumericKernels kernels = NumericKernels.get();
+        float[] centroids = new float[CENTROIDS * length];
+        // 以随机选取的样本作为初始中心，样本不足 256 个时重复使用
+        List<float[]> shuffled = new ArrayList<>(sample);
+        Collections.shuffle(shuffled, random);
+        for (int c = 0; c < CENTROIDS; c++) {
+            System.arraycopy(shuffled.get(c % shuffled.size()), start, centroids, c * length, length);
+        }
+        int[] assignment = new int[sample.size()];
+        float[] sums = new float[CENTROIDS * length];
+        int[] counts = new int[CENTROIDS];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            float[] norms = squaredNorms(centroids, length);
+            for (int i = 0; i < sample.size(); i++) {
+                assignment[i] = nearest(kernels, sample.get(i), start, centroids, norms, length);
+            }
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < sample.size(); i++) {
+                float[] vector = sample.get(i);
+                int base = assignment[i] * length;
+                for (int j = 0; j < length; j++) {
+                    sums[base + j] += vector[start + j];
+                }
+                counts[assignment[i]]++;
+            }
+            for (int c = 0; c < CENTROIDS; c++) {
+                if (counts[c] == 0) {
+                    // 空簇：重新取一个随机样本作为中心
+                    System.arraycopy(sample.get(random.nextInt(sample.size())), start, centroids, c * length, length);
+                    continue;
+                }
+                for (int j = 0; j < length; j++) {
+                    centroids[c * length + j] = sums[c * length + j] / counts[c];
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static float[] squaredNorms(float[] centroids, int length) {
+        NumericKernels kernels = NumericKernels.get();
+        float[] norms = new float[CENTROIDS];
+        for (int c = 0; c < CENTROIDS; c++) {
+            norms[c] = kernels.dot(centroids, c * length, centroids, c * length, length);
+        }
+        return norms;
+    }
+
+    /**
+     * 欧氏距离最近的中心：argmin ||x - c||² = argmin (||c||² - 2 x·c)。
+     */
+    private static int nearest(NumericKernels kernels, float[] vector, int start, float[] centroids, float[] norms, int length) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < CENTROIDS; c++) {
+            float distance = norms[c] - 2 * kernels.dot(vector, start, centroids, c * length, length);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    public int getSubspaces() {
+        return codebooks.length;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int codeSize() {
+        return codebooks.length;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] out, int offset) {
+        NumericKernels kernels = NumericKernels.get();
+        for (int s = 0; s < codebooks.length; s++) {
+            out[offset + s] = (byte) nearest(kernels, vector, starts[s], codebooks[s], norms[s], starts[s + 1] - starts[s]);
+        }
+    }
+
+    @Override
+    public Scorer scorer(float[] query) {
+        NumericKernels kernels = NumericKernels.get();
+        int subspaces = codebooks.length;
+        float[] table = new float[subspaces * CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            int length = starts[s + 1] - starts[s];
+            for (int c = 0; c < CENTROIDS; c++) {
+                table[s * CENTROIDS + c] = kernels.dot(query, starts[s], codebooks[s], c * length, length);
+            }
+        }
+        return (codes, offset) -> {
+            float sum = 0;
+            for (int s = 0; s < subspaces; s++) {
+                sum += table[s * CENTROIDS + (codes[offset + s] & 0xFF)];
+            }
+            return sum;
+        };
+    }
+}
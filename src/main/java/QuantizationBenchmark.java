@@ -0,0 +1,174 @@
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 比较 float32、int8 标量量化与乘积量化的内存占用、recall@k 与检索延迟，分别给出不重排序与重排序后的结果。
+ * <p>
+ * 数据可以来自 {@link EmbeddingStore}（此时重排序从数据库读取全精度向量），也可以随机生成（见 {@link HnswBenchmark}，
+ * 此时全精度向量来自内存）。乘积量化分别使用 {@code dimension / 16} 与 {@code dimension / 8} 段，
+ * 即压缩为 float 的 1/64 与 1/32。
+ * <p>
+ * 用法：
+ * <pre>
+ * QuantizationBenchmark &lt;向量个数&gt; &lt;维度&gt; [重排序倍数]
+ * QuantizationBenchmark &lt;embeddings.db&gt; &lt;模型标识&gt; [重排序倍数]
+ * </pre>
+ */
+public final class QuantizationBenchmark {
+
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+    private static final int TRAINING_SAMPLE = 20000;
+    private static final int PQ_ITERATIONS = 15;
+
+    // 私有构造函数，防止实例化
+    private QuantizationBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("用法: QuantizationBenchmark <向量个数|embeddings.db> <维度|模型标识> [重排序倍数]");
+            System.exit(1);
+        }
+        int rerankFactor = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        EmbeddingStore store = null;
+        Map<String, float[]> vectors = new LinkedHashMap<>();
+        try {
+            if (args[0].endsWith(".db") || args[0].endsWith(".sqlite")) {
+                store = new EmbeddingStore(Paths.get(args[0]), args[1]);
+                store.forEach(vectors::put);
+            } else {
+                List<float[]> generated = HnswBenchmark.generate(Integer.parseInt(args[0]), Integer.parseInt(args[1]), new Random(42));
+                for (int i = 0; i < generated.size(); i++) {
+                    vectors.put(Integer.toString(i), generated.get(i));
+                }
+            }
+            if (vectors.size() <= QUERIES) {
+                System.err.println("向量个数必须大于查询个数 " + QUERIES);
+                System.exit(1);
+            }
+            run(vectors, store, rerankFactor);
+        } finally {
+            if (store != null) {
+                store.close();
+            }
+        }
+    }
+
+    private static void run(Map<String, float[]> vectors, EmbeddingStore store, int rerankFactor) throws Exception {
+        List<String> ids = new ArrayList<>(vectors.keySet());
+        int n = ids.size() - QUERIES;
+        List<float[]> queries = new ArrayList<>(QUERIES);
+        for (String id : ids.subList(n, ids.size())) {
+            queries.add(vectors.get(id));
+        }
+        int dimension = queries.get(0).length;
+        Map<String, float[]> data = new HashMap<>();
+        List<float[]> sample = new ArrayList<>(Math.min(n, TRAINING_SAMPLE));
+        for (int i = 0; i < n; i++) {
+            data.put(ids.get(i), vectors.get(ids.get(i)));
+            // 等间隔抽样作为训练样本
+            if (i % Math.max(1, n / TRAINING_SAMPLE) == 0 && sample.size() < TRAINING_SAMPLE) {
+                sample.add(vectors.get(ids.get(i)));
+            }
+        }
+        QuantizedIndex.VectorSource source = store != null ? store : data::get;
+        System.out.println("数据: " + n + " x " + dimension + "，查询: " + QUERIES + "，k=" + K + "，重排序候选: "
+                + K * rerankFactor + "，全精度来源: " + (store != null ? "EmbeddingStore" : "内存"));
+
+        ExactSearchIndex exact = new ExactSearchIndex(dimension);
+        for (int i = 0; i < n; i++) {
+            exact.add(ids.get(i), data.get(ids.get(i)));
+        }
+        List<Set<String>> truth = new ArrayList<>(QUERIES);
+        long[] exactNanos = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            long t = System.nanoTime();
+            List<VectorIndex.Hit> hits = exact.search(queries.get(i), K);
+            exactNanos[i] = System.nanoTime() - t;
+            Set<String> set = new HashSet<>();
+            for (VectorIndex.Hit hit : hits) {
+                set.add(hit.getId());
+            }
+            truth.add(set);
+        }
+
+        System.out.println("编码          字节/向量  内存(MB)  压缩比  训练(s)  recall@" + K + "  平均(us)  重排序recall  重排序平均(us)");
+        long floatBytes = (long) n * dimension * Float.BYTES;
+        System.out.printf("%-12s  %9d  %8.1f  %6.1f  %7s  %9.4f  %8.0f  %12s  %14s%n", "float32", dimension * Float.BYTES,
+                floatBytes / 1e6, 1.0, "-", 1.0, HnswBenchmark.mean(exactNanos) / 1e3, "-", "-");
+
+        List<String> names = new ArrayList<>();
+        List<TrainedCodec> codecs = new ArrayList<>();
+        long start = System.nanoTime();
+        codecs.add(new TrainedCodec(ScalarQuantizer.train(sample), System.nanoTime() - start));
+        names.add("int8");
+        for (int divisor : new int[]{16, 8}) {
+            int subspaces = Math.max(1, dimension / divisor);
+            start = System.nanoTime();
+            codecs.add(new TrainedCodec(ProductQuantizer.train(sample, subspaces, PQ_ITERATIONS, 42), System.nanoTime() - start));
+            names.add("pq" + subspaces);
+        }
+
+        for (int c = 0; c < codecs.size(); c++) {
+            VectorCodec codec = codecs.get(c).codec;
+            QuantizedIndex approximate = new QuantizedIndex(codec, null, 1);
+            QuantizedIndex reranked = new QuantizedIndex(codec, source, rerankFactor);
+            for (int i = 0; i < n; i++) {
+                approximate.add(ids.get(i), data.get(ids.get(i)));
+                reranked.add(ids.get(i), data.get(ids.get(i)));
+            }
+            Result plain = measure(approximate, queries, truth);
+            Result withRerank = measure(reranked, queries, truth);
+            System.out.printf("%-12s  %9d  %8.1f  %6.1f  %7.1f  %9.4f  %8.0f  %12.4f  %14.0f%n", names.get(c), codec.codeSize(),
+                    approximate.getCodeBytes() / 1e6, (double) floatBytes / approximate.getCodeBytes(),
+                    codecs.get(c).trainNanos / 1e9, plain.recall, plain.meanMicros, withRerank.recall, withRerank.meanMicros);
+        }
+    }
+
+    private static Result measure(QuantizedIndex index, List<float[]> queries, List<Set<String>> truth) {
+        for (float[] query : queries) {
+            index.search(query, K);
+        }
+        long[] nanos = new long[queries.size()];
+        int found = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            long t = System.nanoTime();
+            List<VectorIndex.Hit> hits = index.search(queries.get(i), K);
+            nanos[i] = System.nanoTime() - t;
+            for (VectorIndex.Hit hit : hits) {
+                if (truth.get(i).contains(hit.getId())) {
+                    found++;
+                }
+            }
+        }
+        return new Result((double) found / (queries.size() * K), HnswBenchmark.mean(nanos) / 1e3);
+    }
+
+    private static final class TrainedCodec {
+        private final VectorCodec codec;
+        private final long trainNanos;
+
+        TrainedCodec(VectorCodec codec, long trainNanos) {
+            this.codec = codec;
+            this.trainNanos = trainNanos;
+        }
+    }
+
+    private static final class Result {
+        private final double recall;
+        private final double meanMicros;
+
+        Result(double recall, double meanMicros) {
+            this.recall = recall;
+            this.meanMicros = meanMicros;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 在压缩编码上做检索的索引：内存中只保存 {@link VectorCodec} 编码与标识，全精度向量留在磁盘上。
+ * <p>
+ * 检索分两步：先在全部编码上用估算的点积取出 {@code k * rerankFactor} 个候选（与 {@link ExactSearchIndex} 相同的
+ * 并行扫描），再通过 {@link VectorSource}（通常是 {@link EmbeddingStore}）一次读取全部候选的全精度向量，
+ * 按精确的余弦相似度重新排序后取前 k 个。不提供全精度来源时直接返回估算的分数。
+ * <p>
+ * 编码按固定行数分块存放，容量不受单个数组的限制。写入与检索可以并发，写入时会短暂阻塞检索。
+ */
+public final class QuantizedIndex implements VectorIndex {
+
+    /**
+     * 按标识读取全精度向量。
+     */
+    @FunctionalInterface
+    public interface VectorSource {
+        /**
+         * @return 向量，不存在时返回 null
+         */
+        float[] get(String id) throws Exception;
+
+        /**
+         * 批量读取，重排序时每次检索调用一次。默认逐个调用 {@link #get(String)}，
+         * 随机读取代价高的来源（如数据库）应覆盖为一次查询。
+         *
+         * @return 标识到向量的映射，不存在的标识不在其中
+         */
+        default Map<String, float[]> get(Collection<String> ids) throws Exception {
+            Map<String, float[]> vectors = new HashMap<>();
+            for (String id : ids) {
+                float[] vector = get(id);
+                if (vector != null) {
+                    vectors.put(id, vector);
+                }
+            }
+            return vectors;
+        }
+    }
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_ROWS = 1 << CHUNK_BITS;
+    private static final int MIN_ROWS_PER_TASK = 16384;
+
+    private final VectorCodec codec;
+    private final int codeSize;
+    private final VectorSource fullPrecision;
+    private final int rerankFactor;
+    private final ForkJoinPool pool;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<byte[]> chunks = new ArrayList<>();
+    private String[] ids = new String[1024];
+    private int size;
+
+    /**
+     * @param codec         已训练的编码器
+     * @param fullPrecision 全精度向量来源，为 null 时不做重排序
+     * @param rerankFactor  重排序的候选个数为 k 的多少倍，常用 4 ~ 20
+     */
+    public QuantizedIndex(VectorCodec codec, VectorSource fullPrecision, int rerankFactor) {
+        this(codec, fullPrecision, rerankFactor, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param codec         已训练的编码器
+     * @param fullPrecision 全精度向量来源，为 null 时不做重排序
+     * @param rerankFactor  重排序的候选个数为 k 的多少倍
+     * @param pool          执行并行扫描的线程池
+     */
+    public QuantizedIndex(VectorCodec codec, VectorSource fullPrecision, int rerankFactor, ForkJoinPool pool) {
+        if (rerankFactor < 1) {
+            throw new IllegalArgumentException("rerankFactor 必须不小于 1");
+        }
+        this.codec = codec;
+        this.codeSize = codec.codeSize();
+        this.fullPrecision = fullPrecision;
+        this.rerankFactor = rerankFactor;
+        this.pool = pool;
+    }
+
+    @Override
+    public void add(String id, float[] vector) {
+        checkDimension(vector);
+        float[] normalized = VectorIndex.normalize(vector);
+        lock.writeLock().lock();
+        try {
+            if ((size & (CHUNK_ROWS - 1)) == 0 && (size >>> CHUNK_BITS) == chunks.size()) {
+                chunks.add(new byte[CHUNK_ROWS * codeSize]);
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            codec.encode(normalized, chunks.get(size >>> CHUNK_BITS), (size & (CHUNK_ROWS - 1)) * codeSize);
+            ids[size++] = id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Hit> search(float[] query, int k) {
+        checkDimension(query);
+        if (k <= 0) {
+            throw new IllegalArgumentException("k 必须大于 0");
+        }
+        float[] q = VectorIndex.normalize(query);
+        VectorCodec.Scorer scorer = codec.scorer(q);
+        int shortlist = fullPrecision == null ? k : k * rerankFactor;
+        int[] rows;
+        float[] scores;
+        String[] candidates;
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return List.of();
+            }
+            int rowsPerTask = Math.max(MIN_ROWS_PER_TASK, size / (pool.getParallelism() * 4) + 1);
+            TopK top = size <= rowsPerTask
+                    ? new ScanTask(scorer, shortlist, 0, size, rowsPerTask).compute()
+                    : pool.invoke(new ScanTask(scorer, shortlist, 0, size, rowsPerTask));
+            rows = new int[top.size()];
+            scores = new float[top.size()];
+            top.drainDescending(rows, scores);
+            candidates = new String[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                candidates[i] = ids[rows[i]];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return fullPrecision == null ? toHits(candidates, scores, k) : rerank(q, candidates, scores, k);
+    }
+
+    /**
+     * 读取候选的全精度向量重新计算分数。读取失败或不存在的候选保留估算的分数。
+     */
+    private List<Hit> rerank(float[] q, String[] candidates, float[] approximate, int k) {
+        NumericKernels kernels = NumericKernels.get();
+        Map<String, float[]> vectors;
+        try {
+            vectors = fullPrecision.get(Arrays.asList(candidates));
+        } catch (Exception e) {
+            System.err.println("读取全精度向量失败: " + e.getMessage());
+            vectors = Map.of();
+        }
+        TopK top = new TopK(k);
+        for (int i = 0; i < candidates.length; i++) {
+            float score = approximate[i];
+            float[] vector = vectors.get(candidates[i]);
+            if (vector != null && vector.length == q.length) {
+                score = kernels.dot(VectorIndex.normalize(vector), 0, q, 0, q.length);
+            }
+            top.offer(i, score);
+        }
+        int[] order = new int[top.size()];
+        float[] scores = new float[top.size()];
+        int n = top.drainDescending(order, scores);
+        List<Hit> hits = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            hits.add(new Hit(candidates[order[i]], scores[i]));
+        }
+        return hits;
+    }
+
+    private static List<Hit> toHits(String[] candidates, float[] scores, int k) {
+        int n = Math.min(k, candidates.length);
+        List<Hit> hits = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            hits.add(new Hit(candidates[i], scores[i]));
+        }
+        return hits;
+    }
+
+    /**
+     * 对 [from, to) 行的编码打分，行数超过 rowsPerTask 时二分后并行执行，再合并两个子结果。
+     */
+    private final class ScanTask extends RecursiveTask<TopK> {
+        private final VectorCodec.Scorer scorer;
+        private final int k;
+        private final int from;
+        private final int to;
+        private final int rowsPerTask;
+
+        ScanTask(VectorCodec.Scorer scorer, int k, int from, int to, int rowsPerTask) {
+            this.scorer = scorer;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+            this.rowsPerTask = rowsPerTask;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= rowsPerTask) {
+                TopK top = new TopK(k);
+                for (int row = from; row < to; row++) {
+                    top.offer(row, scorer.score(chunks.get(row >>> CHUNK_BITS), (row & (CHUNK_ROWS - 1)) * codeSize));
+                }
+                return top;
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(scorer, k, from, mid, rowsPerTask);
+            left.fork();
+            TopK right = new ScanTask(scorer, k, mid, to, rowsPerTask).compute();
+            TopK merged = left.join();
+            merged.addAll(right);
+            return merged;
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return codec.dimension();
+    }
+
+    /**
+     * @return 编码占用的字节数（不含标识）
+     */
+    public long getCodeBytes() {
+        return (long) size() * codeSize;
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector == null || vector.length != codec.dimension()) {
+            throw new IllegalArgumentException("向量维度 " + (vector == null ? "null" : vector.length) + " 与索引维度 " + codec.dimension() + " 不一致");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.List;
+
+/**
+ * 只读的 embedding 向量索引：按余弦相似度检索与查询最相近的 k 个向量。
+ * <p>
+ * 内存映射的 {@link MappedEmbeddingFile} 等只能检索的实现只实现这个接口；可写入的索引见 {@link VectorIndex}。
+ */
+public interface ReadOnlyVectorIndex {
+
+    /**
+     * 检索与 query 余弦相似度最高的 k 个向量。
+     *
+     * @param query 查询向量，无需预先归一化
+     * @param k     返回的个数
+     * @return 按分数从高到低排列的结果，个数不超过 k
+     */
+    List<Hit> search(float[] query, int k);
+
+    /**
+     * @return 索引中的向量个数
+     */
+    int size();
+
+    /**
+     * @return 向量维度
+     */
+    int dimension();
+
+    /**
+     * 一条检索结果。
+     */
+    final class Hit {
+        private final String id;
+        private final float score;
+
+        public Hit(String id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return 余弦相似度
+         */
+        public float getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return id + "=" + score;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 逐维 int8 标量量化：每一维按训练样本中的最小值与最大值线性映射到 0 ~ 255，每个向量占 {@code dimension} 个字节，
+ * 是 float 的 1/4。
+ * <p>
+ * 打分时把每一维的缩放系数预先乘进查询向量：
+ * {@code q·x ≈ Σ q[j]·min[j] + Σ (q[j]·scale[j])·code[j]}，前一项对每个查询只算一次。
+ */
+public final class ScalarQuantizer implements VectorCodec {
+
+    private final float[] min;
+    private final float[] scale;
+
+    private ScalarQuantizer(float[] min, float[] scale) {
+        this.min = min;
+        this.scale = scale;
+    }
+
+    /**
+     * 按样本中每一维的取值范围训练。样本会先被归一化。
+     *
+     * @param sample 训练样本，越接近实际数据分布越好
+     * @return 量化器
+     */
+    public static ScalarQuantizer train(List<float[]> sample) {
+        if (sample.isEmpty()) {
+            throw new IllegalArgumentException("训练样本不能为空");
+        }
+        int dimension = sample.get(0).length;
+        float[] min = new float[dimension];
+        float[] max = new float[dimension];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        for (float[] vector : sample) {
+            if (vector.length != dimension) {
+                throw new IllegalArgumentException("训练样本的维度不一致: " + vector.length + " != " + dimension);
+            }
+            float[] normalized = VectorIndex.normalize(vector);
+            for (int j = 0; j < dimension; j++) {
+                min[j] = Math.min(min[j], normalized[j]);
+                max[j] = Math.max(max[j], normalized[j]);
+            }
+        }
+        float[] scale = new float[dimension];
+        for (int j = 0; j < dimension; j++) {
+            scale[j] = max[j] > min[j] ? (max[j] - min[j]) / 255f : 0f;
+        }
+        return new ScalarQuantizer(min, scale);
+    }
+
+    @Override
+    public int dimension() {
+        return min.length;
+    }
+
+    @Override
+    public int codeSize() {
+        return min.length;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] out, int offset) {
+        for (int j = 0; j < min.length; j++) {
+            int code = scale[j] == 0 ? 0 : Math.round((vector[j] - min[j]) / scale[j]);
+            out[offset + j] = (byte) Math.max(0, Math.min(255, code));
+        }
+    }
+
+    @Override
+    public Scorer scorer(float[] query) {
+        int dimension = min.length;
+        float[] scaled = new float[dimension];
+        float bias = 0;
+        for (int j = 0; j < dimension; j++) {
+            scaled[j] = query[j] * scale[j];
+            bias += query[j] * min[j];
+        }
+        float base = bias;
+        NumericKernels kernels = NumericKernels.get();
+        return (codes, offset) -> base + kernels.dotUnsignedBytes(scaled, 0, codes, offset, dimension);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * 保留分数最高的 k 个整数编号的有界最小堆，堆顶为当前第 k 高的分数。
+ * <p>
+ * 用基本类型数组实现，插入时不分配对象，供检索时每个线程各自维护一个，最后再合并。
+ */
+final class TopK {
+
+    private final int k;
+    private final int[] ids;
+    private final float[] scores;
+    private int size;
+
+    TopK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k 必须大于 0");
+        }
+        this.k = k;
+        this.ids = new int[k];
+        this.scores = new float[k];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == k;
+    }
+
+    /**
+     * @return 当前第 k 高的分数，不足 k 个时为负无穷
+     */
+    float threshold() {
+        return size < k ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /**
+     * @return 是否被保留
+     */
+    boolean offer(int id, float score) {
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (score <= scores[0]) {
+            return false;
+        }
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0);
+        return true;
+    }
+
+    void addAll(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * 按分数从高到低取出全部元素，之后堆为空。
+     *
+     * @param idsOut    输出编号，长度至少为 {@link #size()}
+     * @param scoresOut 输出分数，长度至少为 {@link #size()}
+     * @return 元素个数
+     */
+    int drainDescending(int[] idsOut, float[] scoresOut) {
+        int n = size;
+        for (int i = n - 1; i >= 0; i--) {
+            idsOut[i] = ids[0];
+            scoresOut[i] = scores[0];
+            size--;
+            ids[0] = ids[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return n;
+    }
+
+    private void siftUp(int i) {
+        int id = ids[i];
+        float score = scores[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= score) {
+                break;
+            }
+            ids[i] = ids[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+
+    private void siftDown(int i) {
+        int id = ids[i];
+        float score = scores[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && scores[child + 1] < scores[child]) {
+                child++;
+            }
+            if (score <= scores[child]) {
+                break;
+            }
+            ids[i] = ids[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+}
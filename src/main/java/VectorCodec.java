@@ -0,0 +1,42 @@
+/**
+ * 把归一化的 embedding 压缩为定长字节编码，并能直接在编码上估算与查询向量的点积。
+ * <p>
+ * 实现需要先用一批样本训练（见各实现的 {@code train} 方法），训练完成后是不可变的，可以被多个线程共享。
+ */
+public interface VectorCodec {
+
+    /**
+     * @return 向量维度
+     */
+    int dimension();
+
+    /**
+     * @return 每个向量编码后的字节数
+     */
+    int codeSize();
+
+    /**
+     * 编码一个向量。
+     *
+     * @param vector 归一化向量
+     * @param out    输出数组
+     * @param offset 写入 out 的起始下标，写入 {@link #codeSize()} 个字节
+     */
+    void encode(float[] vector, byte[] out, int offset);
+
+    /**
+     * 为一个查询向量准备打分器，预先计算与编码无关的部分（如查找表），之后每个编码的打分只需查表或整数运算。
+     *
+     * @param query 归一化查询向量
+     * @return 打分器，可被多个线程同时使用
+     */
+    Scorer scorer(float[] query);
+
+    /**
+     * 估算查询向量与编码向量的点积。
+     */
+    @FunctionalInterface
+    interface Scorer {
+        float score(byte[] codes, int offset);
+    }
+}
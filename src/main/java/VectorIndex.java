@@ -0,0 +1,34 @@
+/**
+ * 可写入的 embedding 向量索引：在 {@link ReadOnlyVectorIndex} 的检索之上增加写入。
+ * <p>
+ * 所有实现都在写入时对向量做 L2 归一化（见 {@link #normalize(float[])}），余弦相似度即归一化向量的点积，分数越大越相似。
+ */
+public interface VectorIndex extends ReadOnlyVectorIndex {
+
+    /**
+     * 写入一个向量。
+     *
+     * @param id     向量的标识，如内容哈希或文件路径
+     * @param vector 向量，长度必须等于 {@link #dimension()}；不会被修改
+     */
+    void add(String id, float[] vector);
+
+    /**
+     * 对向量做 L2 归一化，返回新数组；零向量原样复制。
+     *
+     * @param vector 向量
+     * @return 归一化后的副本
+     */
+    static float[] normalize(float[] vector) {
+        float norm = (float) Math.sqrt(NumericKernels.get().dot(vector, 0, vector, 0, vector.length));
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            System.arraycopy(vector, 0, normalized, 0, vector.length);
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] / norm;
+        }
+        return normalized;
+    }
+}
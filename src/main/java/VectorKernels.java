@@ -0,0 +1,104 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 Java Vector API ({@code jdk.incubator.vector}) 的数值内核，由 {@link NumericKernels#get()} 在运行时按需加载。
+ * <p>
+ * 向量宽度取平台首选宽度（AVX2 为 8 路 float，AVX-512 为 16 路）。去交错时逐通道做与查找表相同的
+ * float 乘、减、除运算，因此输出与标量实现逐位相同；不足一个向量的尾部交给标量实现处理。
+ */
+final class VectorKernels extends NumericKernels {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = FLOATS.withLanes(int.class);
+    /**
+     * 与 INTS 车道数相同的字节向量（最窄为 64 位），每次加载后按 BYTE_PARTS 段扩展为 int
+     */
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, INTS.length() * Byte.SIZE)));
+    private static final int BYTE_PARTS = BYTES.length() / INTS.length();
+
+    VectorKernels() {}
+
+    @Override
+    public boolean isVectorized() {
+        return true;
+    }
+
+    @Override
+    void rowToCHW(int[] row, int width, ImageProcessorConfig.PixelTransform transform, float[] dst, int index, int plane) {
+        int bound = INTS.loopBound(width);
+        int x = 0;
+        for (; x < bound; x += INTS.length()) {
+            IntVector rgb = IntVector.fromArray(INTS, row, x);
+            channel(rgb.lanewise(VectorOperators.LSHR, 16).and(0xFF), transform, 0).intoArray(dst, index + x);
+            channel(rgb.lanewise(VectorOperators.LSHR, 8).and(0xFF), transform, 1).intoArray(dst, index + plane + x);
+            channel(rgb.and(0xFF), transform, 2).intoArray(dst, index + 2 * plane + x);
+        }
+        rowToCHW(row, x, width, transform.table, dst, index, plane);
+    }
+
+    private static FloatVector channel(IntVector value, ImageProcessorConfig.PixelTransform transform, int c) {
+        FloatVector v = (FloatVector) value.convert(VectorOperators.I2F, 0);
+        if (transform.doRescale) {
+            v = v.mul(transform.rescaleFactor);
+        }
+        if (transform.doNormalize) {
+            v = v.sub(transform.mean[c]).div(transform.std[c]);
+        }
+        return v;
+    }
+
+    @Override
+    float sum(float[] a, int from, int length) {
+        FloatVector acc = FloatVector.zero(FLOATS);
+        int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            acc = acc.add(FloatVector.fromArray(FLOATS, a, from + i));
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[from + i];
+        }
+        return sum;
+    }
+
+    @Override
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector acc = FloatVector.zero(FLOATS);
+        int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            acc = FloatVector.fromArray(FLOATS, a, aOffset + i).fma(FloatVector.fromArray(FLOATS, b, bOffset + i), acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    float dotUnsignedBytes(float[] a, int aOffset, byte[] codes, int offset, int length) {
+        FloatVector acc = FloatVector.zero(FLOATS);
+        int bound = BYTES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += BYTES.length()) {
+            ByteVector bytes = ByteVector.fromArray(BYTES, codes, offset + i);
+            for (int part = 0; part < BYTE_PARTS; part++) {
+                IntVector ints = ((IntVector) bytes.convertShape(VectorOperators.B2I, INTS, part)).and(0xFF);
+                FloatVector values = (FloatVector) ints.convert(VectorOperators.I2F, 0);
+                acc = FloatVector.fromArray(FLOATS, a, aOffset + i + part * INTS.length()).fma(values, acc);
+            }
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * (codes[offset + i] & 0xFF);
+        }
+        return sum;
+    }
+}
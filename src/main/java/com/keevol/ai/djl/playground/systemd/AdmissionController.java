@@ -0,0 +1,240 @@
+package com.keevol.ai.djl.playground.systemd;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 推理请求的准入控制：在请求进入推理队列之前决定接受还是立即拒绝，使过载时被接受的请求仍能满足延迟目标，
+ * 而不是所有请求一起排队超时。
+ * <p>
+ * 同时满足以下条件才接受：
+ * <ul>
+ *     <li>全局在途请求数小于 {@code maxInFlight}；</li>
+ *     <li>同一客户端的在途请求数小于 {@code perClientLimit}；</li>
+ *     <li>按 Little 定律预测的延迟不超过 {@code targetLatencyMillis}：由已完成请求的平均延迟 W 与平均在途数 L
+ *     估算吞吐 L / W，新请求的预测延迟为 {@code (inFlight + 1) * W / L}。在途数不超过 {@code minInFlight} 时总是接受，
+ *     以便在负载很低时继续采样；还没有请求完成时只接受这部分。</li>
+ * </ul>
+ * 许可应在请求体完整收到之后申请：W 是服务端的处理时间，不应包含客户端上传的时间，否则慢速或大的上传会占住在途名额、
+ * 抬高 W，推理队列空闲时也会拒绝正常的请求。读取请求体之前可以先用 {@link #checkCapacity()} 只检查全局上限，
+ * 已经饱和时不必再接收请求体。
+ * <p>
+ * 被拒绝时抛出 {@link Rejected}，其中带有建议的 HTTP 状态（全局饱和 503，单个客户端超限 429）与 Retry-After 秒数。
+ * 接受、拒绝次数与在途数见 {@link #getAdmitted()} 等方法。
+ */
+public final class AdmissionController {
+
+    /**
+     * 平均值的平滑系数，越大越快跟随最近的变化
+     */
+    private static final double ALPHA = 0.1;
+
+    private final int maxInFlight;
+    private final int minInFlight;
+    private final int perClientLimit;
+    private final double targetLatencyNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * 各客户端的在途请求数，只通过 {@link ConcurrentHashMap#compute} 原子地读改写，计数为 0 的客户端不在其中
+     */
+    private final ConcurrentHashMap<String, Integer> clients = new ConcurrentHashMap<>();
+    private double averageLatencyNanos;
+    private double averageInFlight;
+    private volatile int peakInFlight;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedOverload = new LongAdder();
+    private final LongAdder rejectedClient = new LongAdder();
+
+    /**
+     * @param maxInFlight         全局在途请求数上限
+     * @param minInFlight         在途数低于该值时不做延迟预测，总是接受
+     * @param perClientLimit      单个客户端的在途请求数上限
+     * @param targetLatencyMillis 延迟目标（毫秒）
+     */
+    public AdmissionController(int maxInFlight, int minInFlight, int perClientLimit, long targetLatencyMillis) {
+        if (maxInFlight <= 0 || perClientLimit <= 0 || targetLatencyMillis <= 0) {
+            throw new IllegalArgumentException("maxInFlight、perClientLimit 与 targetLatencyMillis 必须大于 0");
+        }
+        if (minInFlight < 0 || minInFlight > maxInFlight) {
+            throw new IllegalArgumentException("minInFlight 必须在 0 与 maxInFlight 之间");
+        }
+        this.maxInFlight = maxInFlight;
+        this.minInFlight = minInFlight;
+        this.perClientLimit = perClientLimit;
+        this.targetLatencyNanos = targetLatencyMillis * 1e6;
+    }
+
+    /**
+     * 申请一个准入许可，请求结束（无论成功失败）后必须调用 {@link Permit#release()}。
+     *
+     * @param client 客户端标识，如请求头中的客户端 ID 或远端地址
+     * @return 许可
+     * @throws Rejected 饱和或客户端超限时抛出
+     */
+    public Permit acquire(String client) {
+        boolean[] clientAdmitted = new boolean[1];
+        clients.compute(client, (c, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= perClientLimit) {
+                return count;
+            }
+            clientAdmitted[0] = true;
+            return current + 1;
+        });
+        if (!clientAdmitted[0]) {
+            rejectedClient.increment();
+            throw new Rejected("客户端 " + client + " 的并发请求数超过 " + perClientLimit, 429, retryAfterSeconds());
+        }
+        int current = inFlight.incrementAndGet();
+        if (current > maxInFlight || (current > minInFlight && predictLatencyNanos(current) > targetLatencyNanos)) {
+            inFlight.decrementAndGet();
+            releaseClient(client);
+            rejectedOverload.increment();
+            throw new Rejected("服务繁忙，在途请求数 " + (current - 1), 503, retryAfterSeconds());
+        }
+        if (current > peakInFlight) {
+            peakInFlight = current;
+        }
+        admitted.increment();
+        return new Permit(client, System.nanoTime());
+    }
+
+    /**
+     * 只检查全局在途数上限，不占用名额也不做延迟预测，用于在读取请求体之前快速拒绝。
+     *
+     * @throws Rejected 在途请求数已达 {@code maxInFlight}
+     */
+    public void checkCapacity() {
+        int current = inFlight.get();
+        if (current >= maxInFlight) {
+            rejectedOverload.increment();
+            throw new Rejected("服务繁忙，在途请求数 " + current, 503, retryAfterSeconds());
+        }
+    }
+
+    private synchronized double predictLatencyNanos(int inFlightIncludingNew) {
+        if (averageLatencyNanos == 0) {
+            // 还没有请求完成，超过 minInFlight 的部分先拒绝，避免冷启动时一次放进大量请求
+            return Double.POSITIVE_INFINITY;
+        }
+        return inFlightIncludingNew * averageLatencyNanos / Math.max(1.0, averageInFlight);
+    }
+
+    private synchronized void record(long latencyNanos, int inFlightAtCompletion) {
+        if (averageLatencyNanos == 0) {
+            averageLatencyNanos = latencyNanos;
+            averageInFlight = inFlightAtCompletion;
+        } else {
+            averageLatencyNanos += ALPHA * (latencyNanos - averageLatencyNanos);
+            averageInFlight += ALPHA * (inFlightAtCompletion - averageInFlight);
+        }
+    }
+
+    private void releaseClient(String client) {
+        // 减一与移除在同一次 compute 中完成：返回 null 即移除，同一客户端的并发申请要么在此之前计入，要么之后重新创建
+        clients.compute(client, (c, count) -> count == null || count <= 1 ? null : count - 1);
+    }
+
+    /**
+     * 建议客户端重试的秒数：至少 1 秒，约为当前的平均延迟。
+     */
+    private int retryAfterSeconds() {
+        return (int) Math.max(1, Math.ceil(getAverageLatencyMillis() / 1000));
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getPeakInFlight() {
+        return peakInFlight;
+    }
+
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    public long getRejectedOverload() {
+        return rejectedOverload.sum();
+    }
+
+    public long getRejectedClient() {
+        return rejectedClient.sum();
+    }
+
+    public synchronized double getAverageLatencyMillis() {
+        return averageLatencyNanos / 1e6;
+    }
+
+    /**
+     * @return 当前再接受一个请求时的预测延迟（毫秒），还没有请求完成时为 -1
+     */
+    public double getPredictedLatencyMillis() {
+        double predicted = predictLatencyNanos(inFlight.get() + 1);
+        return Double.isInfinite(predicted) ? -1 : predicted / 1e6;
+    }
+
+    /**
+     * @return 接受、拒绝次数、在途数与延迟估计
+     */
+    public String getStatistics() {
+        return String.format("admitted=%d, rejectedOverload=%d, rejectedClient=%d, inFlight=%d, peakInFlight=%d, avgLatency=%.1f ms, predictedLatency=%.1f ms",
+                getAdmitted(), getRejectedOverload(), getRejectedClient(), getInFlight(), getPeakInFlight(),
+                getAverageLatencyMillis(), getPredictedLatencyMillis());
+    }
+
+    /**
+     * 准入许可，释放时记录本次请求的延迟。
+     */
+    public final class Permit {
+        private final String client;
+        private final long startNanos;
+        private boolean released;
+
+        private Permit(String client, long startNanos) {
+            this.client = client;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * 释放许可，重复调用无效。
+         */
+        public synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            record(System.nanoTime() - startNanos, inFlight.getAndDecrement());
+            releaseClient(client);
+        }
+    }
+
+    /**
+     * 请求被拒绝。
+     */
+    public static final class Rejected extends RejectedExecutionException {
+        private final int status;
+        private final int retryAfterSeconds;
+
+        Rejected(String message, int status, int retryAfterSeconds) {
+            super(message);
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        /**
+         * @return 建议的 HTTP 状态码：503 表示服务饱和，429 表示该客户端超过并发上限
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
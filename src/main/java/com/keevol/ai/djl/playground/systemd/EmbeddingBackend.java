@@ -0,0 +1,97 @@
+package com.keevol.ai.djl.playground.systemd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * HTTP 服务背后的 embedding 能力。
+ * <p>
+ * 推理、索引等实现类都在默认包中，而 Scala 与具名包中的代码无法引用默认包中的类，
+ * 因此 {@code Bootstrap} 只依赖这个接口，按配置项 {@code embedding.backend.class} 指定的类名加载实现，
+ * 实现类需要提供一个 {@link java.util.Properties} 参数的公有构造函数。
+ */
+public interface EmbeddingBackend extends AutoCloseable {
+
+    /**
+     * 解码图像并提交推理。解码在调用线程上同步进行，调用方不应是事件循环线程；推理异步执行。
+     *
+     * @param image 图像文件内容
+     * @return embedding；推理队列已满或服务已关闭时以 {@link java.util.concurrent.RejectedExecutionException} 完成
+     * @throws IllegalArgumentException 图像无法解码时抛出
+     * @throws IOException              读取图像失败时抛出
+     */
+    CompletionStage<float[]> embed(InputStream image) throws IOException;
+
+    /**
+     * 检索与 query 余弦相似度最高的 k 个向量，同步执行，调用方不应是事件循环线程。
+     *
+     * @param query 查询向量
+     * @param k     返回的个数
+     * @return 按分数从高到低排列的结果
+     * @throws IllegalArgumentException      查询向量的维度与索引不一致时抛出
+     * @throws UnsupportedOperationException 未配置向量索引时抛出
+     */
+    SearchResult search(float[] query, int k);
+
+    /**
+     * 以索引中已有的向量为查询，不需要推理。结果包含该向量本身。
+     *
+     * @param id 向量标识
+     * @param k  返回的个数
+     * @return 按分数从高到低排列的结果
+     * @throws java.util.NoSuchElementException 索引中没有该标识时抛出
+     * @throws UnsupportedOperationException    未配置向量索引时抛出
+     */
+    SearchResult searchById(String id, int k);
+
+    /**
+     * @return 已提交、尚未开始推理的请求数
+     */
+    int getQueueDepth();
+
+    /**
+     * @return 运行统计，用于日志与监控
+     */
+    String getStatistics();
+
+    @Override
+    void close();
+
+    /**
+     * 检索结果：按分数从高到低排列的标识与分数，用数组保存以便大 k 时顺序输出。
+     */
+    final class SearchResult {
+        private final String[] ids;
+        private final float[] scores;
+        private final long searchNanos;
+
+        public SearchResult(String[] ids, float[] scores, long searchNanos) {
+            if (ids.length != scores.length) {
+                throw new IllegalArgumentException("ids 与 scores 的长度不一致");
+            }
+            this.ids = ids;
+            this.scores = scores;
+            this.searchNanos = searchNanos;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        public String getId(int i) {
+            return ids[i];
+        }
+
+        public float getScore(int i) {
+            return scores[i];
+        }
+
+        /**
+         * @return 检索本身的耗时（纳秒），不含推理与输出
+         */
+        public long getSearchNanos() {
+            return searchNanos;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.keevol.ai.djl.playground.systemd;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的延迟直方图，记录纳秒级耗时并估算分位数。
+ * <p>
+ * 桶按对数-线性划分（与 HdrHistogram 的思路相同）：小于 {@code 2^SUB_BITS} 纳秒的值各占一个桶，
+ * 之后每个 2 的幂区间再均分为 {@code 2^SUB_BITS} 个子桶，相对误差不超过 1/32（约 3%）。
+ * 超过约 18 分钟的值计入最后一个桶。
+ * <p>
+ * {@link #record(long)} 只做一次数组槽位的原子自增与两次 {@link LongAdder} 累加，不加锁、不分配对象，
+ * 可以放在每张图像都会经过的热路径上。读取通过 {@link #snapshot()} 取得某一时刻的副本；
+ * 并发写入时副本中的计数与总和之间可能相差正在进行的几次记录，对监控用途无影响。
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /**
+     * 可区分的最大值的二进制位数，2^40 纳秒约 18 分钟
+     */
+    private static final int MAX_BITS = 40;
+    private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * 记录一次耗时，负值按 0 计。
+     *
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sumNanos.add(value);
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * @return 当前计数的副本
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count.sum(), sumNanos.sum(), maxNanos.get());
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_BITS) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return 桶所覆盖区间的中点，作为落在该桶中的值的估计
+     */
+    static long valueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return (SUB_BUCKETS + sub) * width + width / 2;
+    }
+
+    /**
+     * 直方图在某一时刻的副本。
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumNanos;
+        private final long maxNanos;
+
+        private Snapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * 与较早的副本相减，得到两次取样之间的增量，用于按周期输出。
+         * 区间内的最大值无法精确得知，取增量中最高非空桶的估计值。
+         *
+         * @param previous 同一直方图较早的副本
+         * @return 区间内的记录
+         */
+        public Snapshot since(Snapshot previous) {
+            long[] delta = new long[counts.length];
+            long max = 0;
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] = counts[i] - previous.counts[i];
+                if (delta[i] > 0) {
+                    max = valueOf(i);
+                }
+            }
+            return new Snapshot(delta, count - previous.count, sumNanos - previous.sumNanos, Math.min(max, maxNanos));
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSumNanos() {
+            return sumNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) sumNanos / count;
+        }
+
+        /**
+         * @param quantile 分位，范围 (0, 1]，如 0.99
+         * @return 分位数的估计值（纳秒），没有记录时为 0
+         */
+        public long getValueAtQuantile(double quantile) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(valueOf(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.keevol.ai.djl.playground.systemd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * embedding 路径上各阶段的耗时直方图与计数，用于在不挂 profiler 的情况下找出超出延迟预算的阶段。
+ * <p>
+ * 每个 {@link Stage} 一个进程级的 {@link LatencyHistogram}，记录每次调用的耗时；批量调用（推理、池化）
+ * 记为一次耗时，处理的图像数另计入 {@link Stage#getItems()}。用法：
+ * <pre>{@code
+ * long start = StageMetrics.start();
+ * ... 阶段的工作 ...
+ * StageMetrics.Stage.RESIZE.record(start);
+ * }</pre>
+ * 读取方式：
+ * <ul>
+ *     <li>{@link #startReporter(long, TimeUnit)} 按周期把区间内的分位数输出到名为 {@code metrics} 的 logger；</li>
+ *     <li>{@link #appendPrometheus(StringBuilder)} 输出 Prometheus 文本格式（summary），由 HTTP 服务的
+ *     {@code GET /metrics} 暴露。</li>
+ * </ul>
+ * 可通过系统属性 {@code -Dembedding.metrics.enabled=false} 或 {@link #setEnabled(boolean)} 关闭，
+ * 关闭后 {@link #start()} 返回 0，各阶段的记录直接跳过。
+ */
+public final class StageMetrics {
+
+    private static final Logger metricsLogger = LoggerFactory.getLogger("metrics");
+
+    private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("embedding.metrics.enabled"));
+
+    /**
+     * embedding 路径上的阶段，按执行顺序排列。
+     */
+    public enum Stage {
+        /**
+         * 图像文件解码为 BufferedImage
+         */
+        DECODE("decode"),
+        /**
+         * 按最短边缩放；同时开启中心裁剪时由 {@code ImageResampler} 一次完成，耗时全部计入本阶段
+         */
+        RESIZE("resize"),
+        /**
+         * 单独的中心裁剪（不缩放时）
+         */
+        CROP("crop"),
+        /**
+         * 从栅格按行读取像素
+         */
+        PIXEL_READ("pixel_read"),
+        /**
+         * rescale / normalize 与 HWC 到 CHW 的去交错，包括写入目标缓冲区
+         */
+        NORMALIZE("normalize"),
+        /**
+         * 租用输入缓冲区并建立输入张量
+         */
+        TENSOR("tensor"),
+        /**
+         * {@code session.run}
+         */
+        INFERENCE("inference"),
+        /**
+         * 读出模型输出并做全局平均池化
+         */
+        POOLING("pooling");
+
+        private final String label;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder items = new LongAdder();
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @param start {@link StageMetrics#start()} 的返回值
+         */
+        public void record(long start) {
+            record(start, 1);
+        }
+
+        /**
+         * @param start {@link StageMetrics#start()} 的返回值，为 0（未启用）时不记录
+         * @param count 本次处理的图像数
+         */
+        public void record(long start, int count) {
+            if (start != 0) {
+                recordNanos(System.nanoTime() - start, count);
+            }
+        }
+
+        /**
+         * 直接记录一段已经测得的耗时，用于在循环中累计的阶段。
+         *
+         * @param nanos 耗时（纳秒）
+         * @param count 本次处理的图像数
+         */
+        public void recordNanos(long nanos, int count) {
+            histogram.record(nanos);
+            items.add(count);
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        /**
+         * @return 经过本阶段的图像数
+         */
+        public long getItems() {
+            return items.sum();
+        }
+    }
+
+    private StageMetrics() {}
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        StageMetrics.enabled = enabled;
+    }
+
+    /**
+     * @return 阶段开始的时间戳（{@link System#nanoTime()}），未启用时为 0
+     */
+    public static long start() {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        // nanoTime 恰好为 0 的概率可以忽略，这里仍避开它，以免与“未启用”混淆
+        return now == 0 ? 1 : now;
+    }
+
+    /**
+     * 按周期把各阶段在该周期内的次数与 p50/p99/p999 输出到 {@code metrics} logger，没有记录的阶段不输出。
+     *
+     * @param period 周期
+     * @param unit   周期的单位
+     * @return 关闭后停止输出
+     */
+    public static AutoCloseable startReporter(long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period 必须大于 0");
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stage-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Stage[] stages = Stage.values();
+        LatencyHistogram.Snapshot[] previous = new LatencyHistogram.Snapshot[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            previous[i] = stages[i].histogram.snapshot();
+        }
+        ScheduledFuture<?> task = scheduler.scheduleAtFixedRate(() -> {
+            for (int i = 0; i < stages.length; i++) {
+                LatencyHistogram.Snapshot current = stages[i].histogram.snapshot();
+                LatencyHistogram.Snapshot interval = current.since(previous[i]);
+                previous[i] = current;
+                if (interval.getCount() > 0) {
+                    metricsLogger.info(String.format(Locale.ROOT,
+                            "stage=%s count=%d mean=%.3fms p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms",
+                            stages[i].label, interval.getCount(), interval.getMeanNanos() / 1e6,
+                            interval.getValueAtQuantile(0.5) / 1e6, interval.getValueAtQuantile(0.99) / 1e6,
+                            interval.getValueAtQuantile(0.999) / 1e6, interval.getMaxNanos() / 1e6));
+                }
+            }
+        }, period, period, unit);
+        return () -> {
+            task.cancel(false);
+            scheduler.shutdown();
+        };
+    }
+
+    /**
+     * 以 Prometheus 文本格式（0.0.4）追加各阶段自进程启动以来的累计指标：
+     * {@code embedding_stage_seconds} 为 summary（分位 0.5/0.99/0.999、_sum、_count），
+     * {@code embedding_stage_max_seconds} 为最大耗时，{@code embedding_stage_items_total} 为处理的图像数。
+     *
+     * @param out 输出
+     * @return out
+     */
+    public static StringBuilder appendPrometheus(StringBuilder out) {
+        Stage[] stages = Stage.values();
+        LatencyHistogram.Snapshot[] snapshots = new LatencyHistogram.Snapshot[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            snapshots[i] = stages[i].histogram.snapshot();
+        }
+
+        out.append("# HELP embedding_stage_seconds Latency of each stage of the embedding path.\n");
+        out.append("# TYPE embedding_stage_seconds summary\n");
+        for (int i = 0; i < stages.length; i++) {
+            LatencyHistogram.Snapshot s = snapshots[i];
+            String stage = stages[i].label;
+            appendSample(out, "embedding_stage_seconds", stage, "0.5", s.getValueAtQuantile(0.5) / 1e9);
+            appendSample(out, "embedding_stage_seconds", stage, "0.99", s.getValueAtQuantile(0.99) / 1e9);
+            appendSample(out, "embedding_stage_seconds", stage, "0.999", s.getValueAtQuantile(0.999) / 1e9);
+            appendSample(out, "embedding_stage_seconds_sum", stage, null, s.getSumNanos() / 1e9);
+            appendSample(out, "embedding_stage_seconds_count", stage, null, s.getCount());
+        }
+        out.append("# HELP embedding_stage_max_seconds Maximum latency of each stage since start.\n");
+        out.append("# TYPE embedding_stage_max_seconds gauge\n");
+        for (int i = 0; i < stages.length; i++) {
+            appendSample(out, "embedding_stage_max_seconds", stages[i].label, null, snapshots[i].getMaxNanos() / 1e9);
+        }
+        out.append("# HELP embedding_stage_items_total Images processed by each stage.\n");
+        out.append("# TYPE embedding_stage_items_total counter\n");
+        for (Stage stage : stages) {
+            appendSample(out, "embedding_stage_items_total", stage.label, null, stage.getItems());
+        }
+        return out;
+    }
+
+    private static void appendSample(StringBuilder out, String name, String stage, String quantile, double value) {
+        out.append(name).append("{stage=\"").append(stage).append('"');
+        if (quantile != null) {
+            out.append(",quantile=\"").append(quantile).append('"');
+        }
+        out.append("} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+}
@@ -1,12 +1,415 @@
 package com.keevol.ai.djl.playground.systemd
 
+import java.io.InputStream
+import java.lang.reflect.InvocationTargetException
+import java.util.{Locale, NoSuchElementException, Properties}
+import java.util.concurrent.{Callable, CompletionException, CompletionStage, RejectedExecutionException, TimeUnit}
+
+import io.vertx.core.buffer.Buffer
+import io.vertx.core.http.{HttpServerOptions, HttpServerResponse}
+import io.vertx.core.json.{DecodeException, JsonArray, JsonObject}
+import io.vertx.core.{Future, Vertx, VertxOptions}
+import io.vertx.ext.web.{Router, RoutingContext}
 import org.slf4j.LoggerFactory
 
+/**
+ * embedding HTTP 服务。
+ *
+ *  - `POST /embed`：请求体为图像文件内容（任意 ImageIO 支持的格式），返回 `{"dimension": n, "embedding": [...]}`；
+ *  - `POST /search?k=10`：请求体为图像时先推理再检索；为 JSON `{"id": "...", "k": 10}` 时以索引中已有的向量检索；
+ *  - `GET /search/:id?k=10`：以索引中已有的向量检索，不需要推理；
+ *  - `GET /stats`：准入控制的计数、在途请求数与推理队列深度；
+ *  - `GET /metrics`：Prometheus 文本格式的各阶段耗时分位数（见 [[StageMetrics]]）与准入控制指标。
+ *
+ * 需要推理的请求（`/embed` 与以图像检索）先经过 [[AdmissionController]]：服务饱和时立即以 503 拒绝，
+ * 单个客户端（请求头 `X-Client-Id`，缺省为远端地址）超过并发上限时以 429 拒绝，均带 `Retry-After`，
+ * 而不是让请求在推理队列中排队直到超时。
+ *
+ * 检索结果以分块传输的 NDJSON 输出，每行 `{"rank": 1, "id": "...", "score": 0.93}`，按块写出并遵守写队列的背压，
+ * 响应头 `X-Search-Time-Ms` 为检索本身的耗时。
+ *
+ * 各阶段的耗时还按 `server.metrics.report.interval.seconds` 周期输出到 `metrics` logger，为 0 时不输出。
+ *
+ * 请求体直接从内存中的 [[Buffer]] 解码，不落临时文件；解码在 worker 线程上进行，推理由后端的微批调度器执行，
+ * 事件循环只负责收发与序列化。配置见 `application.properties`，同名的系统属性优先。
+ */
 object Bootstrap {
   private val logger = LoggerFactory.getLogger("Bootstrap")
 
+  private val DefaultBackendClass = "EmbeddingServiceBackend"
+  private val DefaultK = 10
+  private val ClientIdHeader = "X-Client-Id"
+  /**
+   * 每次写出的结果行数
+   */
+  private val LinesPerChunk = 512
+
   def main(args: Array[String]): Unit = {
+    val config = loadConfig()
+    val host = config.getProperty("server.host", "localhost")
+    val port = config.getProperty("server.port", "1979").toInt
+    val bodyLimit = config.getProperty("server.body.limit.bytes", (20 * 1024 * 1024).toString).toLong
+    val workerPoolSize = config.getProperty("server.worker.pool.size", (Runtime.getRuntime.availableProcessors() * 2).toString).toInt
+    val maxK = config.getProperty("embedding.search.max.k", "10000").toInt
+    val admission = new AdmissionController(
+      config.getProperty("server.admission.max.in.flight", "64").toInt,
+      config.getProperty("server.admission.min.in.flight", "4").toInt,
+      config.getProperty("server.admission.per.client.max", "8").toInt,
+      config.getProperty("server.admission.target.latency.millis", "500").toLong)
+    StageMetrics.setEnabled(config.getProperty("embedding.metrics.enabled", "true").toBoolean)
+    val reportInterval = config.getProperty("server.metrics.report.interval.seconds", "60").toLong
+
+    val backend = createBackend(config)
+    val vertx = Vertx.vertx(new VertxOptions().setWorkerPoolSize(workerPoolSize))
+
+    val router = Router.router(vertx)
+    router.post("/embed").handler(ctx => admitBody(ctx, admission, bodyLimit)(body => embed(vertx, backend, ctx, body)))
+    router.post("/search").handler(ctx => {
+      if (isJson(ctx)) {
+        readBody(ctx, bodyLimit, body => search(vertx, backend, ctx, body, maxK))
+      } else {
+        admitBody(ctx, admission, bodyLimit)(body => search(vertx, backend, ctx, body, maxK))
+      }
+    })
+    router.get("/search/:id").handler(ctx => parseK(ctx, maxK).foreach(k => searchById(vertx, backend, ctx, ctx.pathParam("id"), k)))
+    router.get("/stats").handler(ctx => stats(ctx, admission, backend))
+    router.get("/metrics").handler(ctx => metrics(ctx, admission, backend))
+
+    val reporter = if (StageMetrics.isEnabled && reportInterval > 0) Some(StageMetrics.startReporter(reportInterval, TimeUnit.SECONDS)) else None
+
+    sys.addShutdownHook {
+      logger.info("正在关闭 embedding 服务: {}", admission.getStatistics + "; " + backend.getStatistics)
+      reporter.foreach(_.close())
+      vertx.close().toCompletionStage.toCompletableFuture.join()
+      backend.close()
+    }
+
+    vertx.createHttpServer(new HttpServerOptions().setHost(host).setPort(port))
+      .requestHandler(router)
+      .listen()
+      .onSuccess(server => logger.info("embedding 服务已启动: http://{}:{}", host, server.actualPort()))
+      .onFailure(e => {
+        logger.error("embedding 服务启动失败", e)
+        System.exit(1)
+      })
+  }
+
+  /**
+   * 读取 classpath 中的 application.properties，以 `server.` 或 `embedding.` 开头的系统属性覆盖文件中的值。
+   */
+  private def loadConfig(): Properties = {
+    val config = new Properties()
+    val in = getClass.getClassLoader.getResourceAsStream("application.properties")
+    if (in != null) {
+      try config.load(in) finally in.close()
+    }
+    System.getProperties.stringPropertyNames().forEach(name => {
+      if (name.startsWith("server.") || name.startsWith("embedding.")) {
+        config.setProperty(name, System.getProperty(name))
+      }
+    })
+    config
+  }
+
+  private def createBackend(config: Properties): EmbeddingBackend = {
+    val className = config.getProperty("embedding.backend.class", DefaultBackendClass)
+    try {
+      Class.forName(className).getConstructor(classOf[Properties]).newInstance(config).asInstanceOf[EmbeddingBackend]
+    } catch {
+      case e: InvocationTargetException => throw e.getCause
+    }
+  }
+
+  /**
+   * 读取请求体后申请准入许可再执行 work，许可在响应结束或连接关闭时释放，被拒绝时以 503/429 结束。
+   * 许可在请求体收齐之后才申请，准入控制的延迟估计不包含客户端上传的时间；
+   * 读取之前只检查全局在途上限，已经饱和时直接以 503 结束，不读取请求体。
+   */
+  private def admitBody(ctx: RoutingContext, admission: AdmissionController, bodyLimit: Long)(work: Buffer => Unit): Unit = {
+    try admission.checkCapacity() catch {
+      case e: AdmissionController.Rejected =>
+        handleFailure(ctx, e)
+        return
+    }
+    readBody(ctx, bodyLimit, body => {
+      val permit = try Some(admission.acquire(clientOf(ctx))) catch {
+        case e: AdmissionController.Rejected =>
+          handleFailure(ctx, e)
+          None
+      }
+      permit.foreach(p => {
+        ctx.addEndHandler(_ => p.release())
+        work(body)
+      })
+    })
+  }
+
+  private def clientOf(ctx: RoutingContext): String = {
+    val id = ctx.request().getHeader(ClientIdHeader)
+    if (id != null && id.nonEmpty) {
+      id
+    } else {
+      val address = ctx.request().remoteAddress()
+      if (address == null) "unknown" else address.hostAddress()
+    }
+  }
+
+  private def isJson(ctx: RoutingContext): Boolean = {
+    val contentType = ctx.request().getHeader("Content-Type")
+    contentType != null && contentType.startsWith("application/json")
+  }
+
+  private def stats(ctx: RoutingContext, admission: AdmissionController, backend: EmbeddingBackend): Unit = {
+    ctx.response()
+      .putHeader("Content-Type", "application/json")
+      .end(new JsonObject()
+        .put("admitted", admission.getAdmitted)
+        .put("rejectedOverload", admission.getRejectedOverload)
+        .put("rejectedClient", admission.getRejectedClient)
+        .put("inFlight", admission.getInFlight)
+        .put("peakInFlight", admission.getPeakInFlight)
+        .put("averageLatencyMillis", admission.getAverageLatencyMillis)
+        .put("predictedLatencyMillis", admission.getPredictedLatencyMillis)
+        .put("queueDepth", backend.getQueueDepth)
+        .encode())
+  }
+
+  private def metrics(ctx: RoutingContext, admission: AdmissionController, backend: EmbeddingBackend): Unit = {
+    val out = StageMetrics.appendPrometheus(new java.lang.StringBuilder(4096))
+    appendMetric(out, "embedding_admission_admitted_total", "counter", admission.getAdmitted)
+    appendMetric(out, "embedding_admission_rejected_overload_total", "counter", admission.getRejectedOverload)
+    appendMetric(out, "embedding_admission_rejected_client_total", "counter", admission.getRejectedClient)
+    appendMetric(out, "embedding_admission_in_flight", "gauge", admission.getInFlight)
+    appendMetric(out, "embedding_inference_queue_depth", "gauge", backend.getQueueDepth)
+    ctx.response()
+      .putHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8")
+      .end(out.toString)
+  }
+
+  private def appendMetric(out: java.lang.StringBuilder, name: String, metricType: String, value: Long): Unit = {
+    out.append("# TYPE ").append(name).append(' ').append(metricType).append('\n')
+    out.append(name).append(' ').append(value).append('\n')
+  }
+
+  /**
+   * 把请求体读入内存中的 [[Buffer]]，超过 limit 时以 413 结束。
+   *
+   * 不使用 BodyHandler：客户端常以表单类型上传原始图像字节，BodyHandler 会尝试按表单解析请求体。
+   */
+  private def readBody(ctx: RoutingContext, limit: Long, handler: Buffer => Unit): Unit = {
+    val request = ctx.request()
+    val declared = request.getHeader("Content-Length")
+    if (declared != null && declared.toLong > limit) {
+      fail(ctx, 413, "请求体超过 " + limit + " 字节")
+      return
+    }
+    val body = Buffer.buffer(if (declared != null) declared.toInt else 64 * 1024)
+    request.handler(chunk => {
+      if (!ctx.response().ended()) {
+        body.appendBuffer(chunk)
+        if (body.length() > limit) {
+          fail(ctx, 413, "请求体超过 " + limit + " 字节")
+          request.connection().close()
+        }
+      }
+    })
+    request.endHandler(_ => if (!ctx.response().ended()) handler(body))
+    request.exceptionHandler(e => logger.warn("读取请求体失败: {}", e.getMessage))
+  }
+
+  private def embed(vertx: Vertx, backend: EmbeddingBackend, ctx: RoutingContext, body: Buffer): Unit = {
+    if (body.length() == 0) {
+      fail(ctx, 400, "请求体为空")
+      return
+    }
+    val context = vertx.getOrCreateContext()
+    vertx.executeBlocking(new Callable[CompletionStage[Array[Float]]] {
+      override def call(): CompletionStage[Array[Float]] = backend.embed(new BufferInputStream(body))
+    }, false)
+      .compose(stage => Future.fromCompletionStage(stage, context))
+      .onSuccess(embedding => {
+        val values = new JsonArray(new java.util.ArrayList[AnyRef](embedding.length))
+        embedding.foreach(v => values.add(v))
+        ctx.response()
+          .putHeader("Content-Type", "application/json")
+          .end(new JsonObject().put("dimension", embedding.length).put("embedding", values).encode())
+      })
+      .onFailure(e => handleFailure(ctx, e))
+  }
+
+  private def search(vertx: Vertx, backend: EmbeddingBackend, ctx: RoutingContext, body: Buffer, maxK: Int): Unit = {
+    val queryK = parseK(ctx, maxK)
+    if (queryK.isEmpty) {
+      return
+    }
+    if (isJson(ctx)) {
+      val request = try body.toJsonObject catch {
+        case e: DecodeException =>
+          fail(ctx, 400, "请求体不是合法的 JSON: " + e.getMessage)
+          return
+      }
+      val id = request.getString("id")
+      val k = request.getInteger("k", queryK.get)
+      if (id == null || id.isEmpty) {
+        fail(ctx, 400, "缺少 id")
+      } else if (k <= 0 || k > maxK) {
+        fail(ctx, 400, "k 必须在 1 与 " + maxK + " 之间")
+      } else {
+        searchById(vertx, backend, ctx, id, k)
+      }
+      return
+    }
+    if (body.length() == 0) {
+      fail(ctx, 400, "请求体为空")
+      return
+    }
+    val context = vertx.getOrCreateContext()
+    vertx.executeBlocking(new Callable[CompletionStage[Array[Float]]] {
+      override def call(): CompletionStage[Array[Float]] = backend.embed(new BufferInputStream(body))
+    }, false)
+      .compose(stage => Future.fromCompletionStage(stage, context))
+      .compose(embedding => vertx.executeBlocking(new Callable[EmbeddingBackend.SearchResult] {
+        override def call(): EmbeddingBackend.SearchResult = backend.search(embedding, queryK.get)
+      }, false))
+      .onSuccess(result => streamHits(ctx, result))
+      .onFailure(e => handleFailure(ctx, e))
+  }
+
+  private def searchById(vertx: Vertx, backend: EmbeddingBackend, ctx: RoutingContext, id: String, k: Int): Unit = {
+    vertx.executeBlocking(new Callable[EmbeddingBackend.SearchResult] {
+      override def call(): EmbeddingBackend.SearchResult = backend.searchById(id, k)
+    }, false)
+      .onSuccess(result => streamHits(ctx, result))
+      .onFailure(e => handleFailure(ctx, e))
+  }
+
+  /**
+   * 解析查询参数 k，不合法时以 400 结束并返回 None。
+   */
+  private def parseK(ctx: RoutingContext, maxK: Int): Option[Int] = {
+    val value = ctx.queryParams().get("k")
+    val k = if (value == null) DefaultK else try value.toInt catch {
+      case _: NumberFormatException => -1
+    }
+    if (k <= 0 || k > maxK) {
+      fail(ctx, 400, "k 必须在 1 与 " + maxK + " 之间")
+      None
+    } else {
+      Some(k)
+    }
+  }
+
+  private def streamHits(ctx: RoutingContext, result: EmbeddingBackend.SearchResult): Unit = {
+    ctx.response()
+      .setChunked(true)
+      .putHeader("Content-Type", "application/x-ndjson")
+      .putHeader("X-Search-Time-Ms", String.format(Locale.ROOT, "%.3f", Double.box(result.getSearchNanos / 1e6)))
+    writeHits(ctx.response(), result, 0)
+  }
+
+  /**
+   * 从第 from 条开始按块写出结果，写队列满时等 drain 后继续。
+   */
+  private def writeHits(response: HttpServerResponse, result: EmbeddingBackend.SearchResult, from: Int): Unit = {
+    var i = from
+    while (i < result.size()) {
+      val end = math.min(result.size(), i + LinesPerChunk)
+      val chunk = new java.lang.StringBuilder((end - i) * 96)
+      while (i < end) {
+        chunk.append("{\"rank\":").append(i + 1).append(",\"id\":")
+        appendJsonString(chunk, result.getId(i))
+        chunk.append(",\"score\":").append(result.getScore(i)).append("}\n")
+        i += 1
+      }
+      response.write(chunk.toString)
+      if (response.writeQueueFull()) {
+        val next = i
+        response.drainHandler(_ => writeHits(response, result, next))
+        return
+      }
+    }
+    response.end()
+  }
+
+  private def appendJsonString(sb: java.lang.StringBuilder, value: String): Unit = {
+    sb.append('"')
+    var i = 0
+    while (i < value.length) {
+      val c = value.charAt(i)
+      c match {
+        case '"' => sb.append("\\\"")
+        case '\\' => sb.append("\\\\")
+        case '\n' => sb.append("\\n")
+        case '\r' => sb.append("\\r")
+        case '\t' => sb.append("\\t")
+        case _ if c < 0x20 => sb.append(String.format("\\u%04x", Int.box(c.toInt)))
+        case _ => sb.append(c)
+      }
+      i += 1
+    }
+    sb.append('"')
+  }
+
+  private def handleFailure(ctx: RoutingContext, failure: Throwable): Unit = {
+    unwrap(failure) match {
+      case e: IllegalArgumentException => fail(ctx, 400, e.getMessage)
+      case e: NoSuchElementException => fail(ctx, 404, e.getMessage)
+      case e: UnsupportedOperationException => fail(ctx, 501, e.getMessage)
+      case e: AdmissionController.Rejected =>
+        ctx.response().putHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds))
+        fail(ctx, e.getStatus, e.getMessage)
+      case e: RejectedExecutionException =>
+        ctx.response().putHeader("Retry-After", "1")
+        fail(ctx, 503, e.getMessage)
+      case e =>
+        logger.error("处理请求失败: " + ctx.request().path(), e)
+        fail(ctx, 500, String.valueOf(e.getMessage))
+    }
+  }
+
+  private def unwrap(failure: Throwable): Throwable = failure match {
+    case e: CompletionException if e.getCause != null => unwrap(e.getCause)
+    case e => e
+  }
+
+  private def fail(ctx: RoutingContext, status: Int, message: String): Unit = {
+    if (!ctx.response().ended()) {
+      ctx.response()
+        .setStatusCode(status)
+        .putHeader("Content-Type", "application/json")
+        .end(new JsonObject().put("error", message).encode())
+    }
+  }
+
+  /**
+   * 直接读取 [[Buffer]] 的输入流，避免把请求体再复制一份。
+   */
+  private final class BufferInputStream(buffer: Buffer) extends InputStream {
+    private var position = 0
+
+    override def read(): Int = {
+      if (position >= buffer.length()) {
+        -1
+      } else {
+        val b = buffer.getUnsignedByte(position)
+        position += 1
+        b
+      }
+    }
 
+    override def read(b: Array[Byte], off: Int, len: Int): Int = {
+      if (len == 0) {
+        0
+      } else if (position >= buffer.length()) {
+        -1
+      } else {
+        val n = math.min(len, buffer.length() - position)
+        buffer.getBytes(position, position + n, b, off)
+        position += n
+        n
+      }
+    }
 
+    override def available(): Int = buffer.length() - position
   }
-}
\ No newline at end of file
+}